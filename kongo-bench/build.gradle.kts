@@ -0,0 +1,36 @@
+/*
+ * JMH benchmarks for the kongokafka1 hot paths.
+ *
+ *   ./gradlew :kongo-bench:jmh                          all benchmarks, results in build/reports/jmh/results.json
+ *   ./gradlew :kongo-bench:jmh -PbenchTag=1.2.0         results in build/reports/jmh/results-1.2.0.json, keep one per release to compare
+ *   ./gradlew :kongo-bench:jmh -PbenchInclude=Serializer only benchmarks matching the regex
+ *   ./gradlew :kongo-bench:jmh -PbenchProfilers=gc       with JMH profilers, e.g. gc for the bytes allocated per operation
+ *
+ * The benchmarks are in the com.instaclustr.kongokafka1 and kongo1 packages so they can use their package private state.
+ * The checks that old and new code give the same results are JUnit tests in kongokafka1 and kongo1.
+ */
+plugins {
+    java
+    id("me.champeau.gradle.jmh") version "0.5.0"
+}
+
+dependencies {
+    jmh(project(":kongokafka1"))
+    jmh(project(":kongo1"))
+    jmh("com.google.guava:guava:28.2-jre")
+    jmh("org.apache.kafka:kafka-clients:2.5.0")
+}
+
+val benchTag = project.findProperty("benchTag")?.toString()
+
+jmh {
+    jmhVersion = "1.23"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    resultsFile = file("$buildDir/reports/jmh/" + (if (benchTag == null) "results.json" else "results-$benchTag.json"))
+    project.findProperty("benchInclude")?.let { include = listOf(it.toString()) }
+    project.findProperty("benchProfilers")?.let { profilers = it.toString().split(",") }
+    duplicateClassesStrategy = DuplicatesStrategy.WARN
+}
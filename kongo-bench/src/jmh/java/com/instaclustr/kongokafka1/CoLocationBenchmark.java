@@ -0,0 +1,108 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Loading a truck with goodsPerTruck Goods one at a time, each load checked against the Goods already on board, then unloading them all:
+ * - perGoodsEvents: the old ColocatedCheckEvent posted to every Goods on the truck (O(n) per load, O(n^2) per truck)
+ * - mask: the truck's category mask (LocationRegistry.Location.conflicts), one test per load, the Goods on board only scanned when it fails
+ * Both report their TRUCK violations to a ViolationProducer on a MockProducer (LocationRegistryTest checks the counts are the same).
+ * With random Goods most loads conflict and reporting the O(n^2) violations dominates either way, with compatible Goods
+ * (no Hazardous, Medicinal or Bulky ones, as the simulator only loads Goods allowed on the truck) nothing conflicts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CoLocationBenchmark
+{
+	@Param({ "10", "100", "1000" })
+	int goodsPerTruck;
+
+	@Param({ "false", "true" })
+	boolean compatible;
+
+	String warehouse = "warehouses_" + Goods.randomUUID();
+	String truck = "trucks_" + Goods.randomUUID();
+	LocationRegistry.Location t;
+	Goods[] goods;
+	MockProducer<String, Violation> mock = new MockProducer<String, Violation>(true, new StringSerializer(), new ViolationSerializer());
+	ViolationProducer violations = new ViolationProducer(mock, "bench-violations", Integer.MAX_VALUE);
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.locations.clear();
+		Simulate.allGoods.clear();
+		Simulate.locations.add(warehouse);
+		t = Simulate.locations.add(truck);
+		goods = new Goods[goodsPerTruck];
+		for (int i = 0; i < goodsPerTruck; i++)
+		{
+			goods[i] = new Goods();
+			if (compatible)
+				goods[i].cats &= ~(Rules.HAZARDOUS | Rules.MEDICINAL | Rules.BULKY);
+			Simulate.allGoods.put(goods[i].tag, goods[i]);
+			Simulate.locations.place(goods[i], warehouse);
+		}
+		ViolationProducer.install(violations);
+	}
+
+	// the MockProducer keeps every record sent
+	@Setup(Level.Invocation)
+	public void clearSent()
+	{
+		mock.clear();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		ViolationProducer.install(null);
+		Quiet.on();
+	}
+
+	@Benchmark
+	public int perGoodsEvents()
+	{
+		for (Goods g : goods)
+		{
+			Simulate.locations.move(g, warehouse, truck);
+			t.post(new ColocatedCheckEvent(0, g.tag, truck));
+		}
+		return unload();
+	}
+
+	@Benchmark
+	public int mask()
+	{
+		for (Goods g : goods)
+		{
+			Simulate.locations.move(g, warehouse, truck);
+			if (t.conflicts(g) != 0)
+				for (Goods onBoard : t.conflicting(g))
+					onBoard.truckConflict(g, 0, truck);
+		}
+		return unload();
+	}
+
+	private int unload()
+	{
+		for (Goods g : goods)
+			Simulate.locations.move(g, truck, warehouse);
+		return t.categories();
+	}
+}
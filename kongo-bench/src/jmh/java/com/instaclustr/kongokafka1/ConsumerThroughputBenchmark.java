@@ -0,0 +1,114 @@
+package com.instaclustr.kongokafka1;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Time to consume RECORDS Sensor records from a MockConsumer returning batch records per poll:
+ * - legacy: the pre BatchConsumer SensorConsumer loop (two println per record, s.print(), auto commit), on the benchmark thread
+ * - sensorConsumer: SensorConsumer (whole batches, one async commit per batch) on its own thread
+ * The sensor locations are registered with no Goods, so this measures the consumer path rather than the rules.
+ * System.out is switched off, so the logging cost measured is formatting only, a real console costs more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ConsumerThroughputBenchmark
+{
+	static final int RECORDS = 100000;
+	static final int LOCATIONS = 300;
+	static final String TOPIC = "bench";
+
+	@Param({ "1", "100", "1000" })
+	int batch;
+
+	byte[][] values;
+	MockConsumer<String, byte[]> consumer;
+	List<SensorConsumer> consumers = new ArrayList<SensorConsumer>();
+	KongoRuntime runtime;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.locations.clear();
+		values = MockConsumers.sensors(RECORDS, MockConsumers.locations(LOCATIONS, 0), new Random(1));
+	}
+
+	@Setup(Level.Iteration)
+	public void consumer()
+	{
+		consumer = MockConsumers.of(TOPIC, values, 0, RECORDS, batch, 0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void shutdown()
+	{
+		MockConsumers.shutdown(runtime, consumers);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public int legacy()
+	{
+		consumer.subscribe(Collections.singletonList(TOPIC));
+		long threadId = Thread.currentThread().getId();
+		SensorReader reader = new SensorReader();
+		Sensor s = new Sensor();
+		int n = 0;
+		while (n < RECORDS)
+		{
+			ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(100));
+			for (ConsumerRecord<String, byte[]> record : records)
+			{
+				reader.read(record.value(), s);
+				System.out.println(threadId + " ***** SensorConsumer records = " + records.count());
+				System.out.println(threadId + " ***** SensorConsumer, Received message: (" + record.key() + ", " + s.toStr() + ") at offset " + record.offset());
+				s.print();
+
+				LocationRegistry.Location topic = Simulate.locations.get(s.tag);
+				if (topic == null)
+					System.out.println(threadId + " ***** SensorConsumer unable to find location for " + s.tag);
+				else
+					topic.post(s);
+				n++;
+			}
+		}
+		consumer.close();
+		return n;
+	}
+
+	@Benchmark
+	public void sensorConsumer() throws InterruptedException
+	{
+		consumers.add(new SensorConsumer("bench-consumer", TOPIC, consumer, false));
+		runtime = MockConsumers.consume(consumers, RECORDS);
+	}
+}
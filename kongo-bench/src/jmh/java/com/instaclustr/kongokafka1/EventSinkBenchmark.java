@@ -0,0 +1,110 @@
+package com.instaclustr.kongokafka1;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Simulator event generation without a broker: HOURS hours of Simulate.loop, or of ShardedSimulate with one shard per core,
+ * for GOODS goods and 2 trucks per warehouse, writing to the CountingSink, RingBufferSink or MappedFileSink (a temp file).
+ * Every run starts from the same round robin world.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EventSinkBenchmark
+{
+	static final int GOODS = 100000;
+	static final int WAREHOUSES = 1000;
+	static final int TRUCKS = WAREHOUSES * 2;
+	static final int HOURS = 5;
+
+	@Param({ "count", "ring", "mmap" })
+	String sink;
+
+	@Param({ "false", "true" })
+	boolean sharded;
+
+	Path file;
+	EventSink out;
+	ShardedSimulate engine;
+	int round;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		Quiet.off();
+		Simulate.allGoods.clear();
+		Simulate.allWarehouses.clear();
+		Simulate.allTrucks.clear();
+		for (int i = 0; i < GOODS; i++)
+		{
+			Goods g = new Goods();
+			Simulate.allGoods.put(g.tag, g);
+		}
+		for (int i = 0; i < WAREHOUSES; i++)
+		{
+			Warehouses w = new Warehouses(i, 0);
+			Simulate.allWarehouses.put(w.id, w);
+		}
+		for (int t = 0; t < TRUCKS; t++)
+		{
+			Trucks truck = new Trucks();
+			Simulate.allTrucks.put(truck.id, truck);
+		}
+		// as with the Kafka consumers, nothing is posted to the local LocationRegistry
+		Simulate.kafkaSensorConsumerOn = true;
+		Simulate.kafkaRFIDConsumerOn = true;
+		file = Files.createTempFile("kongo-events", ".bin");
+	}
+
+	@Setup(Level.Iteration)
+	public void world()
+	{
+		Simulate.world = WorldState.roundRobin(Simulate.allGoods, Simulate.allWarehouses, Simulate.allTrucks);
+		out = sink.equals("count") ? new CountingSink() : sink.equals("ring") ? new RingBufferSink(1 << 20) : new MappedFileSink(file);
+		if (sharded)
+			engine = new ShardedSimulate(Runtime.getRuntime().availableProcessors(), round++);
+	}
+
+	@TearDown(Level.Iteration)
+	public void close()
+	{
+		if (engine != null)
+			engine.shutdown();
+		engine = null;
+		out.close();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.delete(file);
+		Quiet.on();
+	}
+
+	@Benchmark
+	public void hours()
+	{
+		if (sharded)
+			engine.loop(HOURS, out);
+		else
+			Simulate.loop(HOURS, out);
+	}
+}
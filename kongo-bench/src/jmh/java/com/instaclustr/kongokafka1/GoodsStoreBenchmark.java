@@ -0,0 +1,94 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * The LOAD phase rule checks (allowedInTruck and truckTempRules) and a sensor rule check for each of GOODS goods in id order,
+ * time per goods on the Goods objects, on the GoodsStore by id and through a View.
+ * Add -PbenchProfilers=gc for the bytes allocated, GoodsStoreTest checks the three give the same results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GoodsStoreBenchmark
+{
+	static final int GOODS = 1000000;
+	static final int TRUCKS = 2000;
+
+	Goods[] goods = new Goods[GOODS];
+	GoodsStore store;
+	GoodsStore.View view;
+	Trucks[] trucks = new Trucks[TRUCKS];
+	int[] onBoard = new int[TRUCKS];
+	Sensor sensor = new Sensor(50000, "SENSOR WAREHOUSE", "warehouses_" + Goods.randomUUID(), "temp", 10.0);
+
+	@Setup
+	public void setup()
+	{
+		for (int t = 0; t < TRUCKS; t++)
+		{
+			trucks[t] = new Trucks();
+			onBoard[t] = new Goods().cats & Rules.TRUCK_CATS;
+		}
+		for (int g = 0; g < GOODS; g++)
+			goods[g] = new Goods();
+		store = GoodsStore.of(goods);
+		view = store.view();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GOODS)
+	public long objects()
+	{
+		long ok = 0;
+		for (int g = 0; g < GOODS; g++)
+		{
+			Goods x = goods[g];
+			int t = g % TRUCKS;
+			if (x.allowedInTruck(onBoard[t]) && x.truckTempRules(trucks[t]))
+				ok++;
+			ok += x.sensorViolations(sensor);
+		}
+		return ok;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GOODS)
+	public long store()
+	{
+		long ok = 0;
+		for (int g = 0; g < GOODS; g++)
+		{
+			int t = g % TRUCKS;
+			if (store.allowedInTruck(g, onBoard[t]) && store.truckTempRules(g, trucks[t]))
+				ok++;
+			ok += store.sensorViolations(g, sensor);
+		}
+		return ok;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GOODS)
+	public long view()
+	{
+		long ok = 0;
+		for (int g = 0; g < GOODS; g++)
+		{
+			int t = g % TRUCKS;
+			view.at(g);
+			if (view.allowedInTruck(onBoard[t]) && view.truckTempRules(trucks[t]))
+				ok++;
+			ok += view.sensorViolations(sensor);
+		}
+		return ok;
+	}
+}
@@ -0,0 +1,88 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Truck selection for one Goods in the LOAD phase, trucks trucks docked at random over trucks / 2 warehouses (2 per warehouse as in Simulate):
+ * - scan: the old scan of all of trucksAtWarehouses (with the keep1 50% hack)
+ * - pickTruck: WorldState.pickTruck
+ * An hour costs about the time per Goods times the number of Goods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoadPhaseBenchmark
+{
+	static final int GOODS = 1024;
+
+	@Param({ "200", "2000", "10000" })
+	int trucks;
+
+	WorldState world;
+	Map<String, String> trucksAtWarehouses = new HashMap<String, String>();
+	int[] goodsIn = new int[GOODS];
+	Random rand = new Random(1);
+	String kept;
+	int i;
+
+	@Setup
+	public void setup()
+	{
+		int warehouses = trucks / 2;
+		HashMap<String, Warehouses> allWarehouses = new HashMap<String, Warehouses>();
+		for (int w = 0; w < warehouses; w++)
+		{
+			Warehouses x = new Warehouses(w, 0);
+			allWarehouses.put(x.id, x);
+		}
+		HashMap<String, Trucks> allTrucks = new HashMap<String, Trucks>();
+		for (int t = 0; t < trucks; t++)
+		{
+			Trucks x = new Trucks();
+			allTrucks.put(x.id, x);
+		}
+		world = new WorldState(new HashMap<String, Goods>(), allWarehouses, allTrucks);
+		for (int t = 0; t < trucks; t++)
+		{
+			int w = rand.nextInt(warehouses);
+			world.dock(t, w);
+			trucksAtWarehouses.put(world.truckTags[t], world.warehouseTags[w]);
+		}
+		for (int g = 0; g < GOODS; g++)
+			goodsIn[g] = rand.nextInt(warehouses);
+	}
+
+	// the pre index LOAD phase truck search
+	@Benchmark
+	public String scan()
+	{
+		String warehouseKey = world.warehouseTags[goodsIn[i = (i + 1) & (GOODS - 1)]];
+		kept = null;
+		trucksAtWarehouses.entrySet()
+		.stream()
+		.filter(x -> x.getValue().equals(warehouseKey))
+		.forEach(x -> {
+			if (kept == null || rand.nextBoolean())
+				kept = x.getKey();
+		});
+		return kept;
+	}
+
+	@Benchmark
+	public int pickTruck()
+	{
+		return world.pickTruck(goodsIn[i = (i + 1) & (GOODS - 1)], rand);
+	}
+}
@@ -0,0 +1,110 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.eventbus.EventBus;
+
+/*
+ * Event delivery to Goods. Simulate.topics, an EventBus per location with every Goods registered on it, has been replaced
+ * by Simulate.locations (LocationRegistry), so register/unregister/post are measured as:
+ * - eventBusRegisterUnregister: one register + unregister on a Guava EventBus, what each Goods move used to cost
+ * - moveGoods: LocationRegistry.move, the replacement
+ * - eventBusPostSensor: a sensor event to every Goods registered on a location's EventBus (goods / LOCATIONS of them)
+ * - postSensor: the same through LocationRegistry
+ * - rfidLoadPost: an RFID load through Simulate.rfidLoadTopic (EventBus) to its handler, which moves the Goods and checks it against the truck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocationBenchmarks
+{
+	// about the number of trucks + warehouses in the default simulation
+	static final int LOCATIONS = 300;
+
+	@Param({ "1000", "10000", "100000" })
+	int goods;
+
+	String[] locations = new String[LOCATIONS];
+	Goods[] all;
+	Sensor[] sensors = new Sensor[LOCATIONS];
+	EventBus bus = new EventBus("bench");
+	EventBus[] topics = new EventBus[LOCATIONS];
+	RFIDLoadEvent handler = new RFIDLoadEvent();
+	int i;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.locations.clear();
+		Simulate.allGoods.clear();
+		for (int l = 0; l < LOCATIONS; l++)
+		{
+			locations[l] = (l % 2 == 0 ? "trucks_" : "warehouses_") + Goods.randomUUID();
+			Simulate.locations.add(locations[l]);
+			sensors[l] = new Sensor(1, "SENSOR TRUCK", locations[l], "temp", 3.5);
+			topics[l] = new EventBus(locations[l]);
+		}
+		all = new Goods[goods];
+		for (int g = 0; g < goods; g++)
+		{
+			all[g] = new Goods();
+			Simulate.allGoods.put(all[g].tag, all[g]);
+			Simulate.locations.place(all[g], locations[g % LOCATIONS]);
+			topics[g % LOCATIONS].register(all[g]);
+		}
+		Simulate.rfidLoadTopic = new EventBus("load");
+		Simulate.rfidLoadTopic.register(new RFIDLoadEvent());
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public void eventBusRegisterUnregister()
+	{
+		bus.register(handler);
+		bus.unregister(handler);
+	}
+
+	@Benchmark
+	public boolean moveGoods()
+	{
+		Goods g = all[i = (i + 1) % goods];
+		return Simulate.locations.move(g, g.location.id(), locations[(i * 31) % LOCATIONS]);
+	}
+
+	@Benchmark
+	public void eventBusPostSensor()
+	{
+		i = (i + 1) % LOCATIONS;
+		topics[i].post(sensors[i]);
+	}
+
+	@Benchmark
+	public int postSensor()
+	{
+		i = (i + 1) % LOCATIONS;
+		return Simulate.locations.get(locations[i]).post(sensors[i]);
+	}
+
+	@Benchmark
+	public void rfidLoadPost()
+	{
+		Goods g = all[i = (i + 1) % goods];
+		Simulate.rfidLoadTopic.post(new RFIDLoadEvent(1, g.tag, g.location.id(), locations[(i * 31) % LOCATIONS]));
+	}
+}
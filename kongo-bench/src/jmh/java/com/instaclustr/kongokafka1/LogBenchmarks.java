@@ -0,0 +1,87 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Cost of Log on the sensor rules hot path, by level and sample rate:
+ * - postSensor: a sensor reading to every Goods at a location (GOODS / LOCATIONS of them), each checks its rules and may log
+ * - logRecord: one record with four fields, what a sampled rule violation costs the calling thread
+ * OFF is the baseline, INFO/100 the defaults, DEBUG/1 logs every rule check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LogBenchmarks
+{
+	static final int LOCATIONS = 100;
+	static final int GOODS = 1000;
+	static final String[] METRICS = { "temp", "humidity", "illuminance", "ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+
+	@Param({ "OFF", "INFO", "DEBUG" })
+	String level;
+
+	@Param({ "100", "1" })
+	int sample;
+
+	LocationRegistry.Location[] locations = new LocationRegistry.Location[LOCATIONS];
+	Sensor[] sensors = new Sensor[1024];
+	Log.Level savedLevel;
+	int savedSample;
+	int i;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		savedLevel = Log.level;
+		savedSample = Log.sampleEvery;
+		Log.level = Log.Level.valueOf(level);
+		Log.sampleEvery = sample;
+
+		Simulate.locations.clear();
+		Random rand = new Random(1);
+		String[] ids = new String[LOCATIONS];
+		for (int l = 0; l < LOCATIONS; l++)
+		{
+			ids[l] = (l % 2 == 0 ? "trucks_" : "warehouses_") + Goods.randomUUID();
+			locations[l] = Simulate.locations.add(ids[l]);
+		}
+		for (int g = 0; g < GOODS; g++)
+			Simulate.locations.place(new Goods(), ids[g % LOCATIONS]);
+		for (int s = 0; s < sensors.length; s++)
+			sensors[s] = new Sensor(1, "SENSOR WAREHOUSE", ids[s % LOCATIONS], METRICS[s % METRICS.length], rand.nextDouble() * 100);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Log.flush();
+		Log.level = savedLevel;
+		Log.sampleEvery = savedSample;
+		Quiet.on();
+	}
+
+	@Benchmark
+	public int postSensor()
+	{
+		Sensor s = sensors[i = (i + 1) & (sensors.length - 1)];
+		return locations[i % LOCATIONS].post(s);
+	}
+
+	@Benchmark
+	public void logRecord()
+	{
+		Log.warn("sensor.violation", "goods", "goods_1", "location", "warehouses_1", "metric", "temp", "violations", "too hot");
+	}
+}
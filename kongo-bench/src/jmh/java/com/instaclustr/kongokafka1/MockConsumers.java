@@ -0,0 +1,110 @@
+package com.instaclustr.kongokafka1;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+
+// MockConsumers standing in for the broker in the consumer benchmarks, and the records they return
+final class MockConsumers
+{
+	private MockConsumers() {}
+
+	// binary Sensor records of random humidity readings at random locations, 1000 per hour
+	static byte[][] sensors(int n, String[] locations, Random rand)
+	{
+		byte[][] values = new byte[n][];
+		for (int i = 0; i < n; i++)
+			values[i] = SensorSerializer.serializeBinary(new Sensor(i / 1000, "SENSOR TRUCK", locations[rand.nextInt(locations.length)], "humidity", rand.nextDouble() * 100));
+		return values;
+	}
+
+	// locations registered in Simulate.locations, with goodsPerLocation Goods each
+	static String[] locations(int n, int goodsPerLocation)
+	{
+		String[] ids = new String[n];
+		for (int l = 0; l < n; l++)
+		{
+			ids[l] = (l % 2 == 0 ? "trucks_" : "warehouses_") + Goods.randomUUID();
+			Simulate.locations.add(ids[l]);
+			for (int g = 0; g < goodsPerLocation; g++)
+				Simulate.locations.place(new Goods(), ids[l]);
+		}
+		return ids;
+	}
+
+	// Consumer of partition 0 of topic, assigned on the first poll, then returning values[from..to) batch records per poll.
+	// MockConsumer ignores max.poll.records. An empty MockConsumer poll returns at once, with idlePollMs > 0 it sleeps as a broker poll
+	// would block, otherwise idle consumers just spin.
+	static MockConsumer<String, byte[]> of(String topic, byte[][] values, int from, int to, int batch, long idlePollMs)
+	{
+		MockConsumer<String, byte[]> consumer = new MockConsumer<String, byte[]>(OffsetResetStrategy.EARLIEST) {
+			@Override
+			public ConsumerRecords<String, byte[]> poll(Duration timeout)
+			{
+				ConsumerRecords<String, byte[]> records = super.poll(timeout);
+				if (records.isEmpty() && idlePollMs > 0)
+				{
+					try
+					{
+						Thread.sleep(Math.min(idlePollMs, timeout.toMillis()));
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+				return records;
+			}
+		};
+		TopicPartition tp = new TopicPartition(topic, 0);
+		consumer.schedulePollTask(() -> {
+			consumer.rebalance(Collections.singletonList(tp));
+			consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+		});
+		for (int start = from; start < to; start += batch)
+		{
+			List<ConsumerRecord<String, byte[]>> records = new ArrayList<ConsumerRecord<String, byte[]>>();
+			for (int i = start; i < Math.min(to, start + batch); i++)
+				records.add(new ConsumerRecord<String, byte[]>(topic, 0, i - from, null, values[i]));
+			poll(consumer, records);
+		}
+		return consumer;
+	}
+
+	// the records are added to the consumer by its next poll
+	static <V> void poll(MockConsumer<String, V> consumer, List<ConsumerRecord<String, V>> records)
+	{
+		consumer.schedulePollTask(() -> {
+			for (ConsumerRecord<String, V> record : records)
+				consumer.addRecord(record);
+		});
+	}
+
+	// run the consumers on a KongoRuntime and wait until they have consumed total records between them
+	static KongoRuntime consume(List<? extends BatchConsumer<?, ?>> consumers, long total) throws InterruptedException
+	{
+		KongoRuntime runtime = new KongoRuntime(false);
+		for (BatchConsumer<?, ?> consumer : consumers)
+			runtime.add(consumer);
+		runtime.start();
+		while (runtime.records() < total)
+			Thread.sleep(1);
+		return runtime;
+	}
+
+	// stop the consumers run by consume (runtime is null if it wasn't called) and forget them
+	static void shutdown(KongoRuntime runtime, List<? extends BatchConsumer<?, ?>> consumers)
+	{
+		if (runtime != null)
+			runtime.shutdown(10000);
+		consumers.clear();
+	}
+}
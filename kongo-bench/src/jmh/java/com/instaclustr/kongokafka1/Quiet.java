@@ -0,0 +1,40 @@
+package com.instaclustr.kongokafka1;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// Switches System.out off while benchmarking code that prints (rule violations, RFID moves, the Simulate loop), kongo1 included
+public final class Quiet
+{
+	private static PrintStream saved;
+
+	private Quiet() {}
+
+	public static synchronized void off()
+	{
+		if (saved != null)
+			return;
+		saved = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b)
+			{
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len)
+			{
+			}
+		}));
+	}
+
+	public static synchronized void on()
+	{
+		if (saved == null)
+			return;
+		// records logged while off go to the null stream too
+		Log.flush();
+		System.setOut(saved);
+		saved = null;
+	}
+}
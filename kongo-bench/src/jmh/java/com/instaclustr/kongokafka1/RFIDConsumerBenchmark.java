@@ -0,0 +1,171 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.eventbus.EventBus;
+
+/*
+ * RFID events keyed by goods on a PARTITIONS partition kongo-rfid, read by consumers RFIDEventConsumers in one group.
+ * Every Goods is loaded onto a random truck and unloaded at a random warehouse MOVES times, the events are put on the partition the
+ * default partitioner picks for the goods key, and each MockConsumer owns its share of the partitions. Time to consume all EVENTS events.
+ * After each run every Goods must be at the warehouse of its last unload, i.e. per goods order was kept with parallel consumers,
+ * the run fails otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class RFIDConsumerBenchmark
+{
+	static final int GOODS = 10000;
+	static final int WAREHOUSES = 100;
+	static final int TRUCKS = 200;
+	static final int MOVES = 10;
+	static final int PARTITIONS = 6;
+	static final int EVENTS = 2 * MOVES * GOODS;
+
+	@Param({ "1", "3" })
+	int consumers;
+
+	Goods[] goods = new Goods[GOODS];
+	String[] start = new String[GOODS];
+	String[] end = new String[GOODS];
+	// per partition event lists, events for a goods in time order
+	List<List<RFIDEvent>> partitions = new ArrayList<List<RFIDEvent>>();
+	List<RFIDEventConsumer> running = new ArrayList<RFIDEventConsumer>();
+	KongoRuntime runtime;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.locations.clear();
+		Simulate.allGoods.clear();
+		Simulate.rfidLoadTopic = new EventBus("load");
+		Simulate.rfidLoadTopic.register(new RFIDLoadEvent());
+		Simulate.rfidUnloadTopic = new EventBus("unload");
+		Simulate.rfidUnloadTopic.register(new RFIDUnloadEvent());
+
+		Random rand = new Random(1);
+		String[] warehouses = new String[WAREHOUSES];
+		for (int i = 0; i < WAREHOUSES; i++)
+			Simulate.locations.add(warehouses[i] = "warehouses_" + Goods.randomUUID());
+		String[] trucks = new String[TRUCKS];
+		for (int i = 0; i < TRUCKS; i++)
+			Simulate.locations.add(trucks[i] = "trucks_" + Goods.randomUUID());
+		for (int i = 0; i < GOODS; i++)
+		{
+			goods[i] = new Goods();
+			Simulate.allGoods.put(goods[i].tag, goods[i]);
+			start[i] = warehouses[rand.nextInt(WAREHOUSES)];
+		}
+
+		for (int p = 0; p < PARTITIONS; p++)
+			partitions.add(new ArrayList<RFIDEvent>());
+		for (int time = 0; time < MOVES; time++)
+		{
+			for (int i = 0; i < GOODS; i++)
+			{
+				String at = time == 0 ? start[i] : end[i];
+				String truck = trucks[rand.nextInt(TRUCKS)];
+				String to = warehouses[rand.nextInt(WAREHOUSES)];
+				List<RFIDEvent> events = partitions.get(partition(goods[i].tag));
+				events.add(new RFIDEvent(true, time, goods[i].tag, at, truck));
+				events.add(new RFIDEvent(false, time, goods[i].tag, to, truck));
+				end[i] = to;
+			}
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void consumers()
+	{
+		for (int i = 0; i < GOODS; i++)
+			Simulate.locations.place(goods[i], start[i]);
+		for (int c = 0; c < consumers; c++)
+			running.add(new RFIDEventConsumer(Simulate.rfidTopic, mockConsumer(c)));
+	}
+
+	@TearDown(Level.Iteration)
+	public void check()
+	{
+		MockConsumers.shutdown(runtime, running);
+		int wrong = 0;
+		for (int i = 0; i < GOODS; i++)
+			if (!Simulate.locations.locationOf(goods[i]).id().equals(end[i]))
+				wrong++;
+		if (wrong > 0)
+			throw new IllegalStateException(wrong + " goods at the wrong location with " + consumers + " consumers");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public void consume() throws InterruptedException
+	{
+		runtime = MockConsumers.consume(running, EVENTS);
+	}
+
+	// the partition the default partitioner picks for a key
+	static int partition(String key)
+	{
+		return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % PARTITIONS;
+	}
+
+	// MockConsumer owning partitions p with p % consumers == member, each partition's events in batches of up to 500
+	MockConsumer<String, RFIDEvent> mockConsumer(int member)
+	{
+		MockConsumer<String, RFIDEvent> consumer = new MockConsumer<String, RFIDEvent>(OffsetResetStrategy.EARLIEST);
+		List<TopicPartition> share = new ArrayList<TopicPartition>();
+		for (int p = member; p < partitions.size(); p += consumers)
+			share.add(new TopicPartition(Simulate.rfidTopic, p));
+		consumer.schedulePollTask(() -> {
+			consumer.rebalance(share);
+			for (TopicPartition tp : share)
+				consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+		});
+		int longest = 0;
+		for (TopicPartition tp : share)
+			longest = Math.max(longest, partitions.get(tp.partition()).size());
+		for (int from = 0; from < longest; from += 500)
+		{
+			List<ConsumerRecord<String, RFIDEvent>> records = new ArrayList<ConsumerRecord<String, RFIDEvent>>();
+			for (TopicPartition tp : share)
+			{
+				List<RFIDEvent> events = partitions.get(tp.partition());
+				for (int i = from; i < Math.min(events.size(), from + 500); i++)
+					records.add(new ConsumerRecord<String, RFIDEvent>(tp.topic(), tp.partition(), i, events.get(i).goodsKey, events.get(i)));
+			}
+			MockConsumers.poll(consumer, records);
+		}
+		return consumer;
+	}
+}
@@ -0,0 +1,140 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Goods rule checks, each call on the next of GOODS random Goods (and events / trucks) so branches aren't always predicted:
+ * sensor rules as the reasons String (violatedSensorCatRules), as the bitmask (sensorViolations) and the pre SensorRules string
+ * comparing rule methods (legacySensorRules, SensorRulesTest checks they agree), the co-location rules
+ * against another Goods and against a truck's categories on board, and Rules.conflicts, the conflict table lookup that replaced
+ * the string building Rules.goodsNotAllowedInTruck.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RulesBenchmarks
+{
+	static final int GOODS = 1024;
+	static final String[] METRICS = { "temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity",
+			"ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+
+	Goods[] goods = new Goods[GOODS];
+	Sensor[] events = new Sensor[GOODS];
+	int[] onBoard = new int[GOODS];
+	int i;
+
+	@Setup
+	public void setup()
+	{
+		Random rand = new Random(1);
+		for (int j = 0; j < GOODS; j++)
+		{
+			goods[j] = new Goods();
+			events[j] = new Sensor(rand.nextInt(100000), "SENSOR TRUCK", "trucks_x", METRICS[rand.nextInt(METRICS.length)], rand.nextDouble() * 200 - 50);
+		}
+		// a few Goods on board each truck
+		for (int j = 0; j < GOODS; j++)
+		{
+			Trucks t = new Trucks();
+			t.resetCats();
+			for (int k = 0; k < 3; k++)
+				t.updateCategories(goods[rand.nextInt(GOODS)]);
+			onBoard[j] = t.categoriesOnBoard();
+		}
+	}
+
+	private int next()
+	{
+		return i = (i + 1) & (GOODS - 1);
+	}
+
+	@Benchmark
+	public String violatedSensorCatRules()
+	{
+		int j = next();
+		return goods[j].violatedSensorCatRules(events[j]);
+	}
+
+	@Benchmark
+	public int sensorViolations()
+	{
+		int j = next();
+		return goods[j].sensorViolations(events[j]);
+	}
+
+	@Benchmark
+	public String legacySensorRules()
+	{
+		int j = next();
+		return legacy(goods[j], events[j]);
+	}
+
+	@Benchmark
+	public boolean allowedInTruckWithGoods()
+	{
+		int j = next();
+		return goods[j].allowedInTruck(goods[(j * 7) & (GOODS - 1)]);
+	}
+
+	@Benchmark
+	public boolean allowedInTruck()
+	{
+		int j = next();
+		return goods[j].allowedInTruck(onBoard[j]);
+	}
+
+	@Benchmark
+	public int goodsNotAllowedInTruck()
+	{
+		return Rules.conflicts(goods[next()].cats);
+	}
+
+	// the pre SensorRules Goods.violatedSensorCatRules
+	static String legacy(Goods g, Sensor sensor)
+	{
+		String s = "";
+		if (g.has(Rules.FRAGILE) && !(lowG(sensor) && smoothRide(sensor)))
+			s += "fragile ";
+		if (g.has(Rules.MEDICINAL) && !(dry(sensor) && dark(sensor)))
+			s += "medicinal ";
+		if (g.has(Rules.PERISHABLE) && !(dry(sensor) && dark(sensor) && g.useByDate > sensor.time))
+			s += "perishable ";
+		if (g.has(Rules.EDIBLE) && !dry(sensor))
+			s += "edible ";
+		if (g.has(Rules.DRY) && !dry(sensor))
+			s += "dry ";
+		if (g.temp != null && !(!(sensor.metric.equals("temp") && !g.temp.tempInRange(sensor.value))))
+			s += "temp";
+		return s;
+	}
+
+	static boolean dry(Sensor sensor)
+	{
+		return !(sensor.metric.equals("humidity") && sensor.value > 60);
+	}
+
+	static boolean dark(Sensor sensor)
+	{
+		return !(sensor.metric.equals("illuminace") && sensor.value > 500);
+	}
+
+	static boolean lowG(Sensor sensor)
+	{
+		return !(sensor.metric.equals("acceleration") && (sensor.value >= 5));
+	}
+
+	static boolean smoothRide(Sensor sensor)
+	{
+		return !(sensor.metric.equals("vibrationDisplacement") && sensor.value >= 10 ||
+				sensor.metric.equals("vibrationVelocity") && sensor.value >= 100);
+	}
+}
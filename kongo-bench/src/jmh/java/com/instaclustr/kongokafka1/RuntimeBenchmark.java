@@ -0,0 +1,132 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * KongoRuntime with consumers SensorConsumers on platform or virtual threads (virtual fails the run if this Java has none).
+ * RECORDS sensor records are shared between the consumers, each reading from its own MockConsumer that sleeps on empty polls
+ * as a broker poll would block (IDLE_POLL_MS), otherwise idle consumers would just spin.
+ * - consume: start the runtime and wait until everything is consumed
+ * - shutdown: the structured shutdown (wakeup, commit, close, join) of a runtime that has consumed everything
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RuntimeBenchmark
+{
+	static final int RECORDS = 300000;
+	static final int BATCH = 100;
+	static final int LOCATIONS = 300;
+	static final long IDLE_POLL_MS = 10;
+
+	@Param({ "3", "30", "300" })
+	int consumers;
+
+	@Param({ "false", "true" })
+	boolean virtual;
+
+	byte[][] values;
+
+	@Setup
+	public void setup()
+	{
+		if (virtual)
+		{
+			ExecutorService probe = KongoRuntime.virtualExecutor();
+			if (probe == null)
+				throw new IllegalStateException("virtual threads not available in Java " + System.getProperty("java.version"));
+			probe.shutdown();
+		}
+		Quiet.off();
+		Simulate.locations.clear();
+		values = MockConsumers.sensors(RECORDS, MockConsumers.locations(LOCATIONS, 0), new Random(1));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	KongoRuntime runtime()
+	{
+		KongoRuntime runtime = new KongoRuntime(virtual);
+		int per = RECORDS / consumers;
+		for (int c = 0; c < consumers; c++)
+			runtime.add(new SensorConsumer("bench-" + c, "bench-" + c, MockConsumers.of("bench-" + c, values, c * per, (c + 1) * per, BATCH, IDLE_POLL_MS), false));
+		return runtime;
+	}
+
+	long expected()
+	{
+		return (long) (RECORDS / consumers) * consumers;
+	}
+
+	// a runtime not started yet
+	@State(Scope.Benchmark)
+	public static class Ready
+	{
+		KongoRuntime runtime;
+
+		@Setup(Level.Iteration)
+		public void setup(RuntimeBenchmark b)
+		{
+			runtime = b.runtime();
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown()
+		{
+			runtime.shutdown(10000);
+		}
+	}
+
+	// a runtime that has consumed all its records
+	@State(Scope.Benchmark)
+	public static class Consumed
+	{
+		KongoRuntime runtime;
+
+		@Setup(Level.Iteration)
+		public void setup(RuntimeBenchmark b) throws InterruptedException
+		{
+			runtime = b.runtime();
+			runtime.start();
+			while (runtime.records() < b.expected())
+				Thread.sleep(1);
+		}
+	}
+
+	@Benchmark
+	public long consume(Ready ready) throws InterruptedException
+	{
+		ready.runtime.start();
+		long n;
+		while ((n = ready.runtime.records()) < expected())
+			Thread.sleep(1);
+		return n;
+	}
+
+	@Benchmark
+	public void shutdown(Consumed consumed)
+	{
+		consumed.runtime.shutdown(10000);
+	}
+}
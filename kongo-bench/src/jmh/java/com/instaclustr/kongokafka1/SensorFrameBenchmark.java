@@ -0,0 +1,126 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Per metric Sensor records vs one SensorFrame record per location and hour, for HOURS hours of LOCATIONS locations,
+ * half trucks (6 metrics) and half warehouses (8 metrics), with GOODS_PER_LOCATION Goods each. Time for all READINGS readings:
+ * - serializePerMetric / serializeFrames: producer side, every reading of every hour
+ * - consumePerMetric / consumeFrames: SensorConsumer vs SensorFrameConsumer (decode, location lookup and the Goods rules) from a MockConsumer
+ * WireFormatTest checks a frame is smaller than its per metric records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SensorFrameBenchmark
+{
+	static final int LOCATIONS = 300;
+	static final int HOURS = 100;
+	static final int GOODS_PER_LOCATION = 2;
+
+	static final String[] TRUCK_METRICS = { "temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity" };
+	static final String[] WAREHOUSE_METRICS = { "temp", "humidity", "illuminance", "ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+	// half the locations are trucks, half warehouses
+	static final int READINGS = HOURS * LOCATIONS / 2 * (6 + 8);
+
+	List<SensorFrame> frames = new ArrayList<SensorFrame>();
+	SensorFrameSerializer frameSerializer = new SensorFrameSerializer();
+	byte[][] values;
+	byte[][] frameValues;
+	List<LocationConsumer> consumers = new ArrayList<LocationConsumer>();
+	KongoRuntime runtime;
+	SensorConsumer sensorConsumer;
+	SensorFrameConsumer frameConsumer;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.locations.clear();
+		Random rand = new Random(1);
+		String[] locations = MockConsumers.locations(LOCATIONS, GOODS_PER_LOCATION);
+		for (int time = 0; time < HOURS; time++)
+		{
+			for (String l : locations)
+			{
+				boolean truck = l.startsWith("trucks_");
+				SensorFrame f = new SensorFrame(time, truck ? "SENSOR TRUCK" : "SENSOR WAREHOUSE", l);
+				for (String m : truck ? TRUCK_METRICS : WAREHOUSE_METRICS)
+					f.add(m, rand.nextDouble() * 100);
+				frames.add(f);
+			}
+		}
+		values = serializePerMetric().toArray(new byte[0][]);
+		frameValues = serializeFrames().toArray(new byte[0][]);
+	}
+
+	@Setup(Level.Iteration)
+	public void consumers()
+	{
+		sensorConsumer = new SensorConsumer("bench", "bench", MockConsumers.of("bench", values, 0, values.length, 100, 10), false);
+		frameConsumer = new SensorFrameConsumer("bench-frames", "bench-frames", MockConsumers.of("bench-frames", frameValues, 0, frameValues.length, 100, 10), false);
+	}
+
+	@TearDown(Level.Iteration)
+	public void shutdown()
+	{
+		MockConsumers.shutdown(runtime, consumers);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public List<byte[]> serializePerMetric()
+	{
+		List<byte[]> records = new ArrayList<byte[]>();
+		Sensor s = new Sensor();
+		for (SensorFrame f : frames)
+			for (int i = 0; i < f.size(); i++)
+				records.add(SensorSerializer.serializeBinary(f.sensor(i, s)));
+		return records;
+	}
+
+	@Benchmark
+	public List<byte[]> serializeFrames()
+	{
+		List<byte[]> records = new ArrayList<byte[]>();
+		for (SensorFrame f : frames)
+			records.add(frameSerializer.serialize(Simulate.kafkaSensorFrameTopicBase, f));
+		return records;
+	}
+
+	@Benchmark
+	public void consumePerMetric() throws InterruptedException
+	{
+		consumers.add(sensorConsumer);
+		runtime = MockConsumers.consume(consumers, values.length);
+	}
+
+	@Benchmark
+	public void consumeFrames() throws InterruptedException
+	{
+		consumers.add(frameConsumer);
+		runtime = MockConsumers.consume(consumers, frameValues.length);
+	}
+}
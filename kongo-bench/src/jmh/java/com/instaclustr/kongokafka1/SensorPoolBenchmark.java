@@ -0,0 +1,129 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Many topics mode with a fixed pool of SensorConsumers: GOODS Goods at LOCATIONS locations, one sensor topic per location
+ * (kong2-<location>), and each pool member pattern subscribed to Simulate.kafkaSensorLocationTopics.
+ * The old mode needed a thread and a KafkaConsumer per Goods (100k threads here), the pool uses pool threads however many Goods.
+ * Each MockConsumer is given its share of the location topics, as the group coordinator would, and records are only added
+ * to the owning consumer. Time to consume all RECORDS records, each checked by the Goods at its location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SensorPoolBenchmark
+{
+	static final int GOODS = 100000;
+	static final int LOCATIONS = 1000;
+	static final int RECORDS = 20000;
+
+	@Param({ "1", "3" })
+	int pool;
+
+	String[] locations = new String[LOCATIONS];
+	int[] location = new int[RECORDS];
+	byte[][] values = new byte[RECORDS][];
+	List<SensorConsumer> consumers = new ArrayList<SensorConsumer>();
+	KongoRuntime runtime;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.locations.clear();
+		Random rand = new Random(1);
+		for (int i = 0; i < LOCATIONS; i++)
+		{
+			locations[i] = (i % 10 == 0 ? "warehouse_" : "trucks_") + Goods.randomUUID();
+			Simulate.locations.add(locations[i]);
+		}
+		for (int i = 0; i < GOODS; i++)
+			Simulate.locations.place(new Goods(), locations[rand.nextInt(LOCATIONS)]);
+		for (int i = 0; i < RECORDS; i++)
+		{
+			location[i] = rand.nextInt(LOCATIONS);
+			values[i] = SensorSerializer.serializeBinary(new Sensor(i / 1000, "SENSOR TRUCK", locations[location[i]], "temp", rand.nextDouble() * 40 - 10));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void consumers()
+	{
+		for (int c = 0; c < pool; c++)
+			consumers.add(new SensorConsumer("pool-" + c, Simulate.kafkaSensorLocationTopics, mockConsumer(c), false));
+	}
+
+	@TearDown(Level.Iteration)
+	public void shutdown()
+	{
+		MockConsumers.shutdown(runtime, consumers);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public void consume() throws InterruptedException
+	{
+		runtime = MockConsumers.consume(consumers, RECORDS);
+	}
+
+	// MockConsumer owning the location topics with index % pool == member, with their records in batches of up to 1000
+	MockConsumer<String, byte[]> mockConsumer(int member)
+	{
+		MockConsumer<String, byte[]> consumer = new MockConsumer<String, byte[]>(OffsetResetStrategy.EARLIEST);
+		List<TopicPartition> share = new ArrayList<TopicPartition>();
+		for (int i = member; i < locations.length; i += pool)
+			share.add(new TopicPartition(Simulate.kafkaSensorTopicBase + locations[i], 0));
+		consumer.schedulePollTask(() -> {
+			consumer.rebalance(share);
+			for (TopicPartition tp : share)
+				consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+		});
+
+		long[] offsets = new long[locations.length];
+		List<ConsumerRecord<String, byte[]>> batch = new ArrayList<ConsumerRecord<String, byte[]>>();
+		for (int i = 0; i < values.length; i++)
+		{
+			int l = location[i];
+			if (l % pool != member)
+				continue;
+			batch.add(new ConsumerRecord<String, byte[]>(Simulate.kafkaSensorTopicBase + locations[l], 0, offsets[l]++, locations[l], values[i]));
+			if (batch.size() == 1000)
+			{
+				MockConsumers.poll(consumer, new ArrayList<ConsumerRecord<String, byte[]>>(batch));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty())
+			MockConsumers.poll(consumer, batch);
+		return consumer;
+	}
+}
@@ -0,0 +1,86 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Serialize + deserialize round trips of a Sensor and an RFIDEvent, in the legacy text and the binary WireFormat,
+ * plus the allocation free SensorReader decode against SensorSerializer.deserialize (a new Sensor per record) and a SensorFrame round trip.
+ * Add -PbenchProfilers=gc for the bytes allocated per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializerBenchmarks
+{
+	@Param({ "text", "binary" })
+	String format;
+
+	SensorSerializer sensorSerializer = new SensorSerializer();
+	RFIDEventSerializer rfidSerializer = new RFIDEventSerializer();
+	SensorFrameSerializer frameSerializer = new SensorFrameSerializer();
+	SensorReader reader = new SensorReader();
+
+	Sensor sensor;
+	RFIDEvent rfid;
+	SensorFrame frame;
+	byte[] sensorBytes;
+	Sensor into = new Sensor();
+
+	@Setup
+	public void setup()
+	{
+		String topics = format.equals("binary") ? "*" : "";
+		sensorSerializer.configure(Collections.singletonMap(WireFormat.BINARY_TOPICS_CONFIG, topics), false);
+		rfidSerializer.configure(Collections.singletonMap(WireFormat.BINARY_TOPICS_CONFIG, topics), false);
+
+		String truck = "trucks_" + Goods.randomUUID();
+		sensor = new Sensor(1234, "SENSOR TRUCK", truck, "vibrationVelocity", 123.456);
+		rfid = new RFIDEvent(true, 1234, "goods_" + Goods.randomUUID(), "warehouses_" + Goods.randomUUID(), truck);
+		frame = new SensorFrame(1234, "SENSOR TRUCK", truck);
+		for (String metric : new String[] { "temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity" })
+			frame.add(metric, 123.456);
+		sensorBytes = sensorSerializer.serialize(Simulate.kafkaSensorTopicBase, sensor);
+	}
+
+	@Benchmark
+	public Sensor sensorRoundTrip()
+	{
+		return sensorSerializer.deserialize(Simulate.kafkaSensorTopicBase, sensorSerializer.serialize(Simulate.kafkaSensorTopicBase, sensor));
+	}
+
+	@Benchmark
+	public RFIDEvent rfidEventRoundTrip()
+	{
+		return rfidSerializer.deserialize(Simulate.rfidTopic, rfidSerializer.serialize(Simulate.rfidTopic, rfid));
+	}
+
+	// what SensorConsumer does per record
+	@Benchmark
+	public Sensor sensorReaderDecode()
+	{
+		return reader.read(sensorBytes, into);
+	}
+
+	@Benchmark
+	public Sensor sensorDeserialize()
+	{
+		return sensorSerializer.deserialize(Simulate.kafkaSensorTopicBase, sensorBytes);
+	}
+
+	// 6 metrics, binary only so the same for both formats
+	@Benchmark
+	public SensorFrame sensorFrameRoundTrip()
+	{
+		return frameSerializer.deserialize(Simulate.kafkaSensorFrameTopicBase, frameSerializer.serialize(Simulate.kafkaSensorFrameTopicBase, frame));
+	}
+}
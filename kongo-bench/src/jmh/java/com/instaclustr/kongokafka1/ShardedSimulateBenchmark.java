@@ -0,0 +1,88 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * ShardedSimulate scaling without Kafka: HOURS hours for GOODS goods and 2 trucks per warehouse, with shards shards, into a CountingSink.
+ * Every run starts from the same round robin world with the same seed, so every shard count generates the same events
+ * (ShardedSimulateTest checks this) and the times compare directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ShardedSimulateBenchmark
+{
+	static final int GOODS = 100000;
+	static final int WAREHOUSES = 1000;
+	static final int TRUCKS = WAREHOUSES * 2;
+	static final int HOURS = 5;
+	static final long SEED = 42;
+
+	@Param({ "1", "2", "4", "8" })
+	int shards;
+
+	ShardedSimulate engine;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.allGoods.clear();
+		Simulate.allWarehouses.clear();
+		Simulate.allTrucks.clear();
+		for (int i = 0; i < GOODS; i++)
+		{
+			Goods g = new Goods();
+			Simulate.allGoods.put(g.tag, g);
+		}
+		for (int i = 0; i < WAREHOUSES; i++)
+		{
+			Warehouses w = new Warehouses(i, 0);
+			Simulate.allWarehouses.put(w.id, w);
+		}
+		for (int t = 0; t < TRUCKS; t++)
+		{
+			Trucks truck = new Trucks();
+			Simulate.allTrucks.put(truck.id, truck);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void world()
+	{
+		engine = new ShardedSimulate(WorldState.roundRobin(Simulate.allGoods, Simulate.allWarehouses, Simulate.allTrucks), shards, SEED);
+	}
+
+	@TearDown(Level.Iteration)
+	public void close()
+	{
+		engine.shutdown();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public long hours()
+	{
+		return engine.loop(HOURS, new CountingSink());
+	}
+}
@@ -0,0 +1,133 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * One hour of Simulate.loop (unload, load, move, sensors) with the Kafka producers replaced by MockProducers, which
+ * serialize and partition every record as KafkaProducer would, and complete the sends at once.
+ * The world is GOODS Goods, 100 warehouses and 200 trucks as in Simulate.createAndLoop, kept from one hour to the next.
+ * sensorFrames selects per metric Sensor records or SensorFrames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SimulateHourBenchmark
+{
+	static final int WAREHOUSES = 100;
+	static final int TRUCKS = WAREHOUSES * 2;
+	static final int PARTITIONS = 3;
+
+	@Param({ "1000", "100000" })
+	int goods;
+
+	@Param({ "false", "true" })
+	boolean sensorFrames;
+
+	MockProducer<String, Sensor> sensorProducer;
+	MockProducer<String, RFIDEvent> rfidProducer;
+	MockProducer<String, SensorFrame> frameProducer;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.allGoods.clear();
+		Simulate.allWarehouses.clear();
+		Simulate.allTrucks.clear();
+		Simulate.locations.clear();
+		Simulate.oneTopic = true;
+		Simulate.sensorFrames = sensorFrames;
+		Simulate.stopped = false;
+
+		for (int x = 0; x < WAREHOUSES; x++)
+		{
+			Warehouses w = new Warehouses(x % 10, x / 10);
+			Simulate.allWarehouses.put(w.id, w);
+			Simulate.locations.add(w.id);
+		}
+		for (int i = 0; i < goods; i++)
+		{
+			Goods g = new Goods();
+			Simulate.allGoods.put(g.tag, g);
+		}
+		for (int i = 0; i < TRUCKS; i++)
+		{
+			Trucks t = new Trucks();
+			t.resetCats();
+			Simulate.allTrucks.put(t.id, t);
+			Simulate.locations.add(t.id);
+		}
+		Simulate.world = WorldState.roundRobin(Simulate.allGoods, Simulate.allWarehouses, Simulate.allTrucks);
+		for (int g = 0; g < goods; g++)
+			Simulate.locations.place(Simulate.world.goods[g], Simulate.world.warehouseTags[Simulate.world.warehouseOf(g)]);
+
+		Cluster cluster = cluster(Simulate.kafkaSensorTopicBase, Simulate.rfidTopic, Simulate.kafkaSensorFrameTopicBase);
+		sensorProducer = new MockProducer<String, Sensor>(cluster, true, new DefaultPartitioner(), new StringSerializer(), binary(new SensorSerializer()));
+		rfidProducer = new MockProducer<String, RFIDEvent>(cluster, true, new DefaultPartitioner(), new StringSerializer(), binary(new RFIDEventSerializer()));
+		frameProducer = new MockProducer<String, SensorFrame>(cluster, true, new DefaultPartitioner(), new StringSerializer(), new SensorFrameSerializer());
+		Simulate.producerSensorEvents = sensorProducer;
+		Simulate.producerRFIDEvents = rfidProducer;
+		Simulate.producerSensorFrames = sensorFrames ? frameProducer : null;
+	}
+
+	// MockProducer keeps every record sent, forget the last hour's
+	@Setup(Level.Invocation)
+	public void clearHistory()
+	{
+		sensorProducer.clear();
+		rfidProducer.clear();
+		frameProducer.clear();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public int hour()
+	{
+		Simulate.loop(1);
+		return sensorProducer.history().size() + rfidProducer.history().size() + frameProducer.history().size();
+	}
+
+	static <T> Serializer<T> binary(Serializer<T> serializer)
+	{
+		serializer.configure(Collections.singletonMap(WireFormat.BINARY_TOPICS_CONFIG, "*"), false);
+		return serializer;
+	}
+
+	// PARTITIONS partitions for each topic, on one broker
+	static Cluster cluster(String... topics)
+	{
+		Node node = new Node(0, "localhost", 9092);
+		Node[] nodes = { node };
+		List<PartitionInfo> partitions = new ArrayList<PartitionInfo>();
+		for (String topic : topics)
+			for (int p = 0; p < PARTITIONS; p++)
+				partitions.add(new PartitionInfo(topic, p, node, nodes, nodes));
+		return new Cluster("kongo-bench", Collections.singletonList(node), partitions, Collections.emptySet(), Collections.emptySet());
+	}
+}
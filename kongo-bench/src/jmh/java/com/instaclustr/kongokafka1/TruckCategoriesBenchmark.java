@@ -0,0 +1,139 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * One hour of unload, LOAD with enforceHazardousRules = true, and move, at GOODS goods and 2 trucks per warehouse,
+ * for the ways of knowing the truck categories (mode):
+ * - reset: the old Trucks.resetCats() on every unload, the truck forgets the categories of the Goods still on board
+ * - rescan: the union of the categories of the cargo, recomputed for every load check (always right, O(cargo) per check)
+ * - counts: the Trucks category counts kept by updateCategories/removeCategories (always right, O(1) per load and unload)
+ * Every Goods on a truck is unloaded with probability unload (1 as in Simulate.loop, below 1 leaves Goods on board).
+ * The world is kept from one hour to the next. RulesTest checks the counts agree with the cargo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TruckCategoriesBenchmark
+{
+	static final int GOODS = 100000;
+	static final int WAREHOUSES = 1000;
+	static final int TRUCKS = WAREHOUSES * 2;
+
+	@Param({ "reset", "rescan", "counts" })
+	String mode;
+
+	@Param({ "1.0", "0.5" })
+	double unload;
+
+	WorldState world;
+	IntList[] cargo = IntList.array(TRUCKS);
+	Random rand = new Random(1);
+	boolean reset;
+	boolean rescan;
+
+	@Setup
+	public void setup()
+	{
+		Simulate.enforceHazardousRules = true;
+		reset = mode.equals("reset");
+		rescan = mode.equals("rescan");
+		Simulate.allGoods.clear();
+		Simulate.allWarehouses.clear();
+		Simulate.allTrucks.clear();
+		for (int i = 0; i < GOODS; i++)
+		{
+			Goods g = new Goods();
+			Simulate.allGoods.put(g.tag, g);
+		}
+		for (int i = 0; i < WAREHOUSES; i++)
+		{
+			Warehouses w = new Warehouses(i, 0);
+			Simulate.allWarehouses.put(w.id, w);
+		}
+		for (int i = 0; i < TRUCKS; i++)
+		{
+			Trucks t = new Trucks();
+			Simulate.allTrucks.put(t.id, t);
+		}
+		world = new WorldState(Simulate.allGoods, Simulate.allWarehouses, Simulate.allTrucks);
+		for (int g = 0; g < GOODS; g++)
+			world.place(g, rand.nextInt(WAREHOUSES));
+		for (int t = 0; t < TRUCKS; t++)
+			world.dock(t, t % WAREHOUSES);
+	}
+
+	@Benchmark
+	public int hour()
+	{
+		// 1 UNLOAD, keep the order of the Goods left on board
+		for (int t = 0; t < cargo.length; t++)
+		{
+			IntList c = cargo[t];
+			int kept = 0;
+			for (int i = 0; i < c.size; i++)
+			{
+				int g = c.data[i];
+				if (rand.nextDouble() < unload)
+				{
+					world.unload(g);
+					if (reset)
+						world.trucks[t].resetCats();
+					else
+						world.trucks[t].removeCategories(world.goods[g]);
+				}
+				else
+					c.data[kept++] = g;
+			}
+			c.size = kept;
+		}
+
+		// 2 LOAD
+		int loads = 0;
+		for (int g = 0; g < world.goods.length; g++)
+		{
+			if (world.onTruck(g))
+				continue;
+			if (rand.nextDouble() > 0.5)
+			{
+				int tr = world.pickTruck(world.warehouseOf(g), rand);
+				if (tr >= 0)
+				{
+					Trucks t = world.trucks[tr];
+					Goods goods = world.goods[g];
+					int onBoard = rescan ? union(cargo[tr]) : t.categoriesOnBoard();
+					if (goods.allowedInTruck(onBoard))
+					{
+						t.updateCategories(goods);
+						world.load(g, tr);
+						cargo[tr].add(g);
+						loads++;
+					}
+				}
+			}
+		}
+
+		// 3 MOVE
+		for (int t = 0; t < cargo.length; t++)
+			world.moveTruck(t, rand.nextInt(world.warehouses.length));
+		return loads;
+	}
+
+	int union(IntList c)
+	{
+		int cats = 0;
+		for (int i = 0; i < c.size; i++)
+			cats |= world.goods[c.data[i]].cats & Rules.TRUCK_CATS;
+		return cats;
+	}
+}
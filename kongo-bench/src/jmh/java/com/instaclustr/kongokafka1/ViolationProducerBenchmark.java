@@ -0,0 +1,95 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/*
+ * ViolationProducer.send from 4 consumer threads to a MockProducer, sampled so the slowest sends show in the percentiles:
+ * - fast broker: every send acknowledged at once (the broker thread only forgets the MockProducer's history of sent records)
+ * - slow broker: a thread acknowledging BROKER_PER_MS a millisecond, MAX_IN_FLIGHT unacknowledged allowed, the rest dropped as overflow
+ * send() must not block either way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class ViolationProducerBenchmark
+{
+	static final int MAX_IN_FLIGHT = 10000;
+	static final int BROKER_PER_MS = 20;
+
+	@Param({ "fast", "slow" })
+	String broker;
+
+	Violation[] violations = new Violation[1024];
+	MockProducer<String, Violation> mock;
+	ViolationProducer producer;
+	Thread acks;
+
+	@Setup(Level.Iteration)
+	public void setup()
+	{
+		String location = "warehouses_" + Goods.randomUUID();
+		for (int i = 0; i < violations.length; i++)
+			violations[i] = new Violation(Violation.SENSOR, i, "goods_" + Goods.randomUUID(), location, "temp", i, 1);
+
+		boolean slow = broker.equals("slow");
+		mock = new MockProducer<String, Violation>(!slow, new StringSerializer(), new ViolationSerializer());
+		producer = new ViolationProducer(mock, "bench-violations", MAX_IN_FLIGHT);
+		acks = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted())
+			{
+				if (slow)
+				{
+					for (int i = 0; i < BROKER_PER_MS; i++)
+						if (!mock.completeNext())
+							break;
+				}
+				else
+					mock.clear();
+				try
+				{
+					Thread.sleep(1);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+			}
+		}, "bench-broker");
+		acks.start();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws InterruptedException
+	{
+		acks.interrupt();
+		acks.join();
+	}
+
+	// per thread position in the violations
+	@State(Scope.Thread)
+	public static class Next
+	{
+		int i;
+	}
+
+	@Benchmark
+	public boolean send(Next next)
+	{
+		return producer.send(violations[next.i = (next.i + 1) & (violations.length - 1)]);
+	}
+}
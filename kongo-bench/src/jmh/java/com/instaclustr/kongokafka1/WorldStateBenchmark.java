@@ -0,0 +1,247 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * The UNLOAD, LOAD and MOVE phases of one hour as in Simulate.loop, without events, at goods goods and 2 trucks per warehouse, on
+ * - maps: the old Simulate world state, String keyed maps (goodsInWarehouses, goodsInTrucks, trucksAtWarehouses, DockIndex)
+ * - worldState: the WorldState int arrays
+ * The world is kept from one hour to the next. Add -PbenchProfilers=gc for the allocation rate, 1M goods needs a big heap (-Xmx4g).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorldStateBenchmark
+{
+	static final int WAREHOUSES = 1000;
+	static final int TRUCKS = WAREHOUSES * 2;
+
+	@Param({ "100000", "1000000" })
+	int goods;
+
+	@Param({ "maps", "worldState" })
+	String state;
+
+	Random rand = new Random(1);
+	WorldState world;
+
+	// the maps Simulate kept before WorldState
+	HashMap<String, String> goodsInWarehouses = new HashMap<String, String>();
+	HashMap<String, String> goodsInTrucks = new HashMap<String, String>();
+	HashMap<String, String> trucksAtWarehouses = new HashMap<String, String>();
+	DockIndex trucksByWarehouse = new DockIndex();
+
+	// the reverse index of trucksAtWarehouses the LOAD phase used with the maps, warehouse -> trucks docked there
+	static class DockIndex
+	{
+		private final HashMap<String, ArrayList<String>> trucksAt = new HashMap<String, ArrayList<String>>();
+		private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+
+		void dock(String truck, String warehouse)
+		{
+			ArrayList<String> l = trucksAt.computeIfAbsent(warehouse, k -> new ArrayList<String>());
+			slots.put(truck, l.size());
+			l.add(truck);
+		}
+
+		void move(String truck, String from, String to)
+		{
+			if (from.equals(to))
+				return;
+			ArrayList<String> l = trucksAt.get(from);
+			int slot = slots.remove(truck);
+			String last = l.remove(l.size() - 1);
+			if (!last.equals(truck))
+			{
+				l.set(slot, last);
+				slots.put(last, slot);
+			}
+			dock(truck, to);
+		}
+
+		// as WorldState.pickTruck
+		String pick(String warehouse, Random rand)
+		{
+			ArrayList<String> l = trucksAt.get(warehouse);
+			if (l == null || l.isEmpty())
+				return null;
+			int i = l.size() - 1;
+			while (i > 0 && rand.nextBoolean())
+				i--;
+			return l.get(i);
+		}
+	}
+
+	@Setup
+	public void setup()
+	{
+		Simulate.allGoods.clear();
+		Simulate.allWarehouses.clear();
+		Simulate.allTrucks.clear();
+		for (int i = 0; i < goods; i++)
+		{
+			Goods g = new Goods();
+			Simulate.allGoods.put(g.tag, g);
+		}
+		for (int i = 0; i < WAREHOUSES; i++)
+		{
+			Warehouses w = new Warehouses(i, 0);
+			Simulate.allWarehouses.put(w.id, w);
+		}
+		for (int i = 0; i < TRUCKS; i++)
+		{
+			Trucks t = new Trucks();
+			Simulate.allTrucks.put(t.id, t);
+		}
+		world = new WorldState(Simulate.allGoods, Simulate.allWarehouses, Simulate.allTrucks);
+		for (int g = 0; g < world.goods.length; g++)
+			world.place(g, rand.nextInt(WAREHOUSES));
+		for (int t = 0; t < world.trucks.length; t++)
+			world.dock(t, t % WAREHOUSES);
+
+		if (state.equals("maps"))
+		{
+			for (int g = 0; g < world.goods.length; g++)
+				goodsInWarehouses.put(world.goodsTags[g], world.warehouseTags[world.warehouseOf(g)]);
+			for (int t = 0; t < world.trucks.length; t++)
+			{
+				trucksAtWarehouses.put(world.truckTags[t], world.warehouseTags[t % WAREHOUSES]);
+				trucksByWarehouse.dock(world.truckTags[t], world.warehouseTags[t % WAREHOUSES]);
+			}
+			world = null;
+		}
+	}
+
+	@Benchmark
+	public int hour()
+	{
+		return world == null ? mapsHour() : worldHour();
+	}
+
+	// the pre WorldState phases 1-3 of Simulate.loop on the maps
+	int mapsHour()
+	{
+		Iterator<String> it = goodsInTrucks.keySet().iterator();
+		while (it.hasNext())
+		{
+			String goodsKey = it.next();
+			String truckKey = goodsInTrucks.get(goodsKey);
+			goodsInWarehouses.put(goodsKey, trucksAtWarehouses.get(truckKey));
+			it.remove();
+			Simulate.allTrucks.get(truckKey).resetCats();
+		}
+
+		it = goodsInWarehouses.keySet().iterator();
+		while (it.hasNext())
+		{
+			String goodsKey = it.next();
+			String warehouseKey = goodsInWarehouses.get(goodsKey);
+			if (rand.nextDouble() > 0.5)
+			{
+				String truckKey = trucksByWarehouse.pick(warehouseKey, rand);
+				if (truckKey != null)
+				{
+					Trucks t = Simulate.allTrucks.get(truckKey);
+					Goods g = Simulate.allGoods.get(goodsKey);
+					if (g.allowedInTruck(t.categoriesOnBoard()) && g.truckTempRules(t))
+					{
+						t.updateCategories(g);
+						goodsInTrucks.put(goodsKey, truckKey);
+						it.remove();
+					}
+				}
+			}
+		}
+
+		List<String> keyList = new ArrayList<String>(Simulate.allWarehouses.keySet());
+		Collections.shuffle(keyList, rand);
+		Iterator<String> randKeys = keyList.iterator();
+		for (Map.Entry<String, String> entry : trucksAtWarehouses.entrySet())
+		{
+			String truckKey = entry.getKey();
+			Trucks truck = Simulate.allTrucks.get(truckKey);
+			String currentLoc = entry.getValue();
+			String destination = null;
+			while (destination == null)
+			{
+				if (!randKeys.hasNext())
+					randKeys = keyList.iterator();
+				destination = randKeys.next();
+				if (!truck.canDeliverToWarehouse(Simulate.allWarehouses.get(destination)))
+					destination = null;
+			}
+			trucksAtWarehouses.put(truckKey, destination);
+			trucksByWarehouse.move(truckKey, currentLoc, destination);
+		}
+		return goodsInTrucks.size();
+	}
+
+	// phases 1-3 of Simulate.loop on WorldState
+	int worldHour()
+	{
+		for (int g = 0; g < world.goods.length; g++)
+		{
+			if (!world.onTruck(g))
+				continue;
+			int t = world.truckOf(g);
+			world.unload(g);
+			world.trucks[t].removeCategories(world.goods[g]);
+		}
+
+		int loaded = 0;
+		for (int g = 0; g < world.goods.length; g++)
+		{
+			if (world.onTruck(g))
+				continue;
+			if (rand.nextDouble() > 0.5)
+			{
+				int tr = world.pickTruck(world.warehouseOf(g), rand);
+				if (tr >= 0)
+				{
+					Trucks t = world.trucks[tr];
+					Goods goods = world.goods[g];
+					if (goods.allowedInTruck(t.categoriesOnBoard()) && goods.truckTempRules(t))
+					{
+						t.updateCategories(goods);
+						world.load(g, tr);
+						loaded++;
+					}
+				}
+			}
+		}
+
+		int[] order = Simulate.shuffled(world.warehouses.length, rand);
+		int next = 0;
+		for (int tr = 0; tr < world.trucks.length; tr++)
+		{
+			Trucks truck = world.trucks[tr];
+			int destination = -1;
+			while (destination < 0)
+			{
+				if (next == order.length)
+					next = 0;
+				destination = order[next++];
+				if (!truck.canDeliverToWarehouse(world.warehouses[destination]))
+					destination = -1;
+			}
+			world.moveTruck(tr, destination);
+		}
+		return loaded;
+	}
+}
@@ -0,0 +1,103 @@
+package kongo1;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.instaclustr.kongokafka1.Quiet;
+
+/*
+ * Cost per sensor reading of checking the goods at the reading's location in kongo1, as numGoods grows with GOODS_PER_LOCATION
+ * goods per location:
+ * - scan: the old scan of all of goodsInWarehouses per reading, O(goods)
+ * - index: Simulate.checkGoodsInWarehouse using goodsAtLocations, flat per reading
+ * Both print the violations, System.out is switched off. GoodsAtLocationsTest checks they find the same violations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SensorCheckBenchmark
+{
+	static final int GOODS_PER_LOCATION = 10;
+	static final String[] METRICS = { "temp", "humidity", "illuminance", "ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+
+	@Param({ "1000", "10000", "100000" })
+	int numGoods;
+
+	Sensor[] readings = new Sensor[1024];
+	int i;
+
+	@Setup
+	public void setup()
+	{
+		Quiet.off();
+		Simulate.allGoods.clear();
+		Simulate.goodsInWarehouses.clear();
+		Simulate.goodsAtLocations.clear();
+		Simulate.checkGoods = true;
+
+		Random rand = new Random(1);
+		int numWarehouses = numGoods / GOODS_PER_LOCATION;
+		String[] warehouses = new String[numWarehouses];
+		for (int w = 0; w < numWarehouses; w++)
+			warehouses[w] = new Warehouses(w, 0).id;
+		for (int g = 0; g < numGoods; g++)
+		{
+			Goods goods = new Goods();
+			Simulate.allGoods.put(goods.tag, goods);
+			String w = warehouses[g % numWarehouses];
+			Simulate.goodsInWarehouses.put(goods.tag, w);
+			Simulate.goodsAtLocations.add(goods.tag, w);
+		}
+		for (int r = 0; r < readings.length; r++)
+			readings[r] = new Sensor(r, "SENSOR WAREHOUSE", warehouses[rand.nextInt(numWarehouses)], METRICS[rand.nextInt(METRICS.length)], rand.nextDouble() * 100);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Quiet.on();
+	}
+
+	@Benchmark
+	public int scan()
+	{
+		Sensor s = readings[i = (i + 1) & (readings.length - 1)];
+		return scan(s.tag, s);
+	}
+
+	@Benchmark
+	public void index()
+	{
+		Sensor s = readings[i = (i + 1) & (readings.length - 1)];
+		Simulate.checkGoodsInWarehouse(s.tag, s);
+	}
+
+	// the pre goodsAtLocations Simulate.checkGoodsInWarehouse
+	static int scan(String warehousekey, Sensor sensor)
+	{
+		int checked = 0;
+		for (String goodsKey: Simulate.goodsInWarehouses.keySet())
+		{
+			String warehouse = Simulate.goodsInWarehouses.get(goodsKey);
+			if (warehouse.equals(warehousekey))
+			{
+				Goods goods = Simulate.allGoods.get(goodsKey);
+				String v = goods.violatedSensorCatRules(sensor);
+				checked++;
+				if (!v.equals(""))
+					System.out.println("SENSOR RULE VIOLATION for goods=" + goodsKey + " " + goods.allCategories() + " in warehouse " + warehousekey + " violations: " + v);
+			}
+		}
+		return checked;
+	}
+}
@@ -3,6 +3,7 @@ plugins {
 }
 
 dependencies {
+    testImplementation("junit:junit:4.12")
 }
 
 application {
@@ -0,0 +1,54 @@
+/*
+ * Goods at each location (warehouse or truck), kept in step with goodsInWarehouses and goodsInTrucks by the simulation loop.
+ * Lets a sensor reading be checked against only the goods at its location instead of scanning all goods.
+ * Each goods remembers its slot in its location list so moving goods is O(1) (swap with the last goods and remove).
+ */
+
+package kongo1;
+import java.util.*;
+
+
+public class GoodsAtLocations {
+
+	private final HashMap<String, ArrayList<String>> goodsAt = new HashMap<String, ArrayList<String>>();
+	private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+
+	public void add(String goodsKey, String location)
+	{
+		ArrayList<String> l = goodsAt.computeIfAbsent(location, k -> new ArrayList<String>());
+		slots.put(goodsKey, l.size());
+		l.add(goodsKey);
+	}
+
+	public void remove(String goodsKey, String location)
+	{
+		ArrayList<String> l = goodsAt.get(location);
+		Integer slot = slots.remove(goodsKey);
+		if (l == null || slot == null)
+			return;
+		String last = l.remove(l.size() - 1);
+		if (!last.equals(goodsKey))
+		{
+			l.set(slot, last);
+			slots.put(last, slot);
+		}
+	}
+
+	public void move(String goodsKey, String from, String to)
+	{
+		remove(goodsKey, from);
+		add(goodsKey, to);
+	}
+
+	public List<String> goodsAt(String location)
+	{
+		ArrayList<String> l = goodsAt.get(location);
+		return l == null ? Collections.<String>emptyList() : Collections.unmodifiableList(l);
+	}
+
+	public void clear()
+	{
+		goodsAt.clear();
+		slots.clear();
+	}
+}
@@ -40,6 +40,9 @@ public class Simulate {
 	// trucks at each warehouse
 	static HashMap<String, String> trucksAtWarehouses = new HashMap<String, String>();
 	
+	// reverse of goodsInWarehouses and goodsInTrucks, goods at each warehouse or truck. Must be kept in step with them.
+	static GoodsAtLocations goodsAtLocations = new GoodsAtLocations();
+	
 	// truckKey and keep1 are hacks used in Goods loading code in the simulation loop.
 	static String truckKey;
 	
@@ -81,6 +84,7 @@ public class Simulate {
 			    String warehouse = trucksAtWarehouses.get(trucksKey);
 			    // change location of goods to warehouse
 			    goodsInWarehouses.put(goodsKey, warehouse);
+			    goodsAtLocations.move(goodsKey, trucksKey, warehouse);
 			    if (debug) System.out.println("Unloaded " + goodsKey + " from " + trucksKey + " at " + warehouse); 
 			    
 			    // generate UNLOAD RFID event
@@ -142,6 +146,7 @@ public class Simulate {
 			    				   t.updateCategories(g);
 			    				   goodsInTrucks.put(goodsKey, truckKey);
 			    				   it.remove();
+			    				   goodsAtLocations.move(goodsKey, warehouseKey, truckKey);
 			    				   if (debug) System.out.println("Loading " + goodsKey + " onto " + truckKey);
 				    	
 			    				   // generate RFID LOAD event
@@ -195,7 +200,7 @@ public class Simulate {
 			}
 			
 			// 4 SENSOR stream, simple version, each warehouse and truck produce only out one value per sensor metric per location per hour
-			// This is a very inefficient implementation as it checks rules for all goods in each truck every sensor event
+			// Each sensor event is checked against the rules of the goods at its location only (see goodsAtLocations)
 			Sensor sensor;
 			
 			// Truck SENSOR stream
@@ -288,44 +293,32 @@ public class Simulate {
 	}
 	
 	// for every goods in this truck check all sensor rules against this new sensor value and print warning
-	private static void checkGoodsInTruck(String truckskey, Sensor sensor)
+	static void checkGoodsInTruck(String truckskey, Sensor sensor)
 	{
 		if (!checkGoods)
 			return;
 		
-		for (String goodsKey: goodsInTrucks.keySet())
+		for (String goodsKey: goodsAtLocations.goodsAt(truckskey))
 		{
-			// which truck is this goods in?
-			String truck = goodsInTrucks.get(goodsKey);
-			// same location as sensor data?
-			if (truck.equals(truckskey))
-			{
-				Goods goods = allGoods.get(goodsKey);
-				String v = goods.violatedSensorCatRules(sensor);
-				if (!v.equals(""))
-					System.out.println("SENSOR RULE VIOLATION for goods=" + goodsKey + " " + goods.allCategories() + " in truck " + truckskey + " violations: " + v);
-			}
+			Goods goods = allGoods.get(goodsKey);
+			String v = goods.violatedSensorCatRules(sensor);
+			if (!v.equals(""))
+				System.out.println("SENSOR RULE VIOLATION for goods=" + goodsKey + " " + goods.allCategories() + " in truck " + truckskey + " violations: " + v);
 		}
 	}
 	
 	// for every goods in warehouse check all sensor rules against new sensor value and print warning
-	private static void checkGoodsInWarehouse(String warehousekey, Sensor sensor)
+	static void checkGoodsInWarehouse(String warehousekey, Sensor sensor)
 	{
 		if (!checkGoods)
 			return;
 		
-		for (String goodsKey: goodsInWarehouses.keySet())
+		for (String goodsKey: goodsAtLocations.goodsAt(warehousekey))
 		{
-			// which warehouse is this goods in?
-			String warehouse = goodsInWarehouses.get(goodsKey);
-			// same location as sensor data?
-			if (warehouse.equals(warehousekey))
-			{
-				Goods goods = allGoods.get(goodsKey);
-				String v = goods.violatedSensorCatRules(sensor);
-				if (!v.equals(""))
-					System.out.println("SENSOR RULE VIOLATION for goods=" + goodsKey + " " + goods.allCategories() + " in warehouse " + warehousekey + " violations: " + v);
-			}
+			Goods goods = allGoods.get(goodsKey);
+			String v = goods.violatedSensorCatRules(sensor);
+			if (!v.equals(""))
+				System.out.println("SENSOR RULE VIOLATION for goods=" + goodsKey + " " + goods.allCategories() + " in warehouse " + warehousekey + " violations: " + v);
 		}
 	}
 
@@ -400,6 +393,7 @@ public class Simulate {
 			String key = entry.getKey();
 			String value = entry.getValue();
 			System.out.println(key + " in " + value);
+			goodsAtLocations.add(key, value);
 		}
 	
 		System.out.println("Goods locations created");
@@ -0,0 +1,140 @@
+package kongo1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoodsAtLocationsTest {
+    static final int GOODS = 2000;
+    static final int WAREHOUSES = 20;
+    static final int TRUCKS = WAREHOUSES * 2;
+    static final String[] TRUCK_METRICS = { "temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity" };
+    static final String[] WAREHOUSE_METRICS = { "temp", "humidity", "illuminance", "ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+
+    private PrintStream out;
+    private ByteArrayOutputStream printed = new ByteArrayOutputStream();
+    private Random rand = new Random(1);
+
+    @Before public void setUp() {
+        out = System.out;
+        System.setOut(new PrintStream(printed, true));
+
+        Simulate.allGoods.clear();
+        Simulate.allWarehouses.clear();
+        Simulate.allTrucks.clear();
+        Simulate.goodsInWarehouses.clear();
+        Simulate.goodsInTrucks.clear();
+        Simulate.trucksAtWarehouses.clear();
+        Simulate.goodsAtLocations.clear();
+
+        List<String> warehouses = new ArrayList<String>();
+        for (int i = 0; i < WAREHOUSES; i++) {
+            Warehouses w = new Warehouses(i, 0);
+            Simulate.allWarehouses.put(w.id, w);
+            warehouses.add(w.id);
+        }
+        for (int i = 0; i < GOODS; i++) {
+            Goods g = new Goods();
+            Simulate.allGoods.put(g.tag, g);
+            String w = warehouses.get(i % WAREHOUSES);
+            Simulate.goodsInWarehouses.put(g.tag, w);
+            Simulate.goodsAtLocations.add(g.tag, w);
+        }
+        for (int i = 0; i < TRUCKS; i++) {
+            Trucks t = new Trucks();
+            t.resetCats();
+            Simulate.allTrucks.put(t.id, t);
+            Simulate.trucksAtWarehouses.put(t.id, warehouses.get(i % WAREHOUSES));
+        }
+
+        // move the goods around with the simulation loop, which keeps goodsAtLocations in step
+        Simulate.checkGoods = false;
+        Simulate.verbose = false;
+        Simulate.loop(3);
+        Simulate.checkGoods = true;
+    }
+
+    @After public void tearDown() {
+        System.setOut(out);
+        Simulate.verbose = true;
+    }
+
+    @Test public void goodsAtLocationsAgreeWithTheMaps() {
+        for (String w : Simulate.allWarehouses.keySet())
+            assertEquals(scanGoods(Simulate.goodsInWarehouses.entrySet(), w), sorted(Simulate.goodsAtLocations.goodsAt(w)));
+        for (String t : Simulate.allTrucks.keySet())
+            assertEquals(scanGoods(Simulate.goodsInTrucks.entrySet(), t), sorted(Simulate.goodsAtLocations.goodsAt(t)));
+    }
+
+    @Test public void warehouseViolationsAgreeWithScan() {
+        int violations = 0;
+        for (String w : Simulate.allWarehouses.keySet()) {
+            for (String metric : WAREHOUSE_METRICS) {
+                Sensor s = new Sensor(0, "SENSOR WAREHOUSE", w, metric, rand.nextDouble() * 100);
+                List<String> expected = scanViolations(Simulate.goodsInWarehouses.entrySet(), " in warehouse ", w, s);
+                printed.reset();
+                Simulate.checkGoodsInWarehouse(w, s);
+                assertEquals(expected, lines());
+                violations += expected.size();
+            }
+        }
+        assertTrue(violations > 0);
+    }
+
+    @Test public void truckViolationsAgreeWithScan() {
+        int violations = 0;
+        for (String t : Simulate.allTrucks.keySet()) {
+            for (String metric : TRUCK_METRICS) {
+                Sensor s = new Sensor(0, "SENSOR TRUCK", t, metric, rand.nextDouble() * 100);
+                List<String> expected = scanViolations(Simulate.goodsInTrucks.entrySet(), " in truck ", t, s);
+                printed.reset();
+                Simulate.checkGoodsInTruck(t, s);
+                assertEquals(expected, lines());
+                violations += expected.size();
+            }
+        }
+        assertTrue(violations > 0);
+    }
+
+    // the goods at location by the pre goodsAtLocations scan of all goods
+    private static List<String> scanGoods(Iterable<Map.Entry<String, String>> goodsAt, String location) {
+        List<String> goods = new ArrayList<String>();
+        for (Map.Entry<String, String> e : goodsAt)
+            if (e.getValue().equals(location))
+                goods.add(e.getKey());
+        return sorted(goods);
+    }
+
+    // the violations the pre goodsAtLocations checkGoodsInWarehouse and checkGoodsInTruck printed
+    private static List<String> scanViolations(Iterable<Map.Entry<String, String>> goodsAt, String in, String location, Sensor sensor) {
+        List<String> lines = new ArrayList<String>();
+        for (String goodsKey : scanGoods(goodsAt, location)) {
+            Goods goods = Simulate.allGoods.get(goodsKey);
+            String v = goods.violatedSensorCatRules(sensor);
+            if (!v.equals(""))
+                lines.add("SENSOR RULE VIOLATION for goods=" + goodsKey + " " + goods.allCategories() + in + location + " violations: " + v);
+        }
+        return sorted(lines);
+    }
+
+    private List<String> lines() {
+        String s = printed.toString();
+        return sorted(s.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(s.split(System.lineSeparator())));
+    }
+
+    private static List<String> sorted(List<String> l) {
+        List<String> copy = new ArrayList<String>(l);
+        Collections.sort(copy);
+        return copy;
+    }
+}
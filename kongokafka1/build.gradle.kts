@@ -5,7 +5,10 @@ plugins {
 dependencies {
     implementation("com.google.guava:guava:28.2-jre")
     implementation("org.apache.kafka:kafka-clients:2.5.0")
-    //testImplementation("junit:junit:4.12")
+    implementation("org.apache.kafka:kafka-streams:2.5.0")
+
+    testImplementation("org.apache.kafka:kafka-streams-test-utils:2.5.0")
+    testImplementation("junit:junit:4.12")
 }
 
 application {
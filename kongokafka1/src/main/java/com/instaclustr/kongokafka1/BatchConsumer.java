@@ -0,0 +1,301 @@
+package com.instaclustr.kongokafka1;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+/*
+ * Consumer loop that hands each polled batch to handle() and commits offsets itself, instead of auto-commit.
+ *
+ * At least once: offsets are committed (async) only after handle() has returned for the whole batch, synchronously when partitions
+ * are revoked in a rebalance and on shutdown. If the process dies between handling and committing, the batch is handled again.
+ * Batch size and fetch behaviour come from KafkaProperties (max.poll.records, fetch.min.bytes, fetch.max.wait.ms,
+ * max.partition.fetch.bytes), which can be set with system properties.
+ *
+ * Subscribes to a single topic, or to every topic matching a Pattern so that a fixed pool of consumers in one group can share
+ * the partitions of many topics (e.g. one topic per location).
+ *
+ * The Consumer is passed in, so subclasses can be run against a MockConsumer.
+ * It is a task, KongoRuntime runs it on an executor whose thread factory names the threads, shutdown() ends the loop.
+ */
+public abstract class BatchConsumer<K, V> implements Runnable
+{
+	private final String name;
+	protected final Consumer<K, V> consumer;
+	protected final String topic;
+	// subscribe to all topics matching pattern instead of topic, null for a single topic
+	protected final Pattern pattern;
+
+	private volatile boolean running = true;
+	private final LongAdder records = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder commitFailures = new LongAdder();
+	// time spent in handle(), and end to end latency (handled - record timestamp) of the last record of each batch
+	private final LongAdder handleNanos = new LongAdder();
+	private final LongAccumulator maxHandleNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder latencyMs = new LongAdder();
+	private final LongAdder latencySamples = new LongAdder();
+	private final LongAccumulator maxLatencyMs = new LongAccumulator(Math::max, 0);
+	private volatile long lastBatchNanos = System.nanoTime();
+
+	private static final AtomicInteger ids = new AtomicInteger();
+
+	protected BatchConsumer(String name, String topic, Consumer<K, V> consumer)
+	{
+		this(name, topic, null, consumer);
+	}
+
+	protected BatchConsumer(String name, Pattern pattern, Consumer<K, V> consumer)
+	{
+		this(name, pattern.pattern(), pattern, consumer);
+	}
+
+	private BatchConsumer(String name, String topic, Pattern pattern, Consumer<K, V> consumer)
+	{
+		this.name = name;
+		this.topic = topic;
+		this.pattern = pattern;
+		this.consumer = consumer;
+	}
+
+	// unique consumer name, e.g. SensorConsumer-2
+	protected static String consumerName(String prefix)
+	{
+		return prefix + "-" + ids.getAndIncrement();
+	}
+
+	// consumer properties for a group, manual commits and the batch tunables
+	static Properties consumerProps(String groupId, String keyDeserializer, String valueDeserializer)
+	{
+		Properties props = new Properties();
+		props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
+		props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+		props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+		props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, "30000");
+		props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, KafkaProperties.MAX_POLL_RECORDS);
+		props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, KafkaProperties.FETCH_MIN_BYTES);
+		props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, KafkaProperties.FETCH_MAX_WAIT_MS);
+		props.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, KafkaProperties.MAX_PARTITION_FETCH_BYTES);
+		props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
+		props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
+		return props;
+	}
+
+	// consumerProps for a pattern subscription: topics created after subscribing are found at the next metadata refresh,
+	// and read from the beginning, as the first sensor events for a new location topic are produced before it is found
+	static Properties patternConsumerProps(String groupId, String keyDeserializer, String valueDeserializer)
+	{
+		Properties props = consumerProps(groupId, keyDeserializer, valueDeserializer);
+		props.put(ConsumerConfig.METADATA_MAX_AGE_CONFIG, KafkaProperties.METADATA_MAX_AGE_MS);
+		props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+		return props;
+	}
+
+	// process a whole batch, offsets are committed when this returns
+	protected abstract void handle(ConsumerRecords<K, V> batch);
+
+	// called after every poll with the time it took, empty batches included
+	protected void polled(ConsumerRecords<K, V> batch, long nanos)
+	{
+	}
+
+	// extra rebalance listener (e.g. a LagMonitor), null for none
+	protected ConsumerRebalanceListener rebalanceListener()
+	{
+		return null;
+	}
+
+	// called once when the consume loop ends, after the final commit
+	protected void closed()
+	{
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public void run()
+	{
+		ConsumerRebalanceListener extra = rebalanceListener();
+		// false while a batch is being handled, so a batch that failed half way is not committed
+		boolean handled = true;
+		try
+		{
+			ConsumerRebalanceListener listener = new ConsumerRebalanceListener() {
+				@Override
+				public void onPartitionsRevoked(Collection<TopicPartition> partitions)
+				{
+					// everything polled so far has been handled, commit it before another consumer takes the partitions
+					commitSync();
+					if (extra != null)
+						extra.onPartitionsRevoked(partitions);
+				}
+
+				@Override
+				public void onPartitionsAssigned(Collection<TopicPartition> partitions)
+				{
+					if (extra != null)
+						extra.onPartitionsAssigned(partitions);
+				}
+			};
+			if (pattern == null)
+			{
+				consumer.subscribe(Collections.singletonList(topic), listener);
+				Log.info("consumer.subscribed", "consumer", getName(), "topic", topic);
+			}
+			else
+			{
+				consumer.subscribe(pattern, listener);
+				Log.info("consumer.subscribed", "consumer", getName(), "pattern", topic);
+			}
+
+			Duration timeout = Duration.ofMillis(KafkaProperties.POLL_TIMEOUT_MS);
+			while (running)
+			{
+				long t0 = System.nanoTime();
+				ConsumerRecords<K, V> batch = consumer.poll(timeout);
+				polled(batch, System.nanoTime() - t0);
+				if (batch.isEmpty())
+					continue;
+
+				long t1 = System.nanoTime();
+				handled = false;
+				handle(batch);
+				handled = true;
+				long t2 = System.nanoTime();
+				records.add(batch.count());
+				batches.increment();
+				handleNanos.add(t2 - t1);
+				maxHandleNanos.accumulate(t2 - t1);
+				lastBatchNanos = t2;
+				latency(batch);
+				consumer.commitAsync(this::committed);
+			}
+		}
+		catch (WakeupException e)
+		{
+			// shutdown
+		}
+		finally
+		{
+			if (handled)
+				commitSync();
+			consumer.close();
+			closed();
+			Log.info("consumer.closed", "consumer", getName(), "records", records.sum(), "batches", batches.sum(), "commitFailures", commitFailures.sum());
+		}
+	}
+
+	private void latency(ConsumerRecords<K, V> batch)
+	{
+		ConsumerRecord<K, V> last = null;
+		for (TopicPartition tp : batch.partitions())
+		{
+			List<ConsumerRecord<K, V>> records = batch.records(tp);
+			ConsumerRecord<K, V> r = records.get(records.size() - 1);
+			if (last == null || r.timestamp() > last.timestamp())
+				last = r;
+		}
+		// records without a timestamp (e.g. from a MockConsumer) have -1
+		if (last.timestamp() < 0)
+			return;
+		long ms = System.currentTimeMillis() - last.timestamp();
+		latencyMs.add(ms);
+		latencySamples.increment();
+		maxLatencyMs.accumulate(ms);
+	}
+
+	private void committed(Map<TopicPartition, OffsetAndMetadata> offsets, Exception e)
+	{
+		// a later commit (or the final commitSync) covers these offsets, so a failed async commit is only counted
+		if (e != null)
+		{
+			commitFailures.increment();
+			Log.warn("consumer.commitFailed", "consumer", getName(), "error", e);
+		}
+	}
+
+	private void commitSync()
+	{
+		try
+		{
+			try
+			{
+				consumer.commitSync();
+			}
+			catch (WakeupException e)
+			{
+				// shutdown() was called while handling the last batch, the wakeup is used up now so commit again
+				consumer.commitSync();
+			}
+		}
+		catch (RuntimeException e)
+		{
+			commitFailures.increment();
+			Log.warn("consumer.commitFailed", "consumer", getName(), "error", e);
+		}
+	}
+
+	public long records()
+	{
+		return records.sum();
+	}
+
+	public long batches()
+	{
+		return batches.sum();
+	}
+
+	public double avgHandleMs()
+	{
+		long n = batches.sum();
+		return n == 0 ? 0 : handleNanos.sum() / 1e6 / n;
+	}
+
+	public double maxHandleMs()
+	{
+		return maxHandleNanos.get() / 1e6;
+	}
+
+	// -1 if no record had a timestamp
+	public double avgLatencyMs()
+	{
+		long n = latencySamples.sum();
+		return n == 0 ? -1 : (double) latencyMs.sum() / n;
+	}
+
+	public long maxLatencyMs()
+	{
+		return latencySamples.sum() == 0 ? -1 : maxLatencyMs.get();
+	}
+
+	// ms since a batch was last handled (or since this consumer was created)
+	public long idleMs()
+	{
+		return (System.nanoTime() - lastBatchNanos) / 1000000;
+	}
+
+	public void shutdown()
+	{
+		running = false;
+		consumer.wakeup();
+	}
+}
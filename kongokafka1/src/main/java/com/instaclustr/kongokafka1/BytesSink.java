@@ -0,0 +1,40 @@
+package com.instaclustr.kongokafka1;
+
+/*
+ * Base for sinks that keep the events as bytes: each event is encoded in the binary WireFormat, as it would be sent to Kafka
+ * (per metric Sensors, or SensorFrames with Simulate.sensorFrames), and passed to write() with a type byte saying which it is.
+ */
+public abstract class BytesSink implements EventSink
+{
+	public static final byte RFID = 'R';
+	public static final byte SENSOR = 'S';
+	public static final byte FRAME = 'F';
+
+	private static final SensorFrameSerializer FRAMES = new SensorFrameSerializer();
+
+	protected abstract void write(byte type, byte[] bytes);
+
+	@Override
+	public void rfid(RFIDEvent e)
+	{
+		write(RFID, RFIDEventSerializer.serializeBinary(e));
+	}
+
+	@Override
+	public void sensors(SensorFrame frame)
+	{
+		if (Simulate.sensorFrames)
+			write(FRAME, FRAMES.serialize(null, frame));
+		else
+		{
+			Sensor s = new Sensor();
+			for (int i = 0; i < frame.size(); i++)
+				write(SENSOR, SensorSerializer.serializeBinary(frame.sensor(i, s)));
+		}
+	}
+
+	@Override
+	public void endHour()
+	{
+	}
+}
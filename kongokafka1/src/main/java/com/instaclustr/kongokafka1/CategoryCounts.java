@@ -0,0 +1,51 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Arrays;
+
+/*
+ * Goods per co-location category (Rules.TRUCK_CATS bit) at one place, a truck or a LocationRegistry.Location,
+ * and the union of the categories with a count > 0. add/remove are O(1), one step per category bit of the Goods.
+ * Not thread safe, the owner guards it.
+ */
+final class CategoryCounts
+{
+	private final int[] counts = new int[Integer.SIZE - Integer.numberOfLeadingZeros(Rules.TRUCK_CATS)];
+	private int cats;
+
+	// a Goods with these categories arrived, a category is set with the first Goods having it
+	void add(int goodsCats)
+	{
+		for (int c = goodsCats & Rules.TRUCK_CATS; c != 0; c &= c - 1)
+			if (counts[Integer.numberOfTrailingZeros(c)]++ == 0)
+				cats |= c & -c;
+	}
+
+	// a Goods with these categories left, a category is cleared with the last Goods having it
+	void remove(int goodsCats)
+	{
+		for (int c = goodsCats & Rules.TRUCK_CATS; c != 0; c &= c - 1)
+			if (--counts[Integer.numberOfTrailingZeros(c)] == 0)
+				cats &= ~(c & -c);
+	}
+
+	int cats()
+	{
+		return cats;
+	}
+
+	// the union without one of the counted Goods with these categories: the categories only it has are left out
+	int without(int goodsCats)
+	{
+		int others = cats;
+		for (int c = goodsCats & Rules.TRUCK_CATS; c != 0; c &= c - 1)
+			if (counts[Integer.numberOfTrailingZeros(c)] == 1)
+				others &= ~(c & -c);
+		return others;
+	}
+
+	void clear()
+	{
+		Arrays.fill(counts, 0);
+		cats = 0;
+	}
+}
@@ -0,0 +1,40 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Only counts the events, for the simulator's own event generation rate
+public class CountingSink implements EventSink
+{
+	private final LongAdder rfid = new LongAdder();
+	private final LongAdder frames = new LongAdder();
+	private final LongAdder readings = new LongAdder();
+
+	@Override
+	public void rfid(RFIDEvent e)
+	{
+		rfid.increment();
+	}
+
+	@Override
+	public void sensors(SensorFrame frame)
+	{
+		frames.increment();
+		readings.add(frame.size());
+	}
+
+	@Override
+	public void endHour()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+		Log.info("sink.closed", "sink", "count", "rfidEvents", rfid.sum(), "sensorFrames", frames.sum(), "sensorReadings", readings.sum());
+	}
+
+	public long events()
+	{
+		return rfid.sum() + readings.sum();
+	}
+}
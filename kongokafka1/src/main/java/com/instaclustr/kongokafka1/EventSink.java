@@ -0,0 +1,26 @@
+package com.instaclustr.kongokafka1;
+
+/*
+ * Where Simulate.loop and ShardedSimulate send the events they generate.
+ *
+ * KafkaSink sends them with the Simulate producers. The others keep the simulator off the network, to measure its own event
+ * generation rate (CountingSink), or to capture the events in memory (RingBufferSink) or in a file (MappedFileSink) for load
+ * generation and profiling. Selected with -Dkongo.sink=kafka|count|ring|mmap, see Simulate.newSink().
+ *
+ * Implementations must be thread safe, ShardedSimulate calls them from all its shards at once.
+ */
+public interface EventSink
+{
+	void rfid(RFIDEvent e);
+
+	// all the sensor metrics of a location for one hour
+	void sensors(SensorFrame frame);
+
+	// called once all events for an hour have been produced
+	void endHour();
+
+	// called once at the end of the simulation
+	default void close()
+	{
+	}
+}
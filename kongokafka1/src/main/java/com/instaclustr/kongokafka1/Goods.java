@@ -7,7 +7,6 @@
 
 package com.instaclustr.kongokafka1;
 
-import java.util.UUID;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -19,24 +18,13 @@ public class Goods {
 	
        String tag;	// each Goods has a unique random unique RFID tag
        
-       // simple approach to categories to allow Goods with multiple categories, add new Boolean var for each new category
-       Boolean categoryPerishable = false;	// has a useByDate
-       Boolean categoryHazardous = false; 	// Is Dangerous to other things. Single Hazardous type for time being, add sub-types later
-       Boolean categoryFragile = false;		// Will break if vibrated or accelerated too much
-       Boolean categoryEdible = false;		// Is food
-       Boolean categoryMedicinal = false;	// Medicines or for medical use
-       Boolean categoryDry = false;			// Keep dry, or may explode, rust, spoil, etc.
-       Boolean categoryBulky = false; 		// heavy and big, may break other things
-       // Environmental/temperature category, only 1 allowed
-       Boolean categoryFrozenTemp = false;
-       Boolean categoryHeatSensitiveTemp = false;
-       Boolean categoryCoolTemp = false;
-       Boolean categoryRoomTemp = false;
-       Boolean categoryAmbientTemp = false;
+       // categories as a bitmask of Rules category bits (Rules.PERISHABLE etc.), add a new bit in Rules for each new category.
+       // Only 1 environmental/temperature category allowed.
+       int cats;
        
        Temp temp = null; 			//  temperature object with actual ranges and comparison methods
        long useByDate;				// optional "use by date" for Perishable goods.
-       String categories;			// string representing all true categories
+       SensorRules sensorRules;		// sensor rules compiled for the categories
        // a few properties such as weight etc
        Double weight;				// total weight in Kg of goods in package
        Long quantity;				// how many of same type of thing are associated with the tag
@@ -46,6 +34,10 @@ public class Goods {
        long breadth;
        long volume;					// computed from dimensions
 
+       // where these Goods are, maintained by LocationRegistry under the location's lock
+       volatile LocationRegistry.Location location;
+       int slot;
+
        // sensible min/max values
        final long maxWeight             = 10000;
        final long maxHeight             = 1000;
@@ -62,7 +54,7 @@ public class Goods {
        public Goods()
        {
 
-              Random rand = new Random();
+              Random rand = SimRandom.random();
 
               // associate tag with this Goods
               this.tag = this.prefix + randomUUID();
@@ -77,88 +69,103 @@ public class Goods {
               this.volume = this.height * this.width * this.breadth;
               
               this.useByDate = Long.MAX_VALUE;
-              this.categoryPerishable = rand.nextDouble() < 0.2;
-              if (this.categoryPerishable)
+              if (rand.nextDouble() < 0.2)
+              {
+            	  	cats |= Rules.PERISHABLE;
             	  	this.useByDate = rand.nextInt(100000);
+              }
               
-              this.categoryHazardous = rand.nextDouble() < 0.1;
-              this.categoryFragile = rand.nextDouble() < 0.05;
-              this.categoryEdible = rand.nextDouble() < 0.2;
-              this.categoryMedicinal = rand.nextDouble() < 0.2;
+              if (rand.nextDouble() < 0.1) cats |= Rules.HAZARDOUS;
+              if (rand.nextDouble() < 0.05) cats |= Rules.FRAGILE;
+              if (rand.nextDouble() < 0.2) cats |= Rules.EDIBLE;
+              if (rand.nextDouble() < 0.2) cats |= Rules.MEDICINAL;
               
               // bulky if (any dimension > 1m || volume > (50*50*50)) and weight > 100kg
-              this.categoryBulky = (this.height > 100.0 || this.width > 100.0 || this.breadth > 100.0 || this.volume > 125000) && this.weight >= 100.0;
+              if ((this.height > 100.0 || this.width > 100.0 || this.breadth > 100.0 || this.volume > 125000) && this.weight >= 100.0)
+            	  	cats |= Rules.BULKY;
               
               // decide if it has a temperature category and pick only one.
               // 1.0 chance if perishable or medicinal
-              if (rand.nextDouble() < 0.2 || (this.categoryMedicinal || this.categoryPerishable))
+              if (rand.nextDouble() < 0.2 || has(Rules.MEDICINAL | Rules.PERISHABLE))
               {
             	  	int r = rand.nextInt(5);
             	  	switch (r)
             	  	{
-            	  		case 0: this.categoryFrozenTemp = true; temp = new Temp(0); break;
-            	  		case 1:	this.categoryHeatSensitiveTemp = true; temp = new Temp(1); break;
-            	  		case 2:	this.categoryCoolTemp = true; temp = new Temp(2); break;
-            	  		case 3:	this.categoryRoomTemp = true; temp = new Temp(3); break;
-            	  		case 4:	this.categoryAmbientTemp = true; temp = new Temp(4); break;
+            	  		case 0: cats |= Rules.FROZEN_TEMP; temp = new Temp(0); break;
+            	  		case 1:	cats |= Rules.HEAT_SENSITIVE_TEMP; temp = new Temp(1); break;
+            	  		case 2:	cats |= Rules.COOL_TEMP; temp = new Temp(2); break;
+            	  		case 3:	cats |= Rules.ROOM_TEMP; temp = new Temp(3); break;
+            	  		case 4:	cats |= Rules.AMBIENT_TEMP; temp = new Temp(4); break;
             	  	}
               }
              
-              this.categoryDry = rand.nextDouble() < 0.2;
-              // create string representation of all categories
-              this.categories = allCategories();
+              if (rand.nextDouble() < 0.2) cats |= Rules.DRY;
+
+              // compile (or share) the sensor rules for these categories
+              this.sensorRules = SensorRules.forCategories(cats, temp);
+       }
+
+       // Goods read back from Kafka (GoodsSerializer), only the tag and what the sensor rules need
+       Goods(String tag, int cats, long useByDate)
+       {
+              this.tag = tag;
+              this.cats = cats;
+              this.useByDate = useByDate;
+              // the temperature category bits are in Temp sub category order, FROZEN_TEMP is Temp(0)
+              if ((cats & Rules.TEMP_CATS) != 0)
+            	  	temp = new Temp(Integer.numberOfTrailingZeros(cats & Rules.TEMP_CATS) - Integer.numberOfTrailingZeros(Rules.FROZEN_TEMP));
+              this.sensorRules = SensorRules.forCategories(cats, temp);
        }
 
        // return random UUID as String
        public static String randomUUID()
        {
-    	   		UUID uuid = UUID.randomUUID();
-    	   		String r = uuid.toString();
-    	   		return r;
+    	   		return SimRandom.uuid();
        }
 
        
-       // return all categories as a String
-       public  String allCategories()
+       // return all categories as a String, only built when needed (for printing)
+       public String allCategories()
        {
-    	   		String s = "";
-    	   	
-    	   		if (categoryPerishable) s += "P";
-    	   		if (categoryHazardous) s += "H";
-    	   		if (categoryFragile) s+= "F";  
-    	   		if (categoryEdible) s += "E";
-    	   		if (categoryMedicinal) s += "M";
-    	   		if (categoryBulky) s += "B";
-    	   		if (categoryDry) s += "D";
-    	   		if (categoryFrozenTemp) s += "T1";
-    	   		if (categoryHeatSensitiveTemp) s += "T2";
-    	   		if (categoryCoolTemp) s += "T3";
-    	   		if (categoryRoomTemp) s += "T4";
-    	   		if (categoryAmbientTemp) s += "T5";
-	  	
-    	   		return s;
+    	   		return Rules.categories(cats);
+       }
+
+       // true if this Goods has any of the category bits
+       public boolean has(int categoryBits)
+       {
+    	   		return (cats & categoryBits) != 0;
        }
        
-       // New Event Bus method to subscribe to sensor events from sensor topics
+       // sensor events for the location of this Goods, delivered by LocationRegistry (@Subscribe kept so Goods can still be registered with an EventBus)
        @Subscribe
        public void sensorEvent(Sensor sensor)
        {
 			// got a sensor event for this goods at the warehouse it is in. What to do with it? Check rules!
-			String v = violatedSensorCatRules(sensor);
+			int v = sensorViolations(sensor);
 			
-			if (!v.equals(""))
-				System.out.println("SENSOR RULE VIOLATION for goods=" + tag + ", categories=" + allCategories() + " in warehouse " + sensor.tag + " violations: " + v);
-			else
-				System.out.println("SENSOR RULE OK for goods=" + tag + " " + allCategories() + " in warehouse " + sensor.tag + " violations: " + v);		
+			// every violation goes to the violations topic, the log records are sampled (the Sensor may be pooled, copy out what is logged)
+			if (v != 0)
+			{
+				ViolationProducer out = ViolationProducer.shared();
+				if (out != null)
+					out.send(Violation.sensor(sensor, tag, v));
+				if (Log.sampled(Log.Level.WARN, tag))
+					Log.warn("sensor.violation", "goods", tag, "categories", allCategories(), "location", sensor.tag,
+							"metric", sensor.metric, "value", sensor.value, "time", sensor.time, "violations", SensorRules.reasons(v));
+			}
+			else if (Log.sampled(Log.Level.DEBUG, tag))
+				Log.debug("sensor.ok", "goods", tag, "categories", allCategories(), "location", sensor.tag, "metric", sensor.metric);
        }
        
        // if this Goods gets a ColocatedCheckEvent message then check if it is happy being in same truck as the passed goods object
        // prevent checking against self!
        // Note that as we have to actually get the Goods object being moved we have to do this for every Good already in the truck.
+       // The RFID load handlers check the truck's category mask instead (LocationRegistry.Location.conflicts), this is for ColocatedCheckEvents posted directly.
        @Subscribe
        public void colocatedRulesEvent(ColocatedCheckEvent event)
        {
-			System.out.println("GOT Colocated Check EVENT! Object=" +  tag);
+			if (Log.on(Log.Level.TRACE))
+				Log.trace("colocated.check", "goods", tag, "loading", event.goodsKey);
 			// don't check against self!
 			if (tag != event.goodsKey)
 			{
@@ -166,238 +173,75 @@ public class Goods {
 				Goods loadMe = Simulate.allGoods.get(event.goodsKey);
 				if (loadMe != null)
 				{
-					boolean happy = allowedInTruck(loadMe);
-					// TODO This should be a new violation event, will add it for next version.
-					if (!happy)
-						System.out.println("Object already loaded on Truck " + tag + " is NOT HAPPY with Goods being loaded= " + event.goodsKey);
+					if (notAllowedInTruck(loadMe))
+						truckConflict(loadMe, event.time, event.truckKey);
 				}
 			}
        }
+
+       // these Goods, on truckKey, are not allowed with the Goods being loaded
+       void truckConflict(Goods loading, long time, String truckKey)
+       {
+			int conflicts = Rules.conflicts(cats) & loading.cats;
+			ViolationProducer out = ViolationProducer.shared();
+			if (out != null)
+				out.send(new Violation(Violation.TRUCK, time, tag, truckKey, loading.tag, 0, conflicts));
+			if (Log.sampled(Log.Level.WARN, tag))
+				Log.warn("truck.violation", "goods", tag, "loading", loading.tag, "truck", truckKey, "categories", Rules.categories(conflicts));
+       }
        
        // methods to check if 2 Goods are allowed to be transported in the same truck based on categories
        // simplified compared with original intention, as no hazardous goods are currently allowed together.
+       // One AND of the precomputed conflict mask for our categories with the other categories (see Rules).
        public boolean notAllowedInTruck(Goods y)
        {
-    	   		if (		categoryFragile && y.categoryBulky ||
-    	   				categoryBulky && y.categoryFragile ||
-    	   				categoryHazardous && (y.categoryEdible || y.categoryMedicinal) ||
-    	   				(categoryEdible || categoryMedicinal) && y.categoryHazardous ||
-    	   				categoryEdible && y.categoryMedicinal ||
-    	   				categoryMedicinal && y.categoryEdible ||
-    	   				categoryHazardous && y.categoryHazardous
-    	   		)
-    	   			return true;
-    	   		else return false;
+    	   		return (Rules.conflicts(cats) & y.cats) != 0;
        }
        
        public boolean allowedInTruck(Goods y)
        {
     	   		return !notAllowedInTruck(y);
        }
-             
-       // sensor range checking methods. Only return false (violation) if the sensor metric value is present AND the value is out of range.
-       // dry if not wet.
-       public boolean dry(Sensor sensor)
-       {
-    	   		return !(sensor.metric.equals("humidity") && sensor.value > 60);
-       }
-       
-       // dark if not light
-       public boolean dark(Sensor sensor)
-       {
-    	   	return !(sensor.metric.equals("illuminace") && sensor.value > 500);
-       }
-       
-       // return true if use by date is in the future
-       public boolean useByDate(Sensor sensor)
-       {
-    	   		long now = sensor.time;
-    	   		return (useByDate > now);
-       }
-       
-       // temperature check methods which uses the Temp object
-       public boolean tempCheck(Sensor sensor)
-       {
-    	   		return	!(sensor.metric.equals("temp") &&  !temp.tempInRange(sensor.value));
-       }
-       
-       public boolean frozen(Sensor sensor)
-       {
-    	   		return	!(sensor.metric.equals("temp") && sensor.value > -20);
-       }
-       
-       public boolean heatSensitive(Sensor sensor)
-       {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 2 || sensor.value > 8));
-       }
-       
-       public boolean cool(Sensor sensor)
-       {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 8 || sensor.value > 15));
-       }
-       
-       public boolean roomTemp(Sensor sensor)
-       {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 15 || sensor.value > 25));
-       }
-       
-       public boolean ambientTemp(Sensor sensor)
-       {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 1 || sensor.value > 30));
-       }
        
-       // composite rules for categories
-       public boolean rulePerishable(Sensor sensor)
+       // allowed in a truck with these categories on board (Trucks.categoriesOnBoard())?
+       public boolean allowedInTruck(int categoriesOnBoard)
        {
-    	  		return dry(sensor) && dark(sensor) && useByDate(sensor);
+    	   		return (Rules.conflicts(cats) & categoriesOnBoard) == 0;
        }
-      
-       public boolean ruleEdible(Sensor sensor)
-       {
-    	  		return dry(sensor);
-       }
-      
-       public boolean ruleMedicinal(Sensor sensor)
-       {
-    	  		return dry(sensor) && dark(sensor);
-       }
-      
-       public boolean lowG(Sensor sensor)
-       {
-    	   		return !(sensor.metric.equals("acceleration") && (sensor.value >= 5));
-       }
-      
-       public boolean smoothRide(Sensor sensor)
+             
+       // Sensor rule violations (SensorRules reason bits) for this event, 0 if none.
+       // Only the use by date isn't in the compiled table as it depends on the event time, not a metric.
+       public int sensorViolations(Sensor sensor)
        {
-    	  		return !(sensor.metric.equals("vibrationDisplacement") && sensor.value >= 10 ||
-    	  				sensor.metric.equals("vibrationVelocity") && sensor.value >= 100);
+    	   		int v = sensorRules.violations(sensor.metric, sensor.value);
+    	   		// useByDate is Long.MAX_VALUE unless perishable
+    	   		if (useByDate <= sensor.time)
+    	   			v |= SensorRules.PERISHABLE;
+    	   		return v;
        }
       
-      public boolean ruleFragile(Sensor sensor)
-      {
-    	  		return lowG(sensor) && smoothRide(sensor);
-      }
-      
       // given the categories check against the sensor metric/values
       public boolean checkSensorCatRules(Sensor sensor)
       {
-	    	  	boolean ok = true;
-	    	  	if (categoryFragile)
-	    	  		ok &= ruleFragile(sensor);
-	    	  	if (categoryMedicinal)
-	    	  		ok &= ruleMedicinal(sensor);
-	    	  	if (categoryPerishable)
-	    	  		ok &= rulePerishable(sensor);
-	    	  	if (categoryEdible)
-	    	  		ok &= ruleEdible(sensor);
-	    	  	if (categoryDry)
-	    	  		ok &= dry(sensor);
-	    	  	if (temp != null)
-	    	  		ok &= tempCheck(sensor);
-	    	  	
-	    	  	return ok;
+	    	  	return sensorViolations(sensor) == 0;
       }
       
       // this version returns String of all violations (false) or "" (true)
       public String violatedSensorCatRules(Sensor sensor)
       {
-	    	  	boolean a = true;
-	    	  	String s = "";
-	    	  	if (categoryFragile)
-	    	  	{
-	    	  		a = ruleFragile(sensor);
-	    	  		if (!a)
-	    	  			s += "fragile ";	
-	    	  	}
-	    	  	if (categoryMedicinal)
-	    	  	{
-	    	  		a = ruleMedicinal(sensor);
-	    	  		if (!a)
-	    	  			s += "medicinal ";
-	    	  	}
-	    	  	if (categoryPerishable)
-	    	  	{
-	    	  		a = rulePerishable(sensor);
-	    	  		if (!a)
-	    	  			s += "perishable ";
-	    	  	}
-	    	  	if (categoryEdible)
-	    	  	{
-	    	  		a = ruleEdible(sensor);
-	    	  		if (!a)
-	    	  			s += "edible ";
-	    	  	}
-	    	  	if (categoryDry)
-	    	  	{
-	    	  		a = dry(sensor);
-	    	  		if (!a)
-	    	  			s += "dry ";
-	    	  	}
-	    	  	if (temp != null)
-	    	  	{
-	    	  		a = tempCheck(sensor);
-	    	  		if (!a)
-	    	  			s += "temp";
-	    	  	}
-	    	  	
-	    	  	return s;
+	    	  	return SensorRules.reasons(sensorViolations(sensor));
       }
       
       // check if goods are allowed on a truck given temp rules and truck temperature range
       public boolean truckTempRules(Trucks truck)
       {
-	    	  	// if any temperature cat then check truck offering
-	    	  	if (categoryAmbientTemp || categoryCoolTemp || categoryFrozenTemp || categoryHeatSensitiveTemp || categoryRoomTemp)
-	    	  	{
-	    	  		if (!truck.tempControlled)
-	    	  			return false;
-	    	  			
-	    	  		// if needs to be frozen truck must be frozen etc
-	    	  		if (categoryFrozenTemp)
-	    	  			return truck.tempRange == 0;
-	    	  		
-	    	  		if (categoryHeatSensitiveTemp)
-	    	  			return truck.tempRange == 1;
-	    	  		
-	    	  		if (categoryCoolTemp)
-	    	  			return truck.tempRange == 2;
-	    	  		
-	    	  		if (categoryRoomTemp)
-	    	  			return truck.tempRange == 3;
-	    	  		
-	    	  		// for ambient temp, any temp range except freezing is ok
-	    	  		if (categoryAmbientTemp)
-	    	  			return truck.tempRange == 1 || truck.tempRange == 2 || truck.tempRange == 3 || truck.tempRange == 4;
-	    	  	}
-	    	  	return true;
+	    	  	return Rules.tempAllowed(cats, truck.tempControlled, truck.tempRange);
       }
       
       // Are Goods allowed in warehouse given temperature rules?
-	  public boolean warehouseTempRules(Warehouses truck)
+	  public boolean warehouseTempRules(Warehouses warehouse)
 	  {
-	  		// if any temp cat then check warehouse temperature offering
-		  	if (categoryAmbientTemp || categoryCoolTemp || categoryFrozenTemp || categoryHeatSensitiveTemp || categoryRoomTemp)
-		  	{
-		  		if (!truck.tempControlled)
-		  			return false;
-		  			
-		  		// if needs to be frozen truck must be frozen
-		  		if (categoryFrozenTemp)
-		  			return truck.tempRange == 0;
-		  		
-		  		if (categoryHeatSensitiveTemp)
-		  			return truck.tempRange == 1;
-		  		
-		  		if (categoryCoolTemp)
-		  			return truck.tempRange == 2;
-		  		
-		  		if (categoryRoomTemp)
-		  			return truck.tempRange == 3;
-		  		
-		  		if (categoryAmbientTemp)
-		  			return truck.tempRange == 1 || truck.tempRange == 2 || truck.tempRange == 3 || truck.tempRange == 4;
-		  	}
-		  	return true;
+		  	return Rules.tempAllowed(cats, warehouse.tempControlled, warehouse.tempRange);
 	  }   
 
 	  // return String of Goods categories and properties
@@ -405,11 +249,11 @@ public class Goods {
       {
               String s = "";
               s += "RFID tag=" + tag + ", ";
-              s += categoryPerishable ? " category Perishable, " : "";
-              s += categoryHazardous ? " category Hazardous, " : "";
-              s += categoryFragile ? " category Fragile, " : "";
-              s += categoryEdible ? " category Edible, " : "";
-              s += categoryBulky ? " category Bulky, " : "";
+              s += has(Rules.PERISHABLE) ? " category Perishable, " : "";
+              s += has(Rules.HAZARDOUS) ? " category Hazardous, " : "";
+              s += has(Rules.FRAGILE) ? " category Fragile, " : "";
+              s += has(Rules.EDIBLE) ? " category Edible, " : "";
+              s += has(Rules.BULKY) ? " category Bulky, " : "";
               s += weight + "kg, ";
               s += quantity + " items, ";
               s += height + "cm height, ";
@@ -426,7 +270,7 @@ public class Goods {
                      Goods g = new Goods();
                      String s = g.toStr();
                      System.out.println(s);
-                     System.out.println("Categories= " + g.categories);
+                     System.out.println("Categories= " + g.allCategories());
               }
        }
 
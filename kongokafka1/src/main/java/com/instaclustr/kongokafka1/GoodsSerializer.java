@@ -0,0 +1,71 @@
+package com.instaclustr.kongokafka1;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * (De)serializes Goods for the kongo-goods topic, only the tag and what the sensor rules need (categories and use by date),
+ * so consumers without the Simulate state (e.g. SensorRulesTopology) can check the rules.
+ * Binary WireFormat only, layout: magic, goods tag, varint categories, varint use by date.
+ */
+
+public class GoodsSerializer implements Closeable, AutoCloseable, Serializer<Goods>, Deserializer<Goods> {
+
+    @Override
+    public void configure(Map<String, ?> map, boolean b) {
+    }
+
+    @Override
+    public byte[] serialize(String s, Goods goods) {
+        if (goods == null)
+            return null;
+        ByteBuffer buf = ByteBuffer.allocate(1 + size(goods));
+        buf.put(WireFormat.MAGIC_V1);
+        put(buf, goods);
+        return buf.array();
+    }
+
+    @Override
+    public Goods deserialize(String topic, byte[] bytes) {
+        if (bytes == null)
+            return null;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            WireFormat.checkMagic(buf);
+            return get(buf);
+        }
+        catch(Exception e) {
+            throw new IllegalArgumentException("Error reading bytes", e);
+        }
+    }
+
+    // one Goods without the magic byte, also used for lists of Goods
+
+    static int size(Goods goods) {
+        return WireFormat.tagSize(WireFormat.tagCode(goods.tag), goods.tag)
+                + WireFormat.varLongSize(goods.cats)
+                + WireFormat.varLongSize(goods.useByDate);
+    }
+
+    static void put(ByteBuffer buf, Goods goods) {
+        WireFormat.putTag(buf, WireFormat.tagCode(goods.tag), goods.tag);
+        WireFormat.putVarLong(buf, goods.cats);
+        WireFormat.putVarLong(buf, goods.useByDate);
+    }
+
+    static Goods get(ByteBuffer buf) {
+        String tag = WireFormat.getTag(buf);
+        int cats = (int) WireFormat.getVarLong(buf);
+        long useByDate = WireFormat.getVarLong(buf);
+        return new Goods(tag, cats, useByDate);
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
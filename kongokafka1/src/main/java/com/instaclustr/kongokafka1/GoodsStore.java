@@ -0,0 +1,266 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Goods attributes in off-heap columns, one direct ByteBuffer per attribute, indexed by goods id (the WorldState ids when built with of()).
+ *
+ * Per goods: category bits (short), weight in kg (float), quantity (short, at most Goods.maxQuantity), height/width/breadth in cm (int),
+ * temperature range (byte, the Temp sub category 0-4, -1 for none) and use by date (int hour, NO_USE_BY if not perishable),
+ * 25 bytes outside the heap instead of a Goods object with its boxed Double/Long, Temp, per instance constants and tag.
+ * Tags are not stored, they stay in WorldState.goodsTags for the events. Volume is computed from the dimensions.
+ *
+ * The rule checks read the columns by id, the same checks as the Goods methods of the same name, without allocating:
+ * store.allowedInTruck(g, truck.categoriesOnBoard()), or through a View, a reusable cursor (view.at(g).truckTempRules(truck)).
+ * The sensor rules are shared per category set as for Goods, from an on-heap table indexed by the category bits.
+ * Filled by one thread, then safe to read from any number of threads (a View is per thread). The memory is freed with the store by GC.
+ */
+public class GoodsStore
+{
+	public static final int NO_USE_BY = Integer.MAX_VALUE;
+	public static final int NO_TEMP = -1;
+
+	// bytes per goods over all columns
+	static final int BYTES_PER_GOODS = 2 + 4 + 2 + 4 + 4 + 4 + 1 + 4;
+
+	final int capacity;
+	int size;
+
+	private final ByteBuffer cats;
+	private final ByteBuffer weight;
+	private final ByteBuffer quantity;
+	private final ByteBuffer height;
+	private final ByteBuffer width;
+	private final ByteBuffer breadth;
+	private final ByteBuffer tempRange;
+	private final ByteBuffer useBy;
+
+	// compiled sensor rules per category set, filled as goods are added
+	private final SensorRules[] sensorRules = new SensorRules[1 << Rules.CODES.length];
+
+	public GoodsStore(int capacity)
+	{
+		if (capacity < 0 || capacity > Integer.MAX_VALUE / 4)
+			throw new IllegalArgumentException("capacity " + capacity);
+		this.capacity = capacity;
+		cats = column(capacity, 2);
+		weight = column(capacity, 4);
+		quantity = column(capacity, 2);
+		height = column(capacity, 4);
+		width = column(capacity, 4);
+		breadth = column(capacity, 4);
+		tempRange = column(capacity, 1);
+		useBy = column(capacity, 4);
+	}
+
+	private static ByteBuffer column(int capacity, int bytes)
+	{
+		return ByteBuffer.allocateDirect(capacity * bytes).order(ByteOrder.nativeOrder());
+	}
+
+	// store with the goods in id order, goods g at index g
+	public static GoodsStore of(Goods[] goods)
+	{
+		GoodsStore store = new GoodsStore(goods.length);
+		for (Goods g : goods)
+			store.add(g);
+		return store;
+	}
+
+	// copy the attributes of g, returns its index
+	public int add(Goods g)
+	{
+		if (size == capacity)
+			throw new IllegalStateException("GoodsStore full, capacity " + capacity);
+		int i = size++;
+		cats.putShort(i << 1, (short) g.cats);
+		weight.putFloat(i << 2, g.weight == null ? 0 : g.weight.floatValue());
+		quantity.putShort(i << 1, g.quantity == null ? 0 : (short) g.quantity.longValue());
+		height.putInt(i << 2, (int) g.height);
+		width.putInt(i << 2, (int) g.width);
+		breadth.putInt(i << 2, (int) g.breadth);
+		tempRange.put(i, (byte) (g.temp == null ? NO_TEMP : g.temp.subCatNum));
+		useBy.putInt(i << 2, g.useByDate >= NO_USE_BY ? NO_USE_BY : (int) g.useByDate);
+		if (sensorRules[g.cats] == null)
+			sensorRules[g.cats] = g.sensorRules != null ? g.sensorRules : SensorRules.forCategories(g.cats, g.temp);
+		return i;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	// off-heap bytes held by the columns
+	public long bytes()
+	{
+		return (long) capacity * BYTES_PER_GOODS;
+	}
+
+	// columns
+
+	public int cats(int g)
+	{
+		return cats.getShort(g << 1);
+	}
+
+	public float weight(int g)
+	{
+		return weight.getFloat(g << 2);
+	}
+
+	public int quantity(int g)
+	{
+		return quantity.getShort(g << 1);
+	}
+
+	public int height(int g)
+	{
+		return height.getInt(g << 2);
+	}
+
+	public int width(int g)
+	{
+		return width.getInt(g << 2);
+	}
+
+	public int breadth(int g)
+	{
+		return breadth.getInt(g << 2);
+	}
+
+	public long volume(int g)
+	{
+		return (long) height(g) * width(g) * breadth(g);
+	}
+
+	public int tempRange(int g)
+	{
+		return tempRange.get(g);
+	}
+
+	public int useBy(int g)
+	{
+		return useBy.getInt(g << 2);
+	}
+
+	// rule checks, as the Goods methods
+
+	public boolean has(int g, int categoryBits)
+	{
+		return (cats(g) & categoryBits) != 0;
+	}
+
+	// allowed in a truck with these categories on board (Trucks.categoriesOnBoard())?
+	public boolean allowedInTruck(int g, int categoriesOnBoard)
+	{
+		return (Rules.conflicts(cats(g)) & categoriesOnBoard) == 0;
+	}
+
+	// temperature rules, the same Rules.tempAllowed as Goods
+	public boolean truckTempRules(int g, Trucks truck)
+	{
+		return Rules.tempAllowed(cats(g), truck.tempControlled, truck.tempRange);
+	}
+
+	public boolean warehouseTempRules(int g, Warehouses w)
+	{
+		return Rules.tempAllowed(cats(g), w.tempControlled, w.tempRange);
+	}
+
+	// Sensor rule violations (SensorRules reason bits) for this event, 0 if none
+	public int sensorViolations(int g, Sensor sensor)
+	{
+		int v = sensorRules[cats(g)].violations(sensor.metric, sensor.value);
+		int u = useBy(g);
+		if (u != NO_USE_BY && u <= sensor.time)
+			v |= SensorRules.PERISHABLE;
+		return v;
+	}
+
+	public View view()
+	{
+		return new View(this);
+	}
+
+	// a cursor over the store, at(g) moves it to goods g. Not thread safe, create one per thread and reuse it.
+	public static final class View
+	{
+		private final GoodsStore store;
+		private int g;
+
+		View(GoodsStore store)
+		{
+			this.store = store;
+		}
+
+		public View at(int g)
+		{
+			if (g < 0 || g >= store.size)
+				throw new IndexOutOfBoundsException("goods " + g + ", size " + store.size);
+			this.g = g;
+			return this;
+		}
+
+		public int id()
+		{
+			return g;
+		}
+
+		public int cats()
+		{
+			return store.cats(g);
+		}
+
+		public float weight()
+		{
+			return store.weight(g);
+		}
+
+		public int quantity()
+		{
+			return store.quantity(g);
+		}
+
+		public long volume()
+		{
+			return store.volume(g);
+		}
+
+		public int tempRange()
+		{
+			return store.tempRange(g);
+		}
+
+		public int useBy()
+		{
+			return store.useBy(g);
+		}
+
+		public boolean has(int categoryBits)
+		{
+			return store.has(g, categoryBits);
+		}
+
+		public boolean allowedInTruck(int categoriesOnBoard)
+		{
+			return store.allowedInTruck(g, categoriesOnBoard);
+		}
+
+		public boolean truckTempRules(Trucks truck)
+		{
+			return store.truckTempRules(g, truck);
+		}
+
+		public boolean warehouseTempRules(Warehouses w)
+		{
+			return store.warehouseTempRules(g, w);
+		}
+
+		public int sensorViolations(Sensor sensor)
+		{
+			return store.sensorViolations(g, sensor);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Arrays;
+
+// Growable int array, for the WorldState docked lists and the ShardedSimulate goods lists
+class IntList
+{
+	int[] data = new int[8];
+	int size;
+
+	static IntList[] array(int n)
+	{
+		IntList[] a = new IntList[n];
+		for (int i = 0; i < n; i++)
+			a[i] = new IntList();
+		return a;
+	}
+
+	void add(int v)
+	{
+		if (size == data.length)
+			data = Arrays.copyOf(data, size * 2);
+		data[size++] = v;
+	}
+
+	void clear()
+	{
+		size = 0;
+	}
+
+	void sort()
+	{
+		Arrays.sort(data, 0, size);
+	}
+}
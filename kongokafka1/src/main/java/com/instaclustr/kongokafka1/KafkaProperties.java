@@ -10,6 +10,38 @@ public class KafkaProperties {
     public static final int DELAY = 100;
     public static final String TOPIC = "kongo_topic1";
     public static final String CLIENT_ID = "KongoApplication";
+    public static final long LAG_SAMPLE_INTERVAL_MS = 5000;
+
+    // BatchConsumer batch and fetch tuning, override with -Dkongo.consumer.maxPollRecords=... etc.
+    public static final int MAX_POLL_RECORDS = Integer.getInteger("kongo.consumer.maxPollRecords", 1000);
+    public static final int FETCH_MIN_BYTES = Integer.getInteger("kongo.consumer.fetchMinBytes", 1);
+    public static final int FETCH_MAX_WAIT_MS = Integer.getInteger("kongo.consumer.fetchMaxWaitMs", 500);
+    public static final int MAX_PARTITION_FETCH_BYTES = Integer.getInteger("kongo.consumer.maxPartitionFetchBytes", 1024 * 1024);
+    public static final long POLL_TIMEOUT_MS = Long.getLong("kongo.consumer.pollTimeoutMs", 1000);
+    // how often pattern subscribed consumers look for new topics
+    public static final int METADATA_MAX_AGE_MS = Integer.getInteger("kongo.consumer.metadataMaxAgeMs", 5000);
+
+    // size of the sensor consumer pool, for one topic and for one topic per location
+    public static final int SENSOR_CONSUMERS = Integer.getInteger("kongo.sensorConsumers", 3);
+    // RFID consumers in the KongoRFIDEventConsumer group, kongo-rfid needs at least as many partitions for them all to be used
+    public static final int RFID_CONSUMERS = Integer.getInteger("kongo.rfidConsumers", 3);
+
+    // KongoRuntime: "platform" or "virtual" threads, how long consumers must be idle after the simulation before shutting down,
+    // and how long to wait for each task to stop
+    public static final String THREADS = System.getProperty("kongo.threads", "platform");
+    public static final long DRAIN_IDLE_MS = Long.getLong("kongo.drainIdleMs", 10000);
+    public static final long SHUTDOWN_TIMEOUT_MS = Long.getLong("kongo.shutdownTimeoutMs", 30000);
+
+    // ViolationProducer: the topic, producer batching, and how many violations may be unacknowledged before more are dropped.
+    // Set kongo.violations=false to only log them.
+    public static final boolean VIOLATIONS = Boolean.parseBoolean(System.getProperty("kongo.violations", "true"));
+    public static final String VIOLATIONS_TOPIC = System.getProperty("kongo.violations.topic", "kongo-violations");
+    public static final int VIOLATIONS_LINGER_MS = Integer.getInteger("kongo.violations.lingerMs", 50);
+    public static final int VIOLATIONS_BATCH_SIZE = Integer.getInteger("kongo.violations.batchSize", 256 * 1024);
+    public static final long VIOLATIONS_BUFFER_MEMORY = Long.getLong("kongo.violations.bufferMemory", 32 * 1024 * 1024);
+    public static final int VIOLATIONS_MAX_IN_FLIGHT = Integer.getInteger("kongo.violations.maxInFlight", 100000);
+    // how long ViolationProducer.create() waits for the violations topic metadata
+    public static final long VIOLATIONS_METADATA_WAIT_MS = Long.getLong("kongo.violations.metadataWaitMs", 10000);
 
     private KafkaProperties() {}
 }
\ No newline at end of file
@@ -4,9 +4,12 @@ package com.instaclustr.kongokafka1;
  * Top level main program to run Kongo simulation
  * This is the version for the Kongo blog part 3, Kafkafying Kongo: Serialization & one or many topics.
  * Options are:
- * Simulate.oneTopic = true then create one sensor topic with a single consumer, else create multiple sensor topics with multiple consumers (1 per Goods)
+ * Simulate.oneTopic = true then create one sensor topic, else create multiple sensor topics (1 per location), either way read by a fixed pool of consumers
  * Simulate.kafkaRFIDConsumerOn = true then create/use Kafka RFID consumers, else use EventBus handlers for rfid events.
  * Simulate.kafkaSensorConsumerOn = true, only used in Simulate, if true create/use Kafka sensor consumers, else use EventBus handlers for sensor events.
+ * -Dkongo.sensorFrames=true, sensor metrics are sent as one SensorFrame record per location and hour, read by SensorFrameConsumers.
+ * -Dkongo.threads=platform|virtual, the consumers and the simulator run on a KongoRuntime with platform or virtual threads.
+ * When the simulation has ended and the consumers have caught up (or on Ctrl-C) everything is shut down and a summary printed.
  * 
  */
 
@@ -14,31 +17,36 @@ package com.instaclustr.kongokafka1;
 public class KafkaRun
 {
 	
-	 public static void main(String[] args)
+	 public static void main(String[] args) throws InterruptedException
 	 {
-	     System.out.println("Welcome to the Instaclustr KONGO IoT Demo Application for Kafka!");
+	     Log.info("Welcome to the Instaclustr KONGO IoT Demo Application for Kafka!");
 	     	     
 	     if (Simulate.oneTopic)
-	    	 	System.out.println("MODE = one topic with single consumer");
+	    	 	Log.info("mode", "topics", "one", "consumers", "pool");
 	     else
-	    	 	System.out.println("MODE = multiple topics, one per location, each Goods subscribed to location topic");
+	    	 	Log.info("mode", "topics", "one per location", "consumers", "pool", "pattern", Simulate.kafkaSensorLocationTopics);
 
 	     // if we create > 1 consumer make sure that the number of partitions is >= numSensorConsumers
 	     // num partitions for topic is printed by SensorConsumer but no error handling performed at present. In theory you may want more consumers than topics to have some as spares.
+	     // With one topic per location the partitions of all the location topics are shared by the pool, so there are no spares.
 	     
-	     if (Simulate.oneTopic)
-	     {
-	    	 	// how many concurrent Kafka sensor consumers
-	    	 	int numSensorConsumers = 3;
-	    	 	System.out.println("Starting numSensorConsumers=" + numSensorConsumers);
+	     // how many concurrent Kafka sensor consumers, the same for any number of Goods or locations
+	     int numSensorConsumers = KafkaProperties.SENSOR_CONSUMERS;
+	     Log.info("starting", "numSensorConsumers", numSensorConsumers);
+	     KongoRuntime runtime = KongoRuntime.fromConfig();
 	    	 	
-	    	 	for (int i=0; i < numSensorConsumers; i++) {
-	    	 		SensorConsumer sensorConsumer = new SensorConsumer(Simulate.kafkaSensorTopicBase);
-	    	 		sensorConsumer.start();
-	    	 	}
+	     for (int i=0; i < numSensorConsumers; i++) {
+	    	 	BatchConsumer<String, byte[]> sensorConsumer;
+	    	 	// with sensor frames the pool reads the frame topics instead
+	    	 	if (Simulate.sensorFrames)
+	    	 		sensorConsumer = Simulate.oneTopic ? new SensorFrameConsumer(Simulate.kafkaSensorFrameTopicBase) : new SensorFrameConsumer(Simulate.kafkaSensorFrameLocationTopics);
+	    	 	else if (Simulate.oneTopic)
+	    	 		sensorConsumer = new SensorConsumer(Simulate.kafkaSensorTopicBase);
+	    	 	else
+	    	 		sensorConsumer = new SensorConsumer(Simulate.kafkaSensorLocationTopics);
+	    	 	runtime.add(sensorConsumer);
 	     }
 	     
-	     // Otherwise code in Simulate makes SensorGroupConsumer objects, 1 per Goods.
 	     // Note that this won't work unless both Unload and load consumers are working!
 	     
 	     if (Simulate.kafkaRFIDConsumerOn)
@@ -57,15 +65,38 @@ public class KafkaRun
 	    	 	*/
 	    	 
 	    	 	// Mew code: create single RFID topic to ensure event order
-	    	 	RFIDEventConsumer rfidConsumer = new RFIDEventConsumer(Simulate.rfidTopic);
-	    	 	rfidConsumer.start();
+	    	 	// the events are keyed by goods, so per goods order is kept with many partitions and consumers
+	    	 	int numRFIDConsumers = KafkaProperties.RFID_CONSUMERS;
+	    	 	Log.info("starting", "numRFIDConsumers", numRFIDConsumers);
+	    	 	for (int i=0; i < numRFIDConsumers; i++) {
+	    	 		RFIDEventConsumer rfidConsumer = new RFIDEventConsumer(Simulate.rfidTopic);
+	    	 		runtime.add(rfidConsumer);
+	    	 	}
 	     }
 	     
 	     
+	     // all the consumer threads send the violations they find through one batching producer
+	     final ViolationProducer violations = KafkaProperties.VIOLATIONS ? ViolationProducer.create() : null;
+	     if (violations != null)
+	    	 	ViolationProducer.install(violations);
+	     
 	     // Start simulation which produces event streams
-	    	 Simulate simulateThread = new Simulate();
-	    	 simulateThread.start();
+	    	 runtime.add(new Simulate());
+	    	 runtime.start();
+	    	 // on Ctrl-C too: stop the consumers, then send the violations still batched and log the counters
+	    	 Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+	    	 	runtime.shutdown(KafkaProperties.SHUTDOWN_TIMEOUT_MS);
+	    	 	if (violations != null)
+	    	 		violations.close();
+	    	 	Log.flush(1000);
+	    	 }, "kongo-shutdown"));
 	    	 
-	    	 System.out.println("Kafka Run has started Kong!");
+	    	 Log.info("Kafka Run has started Kong!");
+
+	    	 runtime.awaitSimulation();
+	    	 runtime.awaitIdle(KafkaProperties.DRAIN_IDLE_MS);
+	    	 runtime.shutdown(KafkaProperties.SHUTDOWN_TIMEOUT_MS);
+	    	 if (violations != null)
+	    	 	violations.close();
 	 }
 }
\ No newline at end of file
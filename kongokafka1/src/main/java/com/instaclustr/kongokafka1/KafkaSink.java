@@ -0,0 +1,63 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.ExecutionException;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/*
+ * Sends events with the Simulate producers: RFID events keyed by goods, sensor metrics as one Sensor record each or,
+ * with Simulate.sensorFrames, as one SensorFrame, keyed by location. The producers are thread safe so all shards share them.
+ * endHour is the Simulate.flushHour barrier. The producers are created and closed by Simulate.createAndLoop, not here.
+ */
+public class KafkaSink implements EventSink
+{
+	@Override
+	public void rfid(RFIDEvent e)
+	{
+		try
+		{
+			Simulate.send(Simulate.producerRFIDEvents, new ProducerRecord<String, RFIDEvent>(Simulate.rfidTopic, e.goodsKey, e));
+		}
+		catch (InterruptedException | ExecutionException ex)
+		{
+			failed("rfid", e.goodsKey, ex);
+		}
+	}
+
+	@Override
+	public void sensors(SensorFrame frame)
+	{
+		try
+		{
+			if (Simulate.sensorFrames)
+			{
+				String tName = Simulate.oneTopic ? Simulate.kafkaSensorFrameTopicBase : Simulate.kafkaSensorFrameTopicBase + frame.tag;
+				Simulate.send(Simulate.producerSensorFrames, new ProducerRecord<String, SensorFrame>(tName, frame.tag, frame));
+			}
+			else
+			{
+				String tName = Simulate.oneTopic ? Simulate.kafkaSensorTopicBase : Simulate.kafkaSensorTopicBase + frame.tag;
+				for (int i = 0; i < frame.size(); i++)
+					Simulate.send(Simulate.producerSensorEvents, new ProducerRecord<String, Sensor>(tName, frame.tag, frame.sensor(i, new Sensor())));
+			}
+		}
+		catch (InterruptedException | ExecutionException ex)
+		{
+			failed("sensors", frame.tag, ex);
+		}
+	}
+
+	// the sync send failed or was interrupted, keep the interrupt for the loop to see
+	private static void failed(String event, String key, Exception ex)
+	{
+		if (ex instanceof InterruptedException)
+			Thread.currentThread().interrupt();
+		Log.error("sink.sendFailed", "event", event, "key", key, "error", ex instanceof ExecutionException ? ex.getCause() : ex);
+	}
+
+	@Override
+	public void endHour()
+	{
+		Simulate.flushHour();
+	}
+}
@@ -0,0 +1,226 @@
+package com.instaclustr.kongokafka1;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Runs the consumers and the simulator on an executor instead of as raw Threads, and shuts them down in order.
+ *
+ * Threads (-Dkongo.threads): "virtual" runs every task on its own virtual thread, "platform" (the default) on a fixed pool of
+ * platform threads with one thread per task, as every task loops until shutdown. Virtual threads need Java 21 (or 19/20 with
+ * --enable-preview), the executor is found by reflection so this still builds for Java 11, and without them the platform pool is used.
+ *
+ * shutdown() stops the simulator at the end of its hour, calls shutdown() (i.e. wakeup()) on every consumer, waits for all the
+ * tasks to end (each consumer commits and closes) and prints a throughput and latency summary.
+ */
+public class KongoRuntime
+{
+	private final List<BatchConsumer<?, ?>> consumers = new ArrayList<BatchConsumer<?, ?>>();
+	private final List<Future<?>> futures = new ArrayList<Future<?>>();
+	private final boolean requestVirtual;
+	private Simulate simulate;
+	private Future<?> simulation;
+	private ExecutorService executor;
+	private boolean virtual;
+	private boolean shutdown;
+	private long t0;
+
+	public KongoRuntime(boolean virtual)
+	{
+		this.requestVirtual = virtual;
+	}
+
+	// mode from -Dkongo.threads
+	public static KongoRuntime fromConfig()
+	{
+		return new KongoRuntime("virtual".equalsIgnoreCase(KafkaProperties.THREADS));
+	}
+
+	public synchronized void add(BatchConsumer<?, ?> consumer)
+	{
+		consumers.add(consumer);
+	}
+
+	public synchronized void add(Simulate simulate)
+	{
+		this.simulate = simulate;
+	}
+
+	public synchronized void start()
+	{
+		int tasks = consumers.size() + (simulate == null ? 0 : 1);
+		executor = requestVirtual ? virtualExecutor() : null;
+		virtual = executor != null;
+		if (requestVirtual && !virtual)
+			Log.warn("runtime.noVirtualThreads", "java", System.getProperty("java.version"), "using", "platform threads");
+		if (!virtual)
+		{
+			AtomicInteger n = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(Math.max(1, tasks), r -> new Thread(r, "kongo-" + n.getAndIncrement()));
+		}
+		Log.info("runtime.starting", "consumers", consumers.size(), "simulator", simulate != null, "threads", virtual ? "virtual" : "platform");
+
+		t0 = System.nanoTime();
+		for (BatchConsumer<?, ?> consumer : consumers)
+			futures.add(executor.submit(consumer));
+		if (simulate != null)
+			simulation = executor.submit(simulate);
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor() if this Java has it, else null
+	static ExecutorService virtualExecutor()
+	{
+		try
+		{
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		}
+		catch (NoSuchMethodException | IllegalAccessException e)
+		{
+			return null;
+		}
+		catch (InvocationTargetException e)
+		{
+			// Java 19/20 without --enable-preview throws UnsupportedOperationException
+			return null;
+		}
+	}
+
+	public boolean virtual()
+	{
+		return virtual;
+	}
+
+	// wait for the simulator to run all its hours
+	public void awaitSimulation() throws InterruptedException
+	{
+		if (simulation == null)
+			return;
+		try
+		{
+			simulation.get();
+		}
+		catch (ExecutionException e)
+		{
+			Log.error("runtime.simulatorFailed", "error", e.getCause());
+		}
+	}
+
+	// wait until no consumer has handled a batch for idleMs, i.e. they have caught up with the producers
+	public void awaitIdle(long idleMs) throws InterruptedException
+	{
+		while (true)
+		{
+			long idle = Long.MAX_VALUE;
+			for (BatchConsumer<?, ?> consumer : consumers)
+				idle = Math.min(idle, consumer.idleMs());
+			if (idle >= idleMs)
+				return;
+			Thread.sleep(Math.min(100, idleMs - idle));
+		}
+	}
+
+	public long records()
+	{
+		long n = 0;
+		for (BatchConsumer<?, ?> consumer : consumers)
+			n += consumer.records();
+		return n;
+	}
+
+	// stop everything, wait for the tasks to finish (up to timeoutMs each) and print the summary, only the first call does anything
+	public void shutdown(long timeoutMs)
+	{
+		synchronized (this)
+		{
+			if (shutdown || executor == null)
+				return;
+			shutdown = true;
+		}
+		Log.info("runtime.shutdown");
+		if (simulate != null)
+			simulate.shutdown();
+		for (BatchConsumer<?, ?> consumer : consumers)
+			consumer.shutdown();
+
+		if (simulation != null)
+			join(simulation, "simulator", timeoutMs);
+		for (int i = 0; i < futures.size(); i++)
+			join(futures.get(i), consumers.get(i).getName(), timeoutMs);
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS))
+				executor.shutdownNow();
+		}
+		catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		summary();
+	}
+
+	private void join(Future<?> f, String name, long timeoutMs)
+	{
+		try
+		{
+			f.get(timeoutMs, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException e)
+		{
+			Log.error("runtime.taskFailed", "task", name, "error", e.getCause());
+		}
+		catch (TimeoutException e)
+		{
+			Log.warn("runtime.taskNotStopped", "task", name, "timeoutMs", timeoutMs);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void summary()
+	{
+		double secs = (System.nanoTime() - t0) / 1e9;
+		long records = 0;
+		long batches = 0;
+		double maxHandle = 0;
+		double latencySum = 0;
+		int latencyConsumers = 0;
+		long maxLatency = -1;
+		for (BatchConsumer<?, ?> consumer : consumers)
+		{
+			records += consumer.records();
+			batches += consumer.batches();
+			maxHandle = Math.max(maxHandle, consumer.maxHandleMs());
+			if (consumer.avgLatencyMs() >= 0)
+			{
+				latencySum += consumer.avgLatencyMs();
+				latencyConsumers++;
+			}
+			maxLatency = Math.max(maxLatency, consumer.maxLatencyMs());
+			if (Log.on(Log.Level.DEBUG))
+				Log.debug("runtime.consumer", "consumer", consumer.getName(), "records", consumer.records(), "batches", consumer.batches(),
+						"handleAvgMs", consumer.avgHandleMs(), "handleMaxMs", consumer.maxHandleMs(), "latencyAvgMs", consumer.avgLatencyMs(), "latencyMaxMs", consumer.maxLatencyMs());
+		}
+		double totalHandleMs = 0;
+		for (BatchConsumer<?, ?> consumer : consumers)
+			totalHandleMs += consumer.avgHandleMs() * consumer.batches();
+		Log.info("runtime.summary", "threads", virtual ? "virtual" : "platform", "consumers", consumers.size(), "durationSecs", secs,
+				"records", records, "recordsPerSec", (long) (records / secs), "batches", batches,
+				"handleAvgMs", batches == 0 ? 0 : totalHandleMs / batches, "handleMaxMs", maxHandle,
+				"latencyAvgMs", latencyConsumers == 0 ? "n/a" : String.valueOf(latencySum / latencyConsumers),
+				"latencyMaxMs", maxLatency < 0 ? "n/a" : String.valueOf(maxLatency));
+	}
+}
@@ -0,0 +1,211 @@
+package com.instaclustr.kongokafka1;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+/*
+ * Consumer lag, throughput and poll latency metrics for one consumer.
+ *
+ * The consume loop only records what it has already got (positions per partition from each batch, record count and poll time)
+ * into concurrent counters, which never blocks. A background thread samples the end offsets of all assigned partitions
+ * every interval using its own KafkaConsumer (KafkaConsumer is not thread safe so the consume loop's consumer can't be shared),
+ * computes per partition lag, records/s and poll latency for the interval, and prints them.
+ *
+ * Register it as the ConsumerRebalanceListener when subscribing so it knows which partitions are assigned.
+ */
+public class LagMonitor implements ConsumerRebalanceListener
+{
+	private final String name;
+
+	// written by the consume loop
+	private final Set<TopicPartition> assigned = ConcurrentHashMap.newKeySet();
+	private final Map<TopicPartition, Long> positions = new ConcurrentHashMap<TopicPartition, Long>();
+	private final LongAdder records = new LongAdder();
+	private final LongAdder polls = new LongAdder();
+	private final LongAdder pollNanos = new LongAdder();
+	private final LongAccumulator maxPollNanos = new LongAccumulator(Math::max, 0);
+
+	// written by the sampler thread
+	private volatile Map<TopicPartition, Long> lag = Collections.emptyMap();
+	private volatile double recordsPerSecond;
+	private volatile double avgPollLatencyMs;
+	private volatile double maxPollLatencyMs;
+
+	private final KafkaConsumer<byte[], byte[]> offsetsConsumer;
+	private final ScheduledExecutorService sampler;
+
+	private long lastRecords;
+	private long lastPolls;
+	private long lastPollNanos;
+	private long lastSampleNanos = System.nanoTime();
+
+	public LagMonitor(String name, long intervalMs)
+	{
+		this.name = name;
+
+		Properties props = new Properties();
+		props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
+		props.put(ConsumerConfig.CLIENT_ID_CONFIG, name + "-lag");
+		props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+		props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+		this.offsetsConsumer = new KafkaConsumer<>(props);
+
+		this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, name + "-lag-monitor");
+			t.setDaemon(true);
+			return t;
+		});
+		sampler.scheduleAtFixedRate(this::sample, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	// called by the consume loop after every poll
+	public void recordPoll(ConsumerRecords<?, ?> batch, long nanos)
+	{
+		polls.increment();
+		pollNanos.add(nanos);
+		maxPollNanos.accumulate(nanos);
+		if (batch.isEmpty())
+			return;
+
+		records.add(batch.count());
+		for (TopicPartition tp : batch.partitions())
+		{
+			List<? extends ConsumerRecord<?, ?>> l = batch.records(tp);
+			// position is the offset of the next record to consume
+			positions.put(tp, l.get(l.size() - 1).offset() + 1);
+		}
+	}
+
+	@Override
+	public void onPartitionsAssigned(Collection<TopicPartition> partitions)
+	{
+		assigned.addAll(partitions);
+	}
+
+	@Override
+	public void onPartitionsRevoked(Collection<TopicPartition> partitions)
+	{
+		assigned.removeAll(partitions);
+		for (TopicPartition tp : partitions)
+			positions.remove(tp);
+	}
+
+	// sampler thread only
+	private void sample()
+	{
+		try
+		{
+			long now = System.nanoTime();
+			double seconds = (now - lastSampleNanos) / 1e9;
+			lastSampleNanos = now;
+
+			long r = records.sum();
+			long p = polls.sum();
+			long pn = pollNanos.sum();
+			recordsPerSecond = (r - lastRecords) / seconds;
+			avgPollLatencyMs = p == lastPolls ? 0 : (pn - lastPollNanos) / 1e6 / (p - lastPolls);
+			maxPollLatencyMs = maxPollNanos.getThenReset() / 1e6;
+			lastRecords = r;
+			lastPolls = p;
+			lastPollNanos = pn;
+
+			Set<TopicPartition> parts = new HashSet<TopicPartition>(assigned);
+			Map<TopicPartition, Long> newLag = new HashMap<TopicPartition, Long>();
+			if (!parts.isEmpty())
+			{
+				Map<TopicPartition, Long> ends = offsetsConsumer.endOffsets(parts, Duration.ofSeconds(5));
+				for (Map.Entry<TopicPartition, Long> e : ends.entrySet())
+				{
+					Long pos = positions.get(e.getKey());
+					// nothing consumed yet from this partition, lag unknown
+					if (pos != null)
+						newLag.put(e.getKey(), Math.max(0, e.getValue() - pos));
+				}
+			}
+			lag = newLag;
+
+			Log.info("consumer.metrics", "consumer", name, "recordsPerSec", recordsPerSecond, "pollAvgMs", avgPollLatencyMs, "pollMaxMs", maxPollLatencyMs, "lag", newLag);
+		}
+		catch (WakeupException e)
+		{
+			// woken by close()
+		}
+		catch (Exception e)
+		{
+			// a failed sample must not kill the sampler thread, try again next interval
+			Log.warn("consumer.lagSampleFailed", "consumer", name, "error", e);
+		}
+	}
+
+	// latest per partition lag (partitions with nothing consumed yet are not included)
+	public Map<TopicPartition, Long> lag()
+	{
+		return lag;
+	}
+
+	public double recordsPerSecond()
+	{
+		return recordsPerSecond;
+	}
+
+	public double avgPollLatencyMs()
+	{
+		return avgPollLatencyMs;
+	}
+
+	public double maxPollLatencyMs()
+	{
+		return maxPollLatencyMs;
+	}
+
+	// offsetsConsumer belongs to the sampler thread, so it is closed there, after a blocked endOffsets has been woken up
+	public void close()
+	{
+		offsetsConsumer.wakeup();
+		sampler.execute(this::closeConsumer);
+		sampler.shutdown();
+		try
+		{
+			if (!sampler.awaitTermination(5, TimeUnit.SECONDS))
+				Log.warn("consumer.lagMonitorCloseTimeout", "consumer", name);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// sampler thread only
+	private void closeConsumer()
+	{
+		try
+		{
+			offsetsConsumer.close();
+		}
+		catch (Exception e)
+		{
+			Log.warn("consumer.lagMonitorCloseFailed", "consumer", name, "error", e);
+		}
+	}
+}
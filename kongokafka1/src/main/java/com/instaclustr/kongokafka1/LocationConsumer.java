@@ -0,0 +1,97 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.regex.Pattern;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+
+/*
+ * Consumer of records about a location (sensor values, sensor frames): each value is decoded by a SensorReader into one reused
+ * object, looked up in Simulate.locations by its location tag and posted to the Goods there.
+ * Subclasses only say how to decode a value and post it, the lag monitoring, batching and commits are the same for all.
+ */
+public abstract class LocationConsumer extends BatchConsumer<String, byte[]> {
+
+	  private final LagMonitor lagMonitor;
+
+	  protected final SensorReader reader = new SensorReader();
+
+	  // monitorLag false for consumers without a broker to ask for end offsets (MockConsumer)
+	  protected LocationConsumer(String name, String topic, Consumer<String, byte[]> consumer, boolean monitorLag)
+	  {
+	    super(name, topic, consumer);
+	    this.lagMonitor = monitorLag ? new LagMonitor(name, KafkaProperties.LAG_SAMPLE_INTERVAL_MS) : null;
+	  }
+
+	  // one consumer of a pool sharing all the location topics matching pattern
+	  protected LocationConsumer(String name, Pattern pattern, Consumer<String, byte[]> consumer, boolean monitorLag)
+	  {
+	    super(name, pattern, consumer);
+	    this.lagMonitor = monitorLag ? new LagMonitor(name, KafkaProperties.LAG_SAMPLE_INTERVAL_MS) : null;
+	  }
+
+	  // Kafka consumers for a topic or a pattern, String keys and the raw values for the SensorReader
+	  protected static KafkaConsumer<String, byte[]> kafkaConsumer(String groupId)
+	  {
+	    return new KafkaConsumer<String, byte[]>(consumerProps(groupId,
+	    		"org.apache.kafka.common.serialization.StringDeserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer"));
+	  }
+
+	  protected static KafkaConsumer<String, byte[]> kafkaPatternConsumer(String groupId)
+	  {
+	    return new KafkaConsumer<String, byte[]>(patternConsumerProps(groupId,
+	    		"org.apache.kafka.common.serialization.StringDeserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer"));
+	  }
+
+	  // decode a record value into the reused object, returns its location tag
+	  protected abstract String read(byte[] value);
+
+	  // the last value read, for the debug log
+	  protected abstract String lastRead();
+
+	  // deliver the last value read to the Goods at its location
+	  protected abstract void post(LocationRegistry.Location location);
+
+	  // lag is sampled in the background by lagMonitor, the loop only records positions and poll times
+	  @Override
+	  protected void polled(ConsumerRecords<String, byte[]> batch, long nanos)
+	  {
+		  if (lagMonitor != null)
+			  lagMonitor.recordPoll(batch, nanos);
+	  }
+
+	  @Override
+	  protected ConsumerRebalanceListener rebalanceListener()
+	  {
+		  return lagMonitor;
+	  }
+
+	  @Override
+	  protected void handle(ConsumerRecords<String, byte[]> records)
+	  {
+		  for (ConsumerRecord<String, byte[]> record : records)
+		  {
+			  String tag = read(record.value());
+			  if (Log.on(Log.Level.DEBUG))
+				  Log.debug("received", "key", record.key(), "value", lastRead(), "offset", record.offset());
+
+			  // find the location the values are from
+			  LocationRegistry.Location location = Simulate.locations.get(tag);
+
+			  if (location == null)
+				  Log.warn("sensor.unknownLocation", "location", tag);
+			  else
+				  post(location);
+		  }
+	  }
+
+	  @Override
+	  protected void closed()
+	  {
+		  if (lagMonitor != null)
+			  lagMonitor.close();
+	  }
+	}
@@ -0,0 +1,207 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Which Goods are at each location (warehouse or truck), used to deliver sensor and co-location check events to them.
+ * Replaces the EventBus per location: no reflection on register/unregister and no dispatcher, events are delivered by calling
+ * Goods.sensorEvent/colocatedRulesEvent directly.
+ *
+ * Each Location keeps its Goods in an array, and each Goods remembers its location and slot in it,
+ * so adding, removing and moving Goods is O(1) (removal swaps the last Goods into the freed slot).
+ * Every Location has its own lock, sensor consumers posting to one location don't block moves or posts elsewhere.
+ * Moves may run concurrently from several RFID consumers, each Goods is locked while it is moved. RFID events are keyed by Goods,
+ * so the moves of one Goods still arrive in order (from one partition).
+ *
+ * Each Location also keeps a count of its Goods per co-location category (Rules.TRUCK_CATS) and the union of those categories,
+ * so checking a Goods against everything already there is one mask test (conflicts()), instead of a check by every Goods there.
+ */
+public class LocationRegistry
+{
+	public static final class Location
+	{
+		final String id;
+		private Goods[] goods = new Goods[8];
+		private int size;
+		// co-location categories of the Goods here
+		private final CategoryCounts cats = new CategoryCounts();
+
+		Location(String id)
+		{
+			this.id = id;
+		}
+
+		public String id()
+		{
+			return id;
+		}
+
+		public synchronized int size()
+		{
+			return size;
+		}
+
+		synchronized void add(Goods g)
+		{
+			if (size == goods.length)
+				goods = Arrays.copyOf(goods, size * 2);
+			g.slot = size;
+			g.location = this;
+			goods[size++] = g;
+			cats.add(g.cats);
+		}
+
+		// false if g is not here (any more)
+		synchronized boolean remove(Goods g)
+		{
+			if (g.location != this)
+				return false;
+			Goods last = goods[--size];
+			goods[g.slot] = last;
+			last.slot = g.slot;
+			goods[size] = null;
+			g.location = null;
+			cats.remove(g.cats);
+			return true;
+		}
+
+		// union of the co-location categories of the Goods here
+		public synchronized int categories()
+		{
+			return cats.cats();
+		}
+
+		// the categories of the other Goods here that g is not allowed with (g itself doesn't count, if it is here)
+		public synchronized int conflicts(Goods g)
+		{
+			int others = g.location == this ? cats.without(g.cats) : cats.cats();
+			return Rules.conflicts(g.cats) & others;
+		}
+
+		// the other Goods here that g is not allowed with, only worth calling when conflicts(g) != 0
+		public synchronized List<Goods> conflicting(Goods g)
+		{
+			List<Goods> found = new ArrayList<Goods>();
+			int with = Rules.conflicts(g.cats);
+			for (int i = 0; i < size; i++)
+				if (goods[i] != g && (goods[i].cats & with) != 0)
+					found.add(goods[i]);
+			return found;
+		}
+
+		// deliver to every Goods here, returns the number of Goods
+		public synchronized int post(Sensor s)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				try
+				{
+					goods[i].sensorEvent(s);
+				}
+				catch (RuntimeException e)
+				{
+					// as the EventBus did, one failing Goods doesn't stop delivery to the others
+					Log.error("sensor.failed", "goods", goods[i].tag, "location", id, "error", e);
+				}
+			}
+			return size;
+		}
+
+		// every metric of the frame to every Goods here, under one lock. s is filled in for each metric.
+		public synchronized int post(SensorFrame frame, Sensor s)
+		{
+			for (int m = 0; m < frame.size(); m++)
+			{
+				frame.sensor(m, s);
+				for (int i = 0; i < size; i++)
+				{
+					try
+					{
+						goods[i].sensorEvent(s);
+					}
+					catch (RuntimeException e)
+					{
+						Log.error("sensor.failed", "goods", goods[i].tag, "location", id, "error", e);
+					}
+				}
+			}
+			return size;
+		}
+
+		public synchronized int post(ColocatedCheckEvent ce)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				try
+				{
+					goods[i].colocatedRulesEvent(ce);
+				}
+				catch (RuntimeException e)
+				{
+					Log.error("colocated.failed", "goods", goods[i].tag, "location", id, "error", e);
+				}
+			}
+			return size;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Location> locations = new ConcurrentHashMap<String, Location>(1000);
+
+	// create the location if it doesn't exist yet
+	public Location add(String id)
+	{
+		return locations.computeIfAbsent(id, Location::new);
+	}
+
+	// null if there is no such location
+	public Location get(String id)
+	{
+		return locations.get(id);
+	}
+
+	// where the Goods are now, or null
+	public Location locationOf(Goods g)
+	{
+		return g.location;
+	}
+
+	// put Goods at a location, moving it from wherever it was
+	public void place(Goods g, String id)
+	{
+		move(g, null, id);
+	}
+
+	// Move Goods from one location to another.
+	// Returns false if the Goods were not at from, they are moved to the new location anyway.
+	public boolean move(Goods g, String from, String to)
+	{
+		Location dest = locations.get(to);
+		if (dest == null)
+			throw new IllegalArgumentException("Unknown location " + to);
+
+		synchronized (g)
+		{
+			boolean wasAtFrom = false;
+			// g.location can only change under the lock of its current location, retry if it moved before we got the lock
+			Location current;
+			while ((current = g.location) != null)
+			{
+				if (current.remove(g))
+				{
+					wasAtFrom = current.id.equals(from);
+					break;
+				}
+			}
+			dest.add(g);
+			return wasAtFrom;
+		}
+	}
+
+	public void clear()
+	{
+		locations.clear();
+	}
+}
@@ -0,0 +1,238 @@
+package com.instaclustr.kongokafka1;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Asynchronous structured logging, used instead of System.out so consumer threads don't serialize on the PrintStream lock.
+ *
+ * A record is an event name and key/value fields, e.g. Log.warn("sensor.violation", "goods", tag, "location", loc).
+ * Callers only claim a slot in a lock-free ring buffer and store the record, a background thread formats and writes them,
+ * one line per record: time LEVEL [thread] event key=value ...
+ * Field values are formatted on the writer thread, so only pass immutable values (Strings, boxed numbers), not pooled objects.
+ * If the ring is full the record is dropped and counted, the writer reports the count.
+ *
+ * Settings:
+ *   -Dkongo.log.level=OFF|ERROR|WARN|INFO|DEBUG|TRACE  default INFO (DEBUG with KafkaProperties.DEBUG)
+ *   -Dkongo.log.sample=N    hot path records (per event rule checks and violations) are logged 1 in N (calls or keys), default 100
+ *   -Dkongo.log.sampledPerSec=N  and at most N of them a second in all, default 1000, so their cost doesn't grow with throughput
+ *   -Dkongo.log.ringSize=N  records buffered, rounded up to a power of 2, default 65536
+ *
+ * Hot paths guard records with on() or sampled() so nothing is allocated when they are off. Per Goods records are sampled by
+ * Goods tag, which is cheaper than a random number per check and keeps the whole story of the sampled Goods.
+ */
+public final class Log
+{
+	public enum Level { OFF, ERROR, WARN, INFO, DEBUG, TRACE }
+
+	static volatile Level level = Level.valueOf(System.getProperty("kongo.log.level", KafkaProperties.DEBUG ? "DEBUG" : "INFO").toUpperCase());
+	static volatile int sampleEvery = Math.max(1, Integer.getInteger("kongo.log.sample", 100));
+	static volatile int sampledPerSec = Integer.getInteger("kongo.log.sampledPerSec", 1000);
+
+	// sampled records let through in the current second
+	private static volatile long sampleSecond;
+	private static final AtomicInteger sampledThisSecond = new AtomicInteger();
+
+	static final class Record
+	{
+		final Level level;
+		final long time;
+		final String thread;
+		final String event;
+		final Object[] fields;
+
+		Record(Level level, String event, Object[] fields)
+		{
+			this.level = level;
+			this.time = System.currentTimeMillis();
+			this.thread = Thread.currentThread().getName();
+			this.event = event;
+			this.fields = fields;
+		}
+	}
+
+	// Multi producer, single consumer ring. A producer claims sequence n by moving tail on, as long as the ring isn't full,
+	// and then publishes its record in slot n. The writer takes the record at head once it is published, clears the slot and moves head on.
+	private static final int SIZE = Integer.highestOneBit(Math.max(2, Integer.getInteger("kongo.log.ringSize", 1 << 16) - 1)) << 1;
+	private static final int MASK = SIZE - 1;
+	private static final AtomicReferenceArray<Record> ring = new AtomicReferenceArray<Record>(SIZE);
+	private static final AtomicLong tail = new AtomicLong();
+	private static volatile long head;
+	// records written out, for flush()
+	private static volatile long written;
+	private static final LongAdder dropped = new LongAdder();
+
+	private static final Thread writer = new Thread(Log::drain, "kongo-log");
+	static
+	{
+		writer.setDaemon(true);
+		writer.start();
+		// daemon threads just stop at exit, write out what is left first
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000), "kongo-log-flush"));
+	}
+
+	private Log() {}
+
+	public static boolean on(Level l)
+	{
+		return l.ordinal() <= level.ordinal() && l != Level.OFF;
+	}
+
+	// on(l), for 1 in sampleEvery calls, up to sampledPerSec a second
+	public static boolean sampled(Level l)
+	{
+		if (!on(l) || (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0))
+			return false;
+		return withinRate();
+	}
+
+	// on(l) for 1 in sampleEvery keys, so every record about a sampled key (e.g. a Goods tag) is logged. Cheaper than sampled(l),
+	// String caches its hash code. Up to sampledPerSec a second.
+	public static boolean sampled(Level l, Object key)
+	{
+		if (!on(l) || (sampleEvery > 1 && Integer.remainderUnsigned(key.hashCode() * 0x9E3779B9, sampleEvery) != 0))
+			return false;
+		return withinRate();
+	}
+
+	private static boolean withinRate()
+	{
+		long second = System.currentTimeMillis() / 1000;
+		if (second != sampleSecond)
+		{
+			// racy reset, at worst a few more records get through at the start of a second
+			sampleSecond = second;
+			sampledThisSecond.set(0);
+		}
+		return sampledThisSecond.incrementAndGet() <= sampledPerSec;
+	}
+
+	public static void error(String event, Object... fields)
+	{
+		log(Level.ERROR, event, fields);
+	}
+
+	public static void warn(String event, Object... fields)
+	{
+		log(Level.WARN, event, fields);
+	}
+
+	public static void info(String event, Object... fields)
+	{
+		log(Level.INFO, event, fields);
+	}
+
+	public static void debug(String event, Object... fields)
+	{
+		log(Level.DEBUG, event, fields);
+	}
+
+	public static void trace(String event, Object... fields)
+	{
+		log(Level.TRACE, event, fields);
+	}
+
+	// fields are key, value pairs
+	public static void log(Level l, String event, Object... fields)
+	{
+		if (!on(l))
+			return;
+		Record r = new Record(l, event, fields);
+		long n;
+		do
+		{
+			n = tail.get();
+			if (n - head >= SIZE)
+			{
+				dropped.increment();
+				return;
+			}
+		}
+		while (!tail.compareAndSet(n, n + 1));
+		ring.lazySet((int) (n & MASK), r);
+	}
+
+	public static long dropped()
+	{
+		return dropped.sum();
+	}
+
+	// wait (up to timeoutMs) until everything logged so far has been written
+	public static boolean flush(long timeoutMs)
+	{
+		long target = tail.get();
+		long end = System.currentTimeMillis() + timeoutMs;
+		while (written < target)
+		{
+			if (System.currentTimeMillis() > end)
+				return false;
+			LockSupport.parkNanos(100000);
+		}
+		return true;
+	}
+
+	public static void flush()
+	{
+		flush(10000);
+	}
+
+	// the writer thread: batches whatever has been published into one write
+	private static void drain()
+	{
+		StringBuilder sb = new StringBuilder(1 << 16);
+		long reportedDrops = 0;
+		while (true)
+		{
+			long n = head;
+			Record r;
+			while ((r = ring.get((int) (n & MASK))) != null && sb.length() < (1 << 20))
+			{
+				ring.lazySet((int) (n & MASK), null);
+				head = ++n;
+				format(sb, r);
+			}
+			long drops = dropped.sum();
+			if (drops != reportedDrops)
+			{
+				format(sb, new Record(Level.WARN, "log.dropped", new Object[] { "records", drops - reportedDrops, "total", drops }));
+				reportedDrops = drops;
+			}
+			if (sb.length() > 0)
+			{
+				PrintStream out = System.out;
+				out.print(sb);
+				out.flush();
+				sb.setLength(0);
+				written = n;
+			}
+			else
+			{
+				written = n;
+				LockSupport.parkNanos(1000000);
+			}
+		}
+	}
+
+	static void format(StringBuilder sb, Record r)
+	{
+		sb.append(Instant.ofEpochMilli(r.time)).append(' ').append(r.level).append(" [").append(r.thread).append("] ").append(r.event);
+		Object[] f = r.fields;
+		for (int i = 0; i + 1 < f.length; i += 2)
+		{
+			sb.append(' ').append(f[i]).append('=');
+			String v = String.valueOf(f[i + 1]);
+			// quote values a reader would otherwise split
+			if (v.indexOf(' ') >= 0 || v.indexOf('=') >= 0 || v.isEmpty())
+				sb.append('"').append(v.replace("\"", "\\\"")).append('"');
+			else
+				sb.append(v);
+		}
+		sb.append('\n');
+	}
+}
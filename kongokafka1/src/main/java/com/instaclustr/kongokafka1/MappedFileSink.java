@@ -0,0 +1,87 @@
+package com.instaclustr.kongokafka1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Appends the events (encoded as in BytesSink) to a memory mapped file, so writing one is a memory copy and the OS writes the pages out.
+ * Each record is the type byte, a 4 byte length and the bytes. The file is mapped REGION bytes at a time, a new region is mapped
+ * when a record doesn't fit in the current one. close() cuts the file to what was written.
+ * Writes are synchronized, the sharded simulator's shards take turns.
+ */
+public class MappedFileSink extends BytesSink
+{
+	static final int REGION = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private MappedByteBuffer region;
+	// file position of the start of region
+	private long regionStart;
+	private long records;
+
+	public MappedFileSink(Path file)
+	{
+		try
+		{
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Can't map " + file, e);
+		}
+	}
+
+	@Override
+	protected synchronized void write(byte type, byte[] bytes)
+	{
+		int size = 5 + bytes.length;
+		if (region.remaining() < size)
+			next(size);
+		region.put(type);
+		region.putInt(bytes.length);
+		region.put(bytes);
+		records++;
+	}
+
+	// map the next region after what has been written
+	private void next(int size)
+	{
+		try
+		{
+			regionStart += region.position();
+			region.force();
+			region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION, size));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public synchronized long written()
+	{
+		return regionStart + region.position();
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		try
+		{
+			long size = written();
+			region.force();
+			channel.truncate(size);
+			channel.close();
+			Log.info("sink.closed", "sink", "mmap", "records", records, "bytes", size);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -4,24 +4,33 @@ import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * (De)serializes RFIDEvent objects from/to strings.
+ * (De)serializes RFIDEvent objects from/to strings, or from/to the binary WireFormat for topics listed in WireFormat.BINARY_TOPICS_CONFIG.
+ * Binary layout: magic, load flag byte, varint time, warehouse tag, goods tag, truck tag.
  */
 
 public class RFIDEventSerializer implements Closeable, AutoCloseable, Serializer<RFIDEvent>, Deserializer<RFIDEvent> {
 	
     public static final Charset CHARSET = Charset.forName("UTF-8");
 
+    private Set<String> binaryTopics = Collections.emptySet();
+
     @Override
     public void configure(Map<String, ?> map, boolean b) {
+        binaryTopics = WireFormat.binaryTopics(map);
     }
     
     @Override
     public byte[] serialize(String s, RFIDEvent rfid) {
+        if (WireFormat.useBinary(binaryTopics, s))
+            return serializeBinary(rfid);
     		String line =
     				rfid.load + ", " +
     				rfid.time + ", " +
@@ -31,9 +40,30 @@ public class RFIDEventSerializer implements Closeable, AutoCloseable, Serializer
         return line.getBytes(CHARSET);
     }
 	
+    public static byte[] serializeBinary(RFIDEvent rfid) {
+        int warehouseCode = WireFormat.tagCode(rfid.warehouseKey);
+        int goodsCode = WireFormat.tagCode(rfid.goodsKey);
+        int truckCode = WireFormat.tagCode(rfid.truckKey);
+        int size = 2 + WireFormat.varLongSize(rfid.time)
+                + WireFormat.tagSize(warehouseCode, rfid.warehouseKey)
+                + WireFormat.tagSize(goodsCode, rfid.goodsKey)
+                + WireFormat.tagSize(truckCode, rfid.truckKey);
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(WireFormat.MAGIC_V1);
+        buf.put((byte) (rfid.load ? 1 : 0));
+        WireFormat.putVarLong(buf, rfid.time);
+        WireFormat.putTag(buf, warehouseCode, rfid.warehouseKey);
+        WireFormat.putTag(buf, goodsCode, rfid.goodsKey);
+        WireFormat.putTag(buf, truckCode, rfid.truckKey);
+        return buf.array();
+    }
+
     @Override
     public RFIDEvent deserialize(String topic, byte[] bytes) {
         try {
+            if (WireFormat.isBinary(bytes))
+                return deserializeBinary(ByteBuffer.wrap(bytes));
+
             String[] parts = new String(bytes, CHARSET).split(", ");
 
             int i = 0;
@@ -52,8 +82,18 @@ public class RFIDEventSerializer implements Closeable, AutoCloseable, Serializer
         }
     }
 
+    static RFIDEvent deserializeBinary(ByteBuffer buf) {
+        WireFormat.checkMagic(buf);
+        boolean t = buf.get() != 0;
+        long time = WireFormat.getVarLong(buf);
+        String warehouseKey = WireFormat.getTag(buf);
+        String goodsKey = WireFormat.getTag(buf);
+        String truckKey = WireFormat.getTag(buf);
+        return new RFIDEvent(t, time, goodsKey, warehouseKey, truckKey);
+    }
+
     @Override
     public void close() {
 
     }
-}
\ No newline at end of file
+}
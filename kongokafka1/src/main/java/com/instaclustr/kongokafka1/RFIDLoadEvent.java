@@ -1,6 +1,6 @@
 package com.instaclustr.kongokafka1;
 
-import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 // at time LOAD goodsKey at warehouseKey onto truckKey
@@ -29,57 +29,57 @@ public class RFIDLoadEvent
 	{
 	}
 	
+	// called by several RFID consumer threads at once, events for the same Goods are never concurrent
 	@Subscribe
+	@AllowConcurrentEvents
 	public void rfidLoadEvent(RFIDLoadEvent event)
+	{
+		load(event.time, event.goodsKey, event.warehouseKey, event.truckKey);
+	}
+
+	// the LOAD rules, also used by RFIDEvent: move the goods onto the truck, a violation if it wasn't at the warehouse,
+	// and the co-location check against the goods already on board
+	static void load(long time, String goodsKey, String warehouseKey, String truckKey)
 	{
 		// at time LOAD goodsKey at warehouseKey onto truckKey
-		System.out.println("RFID Load " + event);
+		if (Log.on(Log.Level.DEBUG))
+			Log.debug("rfid.load", "time", time, "goods", goodsKey, "warehouse", warehouseKey, "truck", truckKey);
 		
-		String locFrom = event.warehouseKey;
-		String locTo = event.truckKey;
+		String locFrom = warehouseKey;
+		String locTo = truckKey;
 		
 		// to move the goods need to get the Goods object itself
 		// where is Goods now? claims to be at warehouseKey
-		EventBus topicFrom = Simulate.topics.get(locFrom);
-		
 		// what if it's not?
-		if (topicFrom == null)
-			System.out.println("RFID LOAD EXCEPTION can't find topic for location " + locFrom);
+		if (Simulate.locations.get(locFrom) == null)
+			Log.error("rfid.load.unknownLocation", "goods", goodsKey, "location", locFrom);
 		
 		// This requires access to the global list of allGoods!
-		Goods goods = Simulate.allGoods.get(event.goodsKey);
+		Goods goods = Simulate.allGoods.get(goodsKey);
 		
-		// unregister goods from warehouse topic location
-		if (topicFrom != null) System.out.println("unregister from warehouse " + topicFrom.identifier());
-
-		try
-		{
-			topicFrom.unregister(goods);
-		}
-		catch (Exception e)
-		{
-			// TODO Produce violation event
-			System.out.println("LOAD EVENT Violation: Goods= " + event.goodsKey + " could not be loaded from warehouse location " + locFrom);
-		}
-		
-		// change location
-		// goods.locKey = locTo;
-		EventBus topicTo = Simulate.topics.get(locTo);
-		System.out.println("register with truck " + topicTo.identifier());
+		// move goods from warehouse location to truck location
+		if (Log.on(Log.Level.TRACE))
+			Log.trace("move", "goods", goodsKey, "from", locFrom, "to", locTo);
 		
 		// TODO Also check that truck is at same location as warehouse and produce violation if not, this is a business rule I guess.
 
-		topicTo.register(goods);
-			
-		System.out.println("post co-location event to " + topicTo.identifier());
-		
-		ColocatedCheckEvent ce = new ColocatedCheckEvent(time, event.goodsKey, event.truckKey);
-		
-		// Possible BUG, Goods have already been moved to the truck so will receive the check event themselves, better to move after checking!?
-		// BUt can't guarantee event order in distributed version? Put check in colocated check method to ignore self checking.
-		
-		// send this event to the location topics as all goods at the truck location will need to be check their rules.
-		topicTo.post(ce);			
+		if (!Simulate.locations.move(goods, locFrom, locTo))
+		{
+			ViolationProducer out = ViolationProducer.shared();
+			if (out != null)
+				out.send(new Violation(Violation.LOAD, time, goodsKey, locFrom, locTo, 0, 0));
+			if (Log.sampled(Log.Level.WARN, goodsKey))
+				Log.warn("rfid.load.violation", "goods", goodsKey, "warehouse", locFrom, "truck", locTo, "reason", "not at warehouse");
+		}
 		
+		// Check the Goods against everything else on the truck: one test against the truck's category mask,
+		// the Goods on board are only looked at to report the conflicts when it fails. Goods don't conflict with themselves.
+		LocationRegistry.Location topicTo = Simulate.locations.get(locTo);
+		int conflicts = topicTo.conflicts(goods);
+		if (Log.on(Log.Level.TRACE))
+			Log.trace("colocated.check", "goods", goodsKey, "truck", locTo, "conflicts", Rules.categories(conflicts));
+		if (conflicts != 0)
+			for (Goods onBoard : topicTo.conflicting(goods))
+				onBoard.truckConflict(goods, time, truckKey);
 	}
 }
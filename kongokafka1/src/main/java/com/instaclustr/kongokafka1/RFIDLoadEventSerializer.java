@@ -6,24 +6,33 @@ import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * (De)serializes RFID Load Event objects from/to strings.
+ * (De)serializes RFID Load Event objects from/to strings, or from/to the binary WireFormat for topics listed in WireFormat.BINARY_TOPICS_CONFIG.
+ * Binary layout: magic, varint time, warehouse tag, goods tag, truck tag.
  */
 
 public class RFIDLoadEventSerializer implements Closeable, AutoCloseable, Serializer<RFIDLoadEvent>, Deserializer<RFIDLoadEvent> {
 	
     public static final Charset CHARSET = Charset.forName("UTF-8");
 
+    private Set<String> binaryTopics = Collections.emptySet();
+
     @Override
     public void configure(Map<String, ?> map, boolean b) {
+        binaryTopics = WireFormat.binaryTopics(map);
     }
     
     @Override
     public byte[] serialize(String s, RFIDLoadEvent rfid) {
+        if (WireFormat.useBinary(binaryTopics, s))
+            return serializeBinary(rfid.time, rfid.warehouseKey, rfid.goodsKey, rfid.truckKey);
         // String line = String.format(Locale.ROOT, "%i,%s,%s,%.4f", sensor.time, sensor.doc, sensor.tag, sensor.metric, sensor.value);
     		String line =
     				rfid.time + ", " +
@@ -33,9 +42,37 @@ public class RFIDLoadEventSerializer implements Closeable, AutoCloseable, Serial
         return line.getBytes(CHARSET);
     }
 	
+    // shared with RFIDUnloadEventSerializer, which has the same layout
+    static byte[] serializeBinary(long time, String warehouseKey, String goodsKey, String truckKey) {
+        int warehouseCode = WireFormat.tagCode(warehouseKey);
+        int goodsCode = WireFormat.tagCode(goodsKey);
+        int truckCode = WireFormat.tagCode(truckKey);
+        int size = 1 + WireFormat.varLongSize(time)
+                + WireFormat.tagSize(warehouseCode, warehouseKey)
+                + WireFormat.tagSize(goodsCode, goodsKey)
+                + WireFormat.tagSize(truckCode, truckKey);
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(WireFormat.MAGIC_V1);
+        WireFormat.putVarLong(buf, time);
+        WireFormat.putTag(buf, warehouseCode, warehouseKey);
+        WireFormat.putTag(buf, goodsCode, goodsKey);
+        WireFormat.putTag(buf, truckCode, truckKey);
+        return buf.array();
+    }
+
     @Override
     public RFIDLoadEvent deserialize(String topic, byte[] bytes) {
         try {
+            if (WireFormat.isBinary(bytes)) {
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                WireFormat.checkMagic(buf);
+                long time = WireFormat.getVarLong(buf);
+                String warehouseKey = WireFormat.getTag(buf);
+                String goodsKey = WireFormat.getTag(buf);
+                String truckKey = WireFormat.getTag(buf);
+                return new RFIDLoadEvent(time, goodsKey, warehouseKey, truckKey);
+            }
+
             String[] parts = new String(bytes, CHARSET).split(", ");
 
             int i = 0;
@@ -56,4 +93,4 @@ public class RFIDLoadEventSerializer implements Closeable, AutoCloseable, Serial
     public void close() {
 
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,6 @@
 package com.instaclustr.kongokafka1;
 
-import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 // at time UNLOAD goodsKey from truckKey to warehouseKey
@@ -29,39 +29,40 @@ public class RFIDUnloadEvent
 		System.out.println(time + ", " + goodsKey + ", " + truckKey + ", " + warehouseKey);
 	}
 	
+	// called by several RFID consumer threads at once, events for the same Goods are never concurrent
 	@Subscribe
+	@AllowConcurrentEvents
 	public void rfidUnloadEvent(RFIDUnloadEvent event)
+	{
+		unload(event.time, event.goodsKey, event.truckKey, event.warehouseKey);
+	}
+
+	// the UNLOAD rules, also used by RFIDEvent: move the goods to the warehouse, a violation if it wasn't on the truck
+	static void unload(long time, String goodsKey, String truckKey, String warehouseKey)
 	{
 		// at time UNLOAD goodsKey from truckKey to warehouseKey
-		System.out.println("RFID UNLOAD Goods=" + event.goodsKey + " from truck " + event.truckKey + " to warehouse " + event.warehouseKey);
+		if (Log.on(Log.Level.DEBUG))
+			Log.debug("rfid.unload", "time", time, "goods", goodsKey, "truck", truckKey, "warehouse", warehouseKey);
 		
-		String locFrom = event.truckKey;
-		String locTo = event.warehouseKey;
+		String locFrom = truckKey;
+		String locTo = warehouseKey;
 		
 		// to move the goods need to get the Goods object itself
 		// where is Goods now? claims to be at truckKey
-		EventBus topicFrom = Simulate.topics.get(locFrom);
-		
 		// This requires access to the global list of allGoods - nasty?!
-		Goods goods = Simulate.allGoods.get(event.goodsKey);
+		Goods goods = Simulate.allGoods.get(goodsKey);
 		
-		// unregister goods from truck topic location
-		System.out.println("unregister from truck " + topicFrom.identifier());
+		// move goods from truck location to warehouse location
+		if (Log.on(Log.Level.TRACE))
+			Log.trace("move", "goods", goodsKey, "from", locFrom, "to", locTo);
 		
-		try 
+		if (!Simulate.locations.move(goods, locFrom, locTo))
 		{
-			topicFrom.unregister(goods);
+			ViolationProducer out = ViolationProducer.shared();
+			if (out != null)
+				out.send(new Violation(Violation.UNLOAD, time, goodsKey, truckKey, warehouseKey, 0, 0));
+			if (Log.sampled(Log.Level.WARN, goodsKey))
+				Log.warn("rfid.unload.violation", "goods", goodsKey, "truck", truckKey, "warehouse", warehouseKey, "reason", "not on truck");
 		}
-		catch (Exception e)
-		{
-			// TODO Produce violation event
-			System.out.println("UNLOAD EVENT Violation: Goods= " + event.goodsKey + " could not be unloaded from truck location " + event.truckKey);
-		}
-		
-		// change location
-		// goods.locKey = locTo;
-		EventBus topicTo = Simulate.topics.get(locTo);
-		System.out.println("register with warehouse " + topicTo.identifier());
-		topicTo.register(goods);
 	}
 }
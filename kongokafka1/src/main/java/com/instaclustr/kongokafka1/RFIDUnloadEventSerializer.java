@@ -4,24 +4,33 @@ import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * (De)serializes RFIDUnloadEvent objects from/to strings.
+ * (De)serializes RFIDUnloadEvent objects from/to strings, or from/to the binary WireFormat for topics listed in WireFormat.BINARY_TOPICS_CONFIG.
+ * Binary layout is the same as RFIDLoadEventSerializer: magic, varint time, warehouse tag, goods tag, truck tag.
  */
 
 public class RFIDUnloadEventSerializer implements Closeable, AutoCloseable, Serializer<RFIDUnloadEvent>, Deserializer<RFIDUnloadEvent> {
 	
     public static final Charset CHARSET = Charset.forName("UTF-8");
 
+    private Set<String> binaryTopics = Collections.emptySet();
+
     @Override
     public void configure(Map<String, ?> map, boolean b) {
+        binaryTopics = WireFormat.binaryTopics(map);
     }
     
     @Override
     public byte[] serialize(String s, RFIDUnloadEvent rfid) {
+        if (WireFormat.useBinary(binaryTopics, s))
+            return RFIDLoadEventSerializer.serializeBinary(rfid.time, rfid.warehouseKey, rfid.goodsKey, rfid.truckKey);
     		String line =
     				rfid.time + ", " +
     				rfid.warehouseKey + ", " +
@@ -33,6 +42,16 @@ public class RFIDUnloadEventSerializer implements Closeable, AutoCloseable, Seri
     @Override
     public RFIDUnloadEvent deserialize(String topic, byte[] bytes) {
         try {
+            if (WireFormat.isBinary(bytes)) {
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                WireFormat.checkMagic(buf);
+                long time = WireFormat.getVarLong(buf);
+                String warehouseKey = WireFormat.getTag(buf);
+                String goodsKey = WireFormat.getTag(buf);
+                String truckKey = WireFormat.getTag(buf);
+                return new RFIDUnloadEvent(time, goodsKey, truckKey, warehouseKey);
+            }
+
             String[] parts = new String(bytes, CHARSET).split(", ");
 
             int i = 0;
@@ -54,4 +73,4 @@ public class RFIDUnloadEventSerializer implements Closeable, AutoCloseable, Seri
     public void close() {
 
     }
-}
\ No newline at end of file
+}
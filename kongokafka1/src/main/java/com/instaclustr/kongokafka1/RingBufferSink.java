@@ -0,0 +1,95 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Keeps the last capacity events in memory (encoded as in BytesSink), overwriting the oldest.
+ * Event n (counting from 0) is in slot n % capacity, get(n) returns it while it hasn't been overwritten.
+ * Writers only share the sequence counter, so shards don't block each other. Each slot holds one immutable Event (sequence,
+ * type and bytes) published with the AtomicReferenceArray, so readers on other threads see a whole event, and a writer that
+ * was overtaken by one capacity ahead never replaces the newer event.
+ */
+public class RingBufferSink extends BytesSink
+{
+	static final class Event
+	{
+		final long n;
+		final byte type;
+		final byte[] bytes;
+
+		Event(long n, byte type, byte[] bytes)
+		{
+			this.n = n;
+			this.type = type;
+			this.bytes = bytes;
+		}
+	}
+
+	private final AtomicReferenceArray<Event> slots;
+	private final int mask;
+	private final AtomicLong next = new AtomicLong();
+
+	// capacity is rounded up to a power of 2
+	public RingBufferSink(int capacity)
+	{
+		int n = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		slots = new AtomicReferenceArray<Event>(n);
+		mask = n - 1;
+	}
+
+	@Override
+	protected void write(byte type, byte[] bytes)
+	{
+		long n = next.getAndIncrement();
+		int i = (int) (n & mask);
+		Event e = new Event(n, type, bytes);
+		Event old;
+		do
+		{
+			old = slots.get(i);
+			if (old != null && old.n > n)
+				return;
+		}
+		while (!slots.compareAndSet(i, old, e));
+	}
+
+	public int capacity()
+	{
+		return slots.length();
+	}
+
+	// events written so far
+	public long written()
+	{
+		return next.get();
+	}
+
+	// event n, null if it has been overwritten or isn't stored yet
+	public byte[] get(long n)
+	{
+		Event e = event(n);
+		return e == null ? null : e.bytes;
+	}
+
+	// BytesSink type of event n, 0 if get(n) is null
+	public byte type(long n)
+	{
+		Event e = event(n);
+		return e == null ? 0 : e.type;
+	}
+
+	private Event event(long n)
+	{
+		if (n < 0)
+			return null;
+		Event e = slots.get((int) (n & mask));
+		return e != null && e.n == n ? e : null;
+	}
+
+	@Override
+	public void close()
+	{
+		Log.info("sink.closed", "sink", "ring", "events", written(), "capacity", capacity());
+	}
+}
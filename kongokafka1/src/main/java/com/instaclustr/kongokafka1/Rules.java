@@ -1,40 +1,100 @@
 /*
- * Returns String of categories not allowed in truck with the Goods.
+ * Goods category bits, and which categories are not allowed in a truck together.
  */
 
 package com.instaclustr.kongokafka1;
 
 public class Rules {
-	
-	public static String goodsNotAllowedInTruck(String Me)
+
+	// category bits, in allCategories() String order
+	public static final int PERISHABLE = 1;				// P
+	public static final int HAZARDOUS = 1 << 1;			// H
+	public static final int FRAGILE = 1 << 2;			// F
+	public static final int EDIBLE = 1 << 3;			// E
+	public static final int MEDICINAL = 1 << 4;			// M
+	public static final int BULKY = 1 << 5;				// B
+	public static final int DRY = 1 << 6;				// D
+	public static final int FROZEN_TEMP = 1 << 7;		// T1
+	public static final int HEAT_SENSITIVE_TEMP = 1 << 8;	// T2
+	public static final int COOL_TEMP = 1 << 9;			// T3
+	public static final int ROOM_TEMP = 1 << 10;		// T4
+	public static final int AMBIENT_TEMP = 1 << 11;		// T5
+
+	static final String[] CODES = { "P", "H", "F", "E", "M", "B", "D", "T1", "T2", "T3", "T4", "T5" };
+
+	public static final int TEMP_CATS = FROZEN_TEMP | HEAT_SENSITIVE_TEMP | COOL_TEMP | ROOM_TEMP | AMBIENT_TEMP;
+
+	// categories tracked on trucks, the only ones with co-location rules
+	public static final int TRUCK_CATS = PERISHABLE | HAZARDOUS | FRAGILE | EDIBLE | MEDICINAL | BULKY;
+
+	// conflicts for the categories with co-location rules, all others are 0
+	private static final int[] CONFLICTS_WITH = new int[CODES.length];
+
+	// conflict mask for every combination of the low 7 (non temperature) categories
+	private static final int[] CONFLICTS = new int[1 << 7];
+
+	static
 	{
-		String s = "";
 		// Fragile and Bulky
-		if (Me.contains("F"))
-			s += "B";
-		if (Me.contains("B"))
-			s += "F";
-		 
-		// Hazardous and (edible or medicinal)
-		if (Me.contains("H"))
-			s += "EM";
-		if (Me.contains("E"))
-			s += "H";
-		if (Me.contains("M"))
-			s += "H";
-		
-		if (Me.contains("E"))
-			s += "M";
-		if (Me.contains("M"))
-			s += "E";
-		
-		return s;
+		CONFLICTS_WITH[bit(FRAGILE)] = BULKY;
+		CONFLICTS_WITH[bit(BULKY)] = FRAGILE;
+
+		// Hazardous and (edible or medicinal or hazardous), edible and medicinal
+		CONFLICTS_WITH[bit(HAZARDOUS)] = EDIBLE | MEDICINAL | HAZARDOUS;
+		CONFLICTS_WITH[bit(EDIBLE)] = HAZARDOUS | MEDICINAL;
+		CONFLICTS_WITH[bit(MEDICINAL)] = HAZARDOUS | EDIBLE;
+
+		for (int cats = 0; cats < CONFLICTS.length; cats++)
+			for (int b = 0; b < 7; b++)
+				if ((cats & (1 << b)) != 0)
+					CONFLICTS[cats] |= CONFLICTS_WITH[b];
 	}
-	
-	public static String goodsNotAllowedInWarehouse(String Me)
+
+	private static int bit(int category)
 	{
-		return "";  // everything allowed in warehouses
+		return Integer.numberOfTrailingZeros(category);
 	}
-	
 
+	// categories not allowed in a truck with goods of these categories
+	public static int conflicts(int cats)
+	{
+		return CONFLICTS[cats & (CONFLICTS.length - 1)];
+	}
+
+	// Temperature rules for goods of these categories in a truck or warehouse with this control and temperature range (Temp sub category):
+	// any without a temperature category, else it must be temperature controlled, frozen, heat sensitive, cool and room temperature
+	// need that range (0-3) and ambient goes in any range but frozen. The first temperature category wins.
+	public static boolean tempAllowed(int cats, boolean tempControlled, int tempRange)
+	{
+		if ((cats & TEMP_CATS) == 0)
+			return true;
+		if (!tempControlled)
+			return false;
+		if ((cats & FROZEN_TEMP) != 0)
+			return tempRange == 0;
+		if ((cats & HEAT_SENSITIVE_TEMP) != 0)
+			return tempRange == 1;
+		if ((cats & COOL_TEMP) != 0)
+			return tempRange == 2;
+		if ((cats & ROOM_TEMP) != 0)
+			return tempRange == 3;
+		// ambient
+		return tempRange >= 1 && tempRange <= 4;
+	}
+
+	// categories not allowed in a warehouse with goods of these categories
+	public static int goodsNotAllowedInWarehouse(int cats)
+	{
+		return 0;  // everything allowed in warehouses
+	}
+
+	// String form of categories, e.g. "PEDT3"
+	public static String categories(int cats)
+	{
+		StringBuilder s = new StringBuilder();
+		for (int b = 0; b < CODES.length; b++)
+			if ((cats & (1 << b)) != 0)
+				s.append(CODES[b]);
+		return s.toString();
+	}
 }
@@ -0,0 +1,69 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+/*
+ * Callback for asynchronous producer sends.
+ * Bounds the number of sends that have not been acknowledged yet (acquire() blocks when the bound is reached),
+ * and provides a barrier (awaitAll()) which waits until every outstanding send has completed.
+ */
+public class SendTracker implements Callback
+{
+	private final int maxInFlight;
+	private final Semaphore permits;
+
+	private final AtomicLong acked = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	public SendTracker(int maxInFlight)
+	{
+		this.maxInFlight = maxInFlight;
+		this.permits = new Semaphore(maxInFlight);
+	}
+
+	// call before each send, blocks if maxInFlight sends are outstanding
+	public void acquire() throws InterruptedException
+	{
+		permits.acquire();
+	}
+
+	// give the permit back if send() threw before the callback was registered
+	public void release()
+	{
+		permits.release();
+	}
+
+	@Override
+	public void onCompletion(RecordMetadata metadata, Exception exception)
+	{
+		if (exception != null)
+		{
+			failed.incrementAndGet();
+			Log.error("send.failed", "error", exception);
+		}
+		else
+			acked.incrementAndGet();
+		permits.release();
+	}
+
+	// barrier: wait until all outstanding sends have completed
+	public void awaitAll() throws InterruptedException
+	{
+		permits.acquire(maxInFlight);
+		permits.release(maxInFlight);
+	}
+
+	public long acked()
+	{
+		return acked.get();
+	}
+
+	public long failed()
+	{
+		return failed.get();
+	}
+}
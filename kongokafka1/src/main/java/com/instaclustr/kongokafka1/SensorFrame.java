@@ -0,0 +1,74 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Arrays;
+
+/*
+ * All the sensor metrics of one location for one tick, sent as one record instead of one Sensor record per metric
+ * (6 per truck and 8 per warehouse, each repeating time, doc and tag).
+ * sensor(i, into) turns metric i back into a Sensor so the Goods rules don't change.
+ * See SensorFrameSerializer for the wire format and SensorReader for allocation free decoding.
+ */
+public class SensorFrame
+{
+	long time;
+	String doc;
+	String tag;
+	int size;
+	String[] metrics = new String[8];
+	double[] values = new double[8];
+
+	public SensorFrame()
+	{
+
+	}
+
+	public SensorFrame(long time, String doc, String tag)
+	{
+		reset(time, doc, tag);
+	}
+
+	// empty frame for another location or tick, the arrays are kept
+	public void reset(long time, String doc, String tag)
+	{
+		this.time = time;
+		this.doc = doc;
+		this.tag = tag;
+		this.size = 0;
+	}
+
+	public void add(String metric, double value)
+	{
+		if (size == metrics.length)
+		{
+			metrics = Arrays.copyOf(metrics, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		metrics[size] = metric;
+		values[size++] = value;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	// metric i as a Sensor
+	public Sensor sensor(int i, Sensor into)
+	{
+		into.time = time;
+		into.doc = doc;
+		into.tag = tag;
+		into.metric = metrics[i];
+		into.value = values[i];
+		return into;
+	}
+
+	public String toStr()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(time).append(", ").append(doc).append(", ").append(tag);
+		for (int i = 0; i < size; i++)
+			sb.append(", ").append(metrics[i]).append('=').append(values[i]);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,53 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.regex.Pattern;
+
+import org.apache.kafka.clients.consumer.Consumer;
+
+
+// SensorConsumer for the SensorFrame topics: each record has all the metrics of a location, they are fanned out to the Goods there.
+
+public class SensorFrameConsumer extends LocationConsumer {
+
+	  private final SensorFrame frame = new SensorFrame();
+	  private final Sensor s = new Sensor();
+
+	  public SensorFrameConsumer(String topic)
+	  {
+	    this(consumerName("SensorFrameConsumer"), topic, kafkaConsumer("KongoSensorFrameConsumer"), true);
+	  }
+
+	  public SensorFrameConsumer(String name, String topic, Consumer<String, byte[]> consumer, boolean monitorLag)
+	  {
+	    super(name, topic, consumer, monitorLag);
+	  }
+
+	  // one consumer of a pool sharing all the location frame topics matching pattern
+	  public SensorFrameConsumer(Pattern pattern)
+	  {
+	    this(consumerName("SensorFrameConsumer"), pattern, kafkaPatternConsumer("KongoSensorFrameConsumer"), true);
+	  }
+
+	  public SensorFrameConsumer(String name, Pattern pattern, Consumer<String, byte[]> consumer, boolean monitorLag)
+	  {
+	    super(name, pattern, consumer, monitorLag);
+	  }
+
+	  @Override
+	  protected String read(byte[] value)
+	  {
+		  return reader.read(value, frame).tag;
+	  }
+
+	  @Override
+	  protected String lastRead()
+	  {
+		  return frame.toStr();
+	  }
+
+	  @Override
+	  protected void post(LocationRegistry.Location location)
+	  {
+		  location.post(frame, s);
+	  }
+	}
@@ -0,0 +1,74 @@
+package com.instaclustr.kongokafka1;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * (De)serializes SensorFrames, binary WireFormat only (frames never had a text format).
+ * Binary layout: frame magic, varint time, doc code, tag, varint count, then count x (metric code, 8 byte double value).
+ * The frame magic is not the Sensor one, so a frame read as a Sensor (or the other way round) fails instead of being misread.
+ */
+
+public class SensorFrameSerializer implements Closeable, AutoCloseable, Serializer<SensorFrame>, Deserializer<SensorFrame> {
+
+    @Override
+    public void configure(Map<String, ?> map, boolean b) {
+    }
+
+    @Override
+    public byte[] serialize(String s, SensorFrame frame) {
+        if (frame == null)
+            return null;
+        int docCode = WireFormat.code(WireFormat.DOCS, frame.doc);
+        int tagCode = WireFormat.tagCode(frame.tag);
+        int size = 1 + WireFormat.varLongSize(frame.time)
+                + WireFormat.codedSize(docCode, frame.doc)
+                + WireFormat.tagSize(tagCode, frame.tag)
+                + WireFormat.varLongSize(frame.size);
+        int[] metricCodes = new int[frame.size];
+        for (int i = 0; i < frame.size; i++) {
+            metricCodes[i] = WireFormat.code(WireFormat.METRICS, frame.metrics[i]);
+            size += WireFormat.codedSize(metricCodes[i], frame.metrics[i]) + 8;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(WireFormat.MAGIC_FRAME_V1);
+        WireFormat.putVarLong(buf, frame.time);
+        WireFormat.putCoded(buf, docCode, frame.doc);
+        WireFormat.putTag(buf, tagCode, frame.tag);
+        WireFormat.putVarLong(buf, frame.size);
+        for (int i = 0; i < frame.size; i++) {
+            WireFormat.putCoded(buf, metricCodes[i], frame.metrics[i]);
+            buf.putDouble(frame.values[i]);
+        }
+        return buf.array();
+    }
+
+    @Override
+    public SensorFrame deserialize(String topic, byte[] bytes) {
+        if (bytes == null)
+            return null;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            byte magic = buf.get();
+            if (magic != WireFormat.MAGIC_FRAME_V1)
+                throw new IllegalArgumentException("Not a sensor frame, magic/version " + (magic & 0xFF));
+            SensorFrame frame = new SensorFrame(WireFormat.getVarLong(buf), WireFormat.getCoded(buf, WireFormat.DOCS), WireFormat.getTag(buf));
+            int n = (int) WireFormat.getVarLong(buf);
+            for (int i = 0; i < n; i++)
+                frame.add(WireFormat.getCoded(buf, WireFormat.METRICS), buf.getDouble());
+            return frame;
+        }
+        catch(Exception e) {
+            throw new IllegalArgumentException("Error reading bytes", e);
+        }
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
@@ -0,0 +1,323 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Allocation free Sensor decoding for the consumer hot path.
+ *
+ * Parses a serialized Sensor (binary WireFormat or legacy text) straight from the byte[] or ByteBuffer into a Sensor
+ * supplied by the caller, which is reused for every record. doc and metric are the constant table strings,
+ * tags are interned per reader, so after every location has been seen once nothing is allocated per binary record.
+ * The legacy text format still allocates one small String per record for Double.parseDouble.
+ * SensorFrames are decoded the same way into a reused SensorFrame.
+ *
+ * Not thread safe, use one reader (and one Sensor) per consumer thread.
+ * The Sensor is overwritten by the next read so handlers must not keep a reference to it.
+ */
+public class SensorReader
+{
+	private static final byte[][] DOC_BYTES = bytes(WireFormat.DOCS);
+	private static final byte[][] METRIC_BYTES = bytes(WireFormat.METRICS);
+
+	private final Interner interner = new Interner(1024);
+
+	// frame header and metrics are read into this
+	private final Sensor header = new Sensor();
+
+	// used for ByteBuffers without an accessible array
+	private byte[] scratch = new byte[64];
+
+	public Sensor read(byte[] bytes, Sensor into)
+	{
+		return read(bytes, 0, bytes.length, into);
+	}
+
+	public Sensor read(ByteBuffer buf, Sensor into)
+	{
+		int len = buf.remaining();
+		if (buf.hasArray())
+			return read(buf.array(), buf.arrayOffset() + buf.position(), len, into);
+		if (scratch.length < len)
+			scratch = new byte[Math.max(len, scratch.length * 2)];
+		buf.duplicate().get(scratch, 0, len);
+		return read(scratch, 0, len, into);
+	}
+
+	public Sensor read(byte[] b, int off, int len, Sensor into)
+	{
+		try
+		{
+			if (len > 0 && b[off] == WireFormat.MAGIC_V1)
+				readBinary(b, off + 1, off + len, into);
+			else
+				readText(b, off, off + len, into);
+			return into;
+		}
+		catch (RuntimeException e)
+		{
+			throw new IllegalArgumentException("Error reading bytes", e);
+		}
+	}
+
+	// magic, varint time, doc code, tag, metric code, 8 byte double
+	private void readBinary(byte[] b, int p, int end, Sensor into)
+	{
+		p = readHeader(b, p, into);
+		p = readMetric(b, p, into);
+		if (end - p != 8)
+			throw new IllegalArgumentException("Bad sensor frame length");
+		into.value = getDouble(b, p);
+	}
+
+	// varint time, doc code, tag. Returns the position after the tag.
+	private int readHeader(byte[] b, int p, Sensor into)
+	{
+		long time = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			byte x = b[p++];
+			time |= (long) (x & 0x7F) << shift;
+			if ((x & 0x80) == 0)
+				break;
+		}
+		into.time = time;
+
+		int docCode = b[p] & 0xFF;
+		if (docCode != WireFormat.INLINE)
+		{
+			into.doc = WireFormat.DOCS[docCode];
+			p++;
+		}
+		else
+			p = inlineString(b, p + 1, into, 0);
+
+		int tagCode = b[p] & 0xFF;
+		if (tagCode == WireFormat.NULL)
+		{
+			into.tag = null;
+			p++;
+		}
+		else if (tagCode != WireFormat.INLINE)
+		{
+			into.tag = interner.internTag(b, p, 17);
+			p += 17;
+		}
+		else
+			p = inlineString(b, p + 1, into, 1);
+		return p;
+	}
+
+	private int readMetric(byte[] b, int p, Sensor into)
+	{
+		int metricCode = b[p] & 0xFF;
+		if (metricCode != WireFormat.INLINE)
+		{
+			into.metric = WireFormat.METRICS[metricCode];
+			return p + 1;
+		}
+		return inlineString(b, p + 1, into, 2);
+	}
+
+	private static double getDouble(byte[] b, int p)
+	{
+		long bits = 0;
+		for (int i = 0; i < 8; i++)
+			bits = (bits << 8) | (b[p + i] & 0xFF);
+		return Double.longBitsToDouble(bits);
+	}
+
+	// A SensorFrame (see SensorFrameSerializer) into a frame supplied by the caller, reused like the Sensor above.
+	public SensorFrame read(byte[] b, SensorFrame into)
+	{
+		try
+		{
+			if (b.length == 0 || b[0] != WireFormat.MAGIC_FRAME_V1)
+				throw new IllegalArgumentException("Not a sensor frame");
+			// the frame header is the same as a binary Sensor's
+			int p = readHeader(b, 1, header);
+			into.reset(header.time, header.doc, header.tag);
+			int n = 0;
+			for (int shift = 0; ; shift += 7)
+			{
+				byte x = b[p++];
+				n |= (x & 0x7F) << shift;
+				if ((x & 0x80) == 0)
+					break;
+			}
+			for (int i = 0; i < n; i++)
+			{
+				p = readMetric(b, p, header);
+				into.add(header.metric, getDouble(b, p));
+				p += 8;
+			}
+			if (p != b.length)
+				throw new IllegalArgumentException("Bad sensor frame length");
+			return into;
+		}
+		catch (RuntimeException e)
+		{
+			throw new IllegalArgumentException("Error reading bytes", e);
+		}
+	}
+
+	// varint length + UTF-8, assigned to doc (0), tag (1) or metric (2). Returns the position after the string.
+	private int inlineString(byte[] b, int p, Sensor into, int field)
+	{
+		int n = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			byte x = b[p++];
+			n |= (x & 0x7F) << shift;
+			if ((x & 0x80) == 0)
+				break;
+		}
+		String s = interner.intern(b, p, n);
+		if (field == 0)
+			into.doc = s;
+		else if (field == 1)
+			into.tag = s;
+		else
+			into.metric = s;
+		return p + n;
+	}
+
+	// time, doc, tag, metric, value separated by ", "
+	private void readText(byte[] b, int p, int end, Sensor into)
+	{
+		int e = field(b, p, end);
+		long time = 0;
+		for (int i = p; i < e; i++)
+		{
+			int d = b[i] - '0';
+			if (d < 0 || d > 9)
+				throw new NumberFormatException("Bad time");
+			time = time * 10 + d;
+		}
+		into.time = time;
+
+		p = e + 2;
+		e = field(b, p, end);
+		into.doc = lookup(DOC_BYTES, WireFormat.DOCS, b, p, e);
+
+		p = e + 2;
+		e = field(b, p, end);
+		into.tag = interner.intern(b, p, e - p);
+
+		p = e + 2;
+		e = field(b, p, end);
+		into.metric = lookup(METRIC_BYTES, WireFormat.METRICS, b, p, e);
+
+		p = e + 2;
+		into.value = Double.parseDouble(new String(b, p, end - p, WireFormat.CHARSET));
+	}
+
+	// end of the field starting at p
+	private static int field(byte[] b, int p, int end)
+	{
+		for (int i = p; i < end - 1; i++)
+			if (b[i] == ',' && b[i + 1] == ' ')
+				return i;
+		return end;
+	}
+
+	private String lookup(byte[][] keys, String[] values, byte[] b, int from, int to)
+	{
+		for (int i = 0; i < keys.length; i++)
+			if (Interner.equals(keys[i], b, from, to - from))
+				return values[i];
+		return interner.intern(b, from, to - from);
+	}
+
+	private static byte[][] bytes(String[] strings)
+	{
+		byte[][] r = new byte[strings.length][];
+		for (int i = 0; i < strings.length; i++)
+			r[i] = strings[i].getBytes(WireFormat.CHARSET);
+		return r;
+	}
+
+	/*
+	 * Open addressing byte sequence -> String table. Lookups do not allocate, a miss copies the key once.
+	 * Binary tags (prefix code + 16 UUID bytes) and UTF-8 strings are kept in the same table, the key bytes differ.
+	 */
+	static class Interner
+	{
+		private byte[][] keys;
+		private String[] values;
+		private int size;
+
+		Interner(int capacity)
+		{
+			keys = new byte[capacity][];
+			values = new String[capacity];
+		}
+
+		String intern(byte[] b, int off, int len)
+		{
+			return intern(b, off, len, false);
+		}
+
+		String internTag(byte[] b, int off, int len)
+		{
+			return intern(b, off, len, true);
+		}
+
+		private String intern(byte[] b, int off, int len, boolean binaryTag)
+		{
+			int mask = keys.length - 1;
+			int i = hash(b, off, len) & mask;
+			while (keys[i] != null)
+			{
+				if (equals(keys[i], b, off, len))
+					return values[i];
+				i = (i + 1) & mask;
+			}
+
+			String s = binaryTag ? WireFormat.getTag(ByteBuffer.wrap(b, off, len)) : new String(b, off, len, WireFormat.CHARSET);
+			byte[] key = new byte[len];
+			System.arraycopy(b, off, key, 0, len);
+			keys[i] = key;
+			values[i] = s;
+			if (++size * 2 > keys.length)
+				resize();
+			return s;
+		}
+
+		private void resize()
+		{
+			byte[][] oldKeys = keys;
+			String[] oldValues = values;
+			keys = new byte[oldKeys.length * 2][];
+			values = new String[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++)
+			{
+				if (oldKeys[j] == null)
+					continue;
+				int i = hash(oldKeys[j], 0, oldKeys[j].length) & mask;
+				while (keys[i] != null)
+					i = (i + 1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+
+		private static int hash(byte[] b, int off, int len)
+		{
+			int h = 1;
+			for (int i = off; i < off + len; i++)
+				h = 31 * h + b[i];
+			return h ^ (h >>> 16);
+		}
+
+		static boolean equals(byte[] key, byte[] b, int off, int len)
+		{
+			if (key.length != len)
+				return false;
+			for (int i = 0; i < len; i++)
+				if (key[i] != b[off + i])
+					return false;
+			return true;
+		}
+	}
+}
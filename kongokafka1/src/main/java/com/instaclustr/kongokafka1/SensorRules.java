@@ -0,0 +1,164 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Sensor rules for a Goods category set, compiled into a per metric table of allowed ranges.
+ *
+ * Checking a sensor event is a metric id lookup (the metric strings from SensorReader, the serializers and the simulator
+ * are the interned table constants, so usually a reference compare) and a range compare for each rule on that metric
+ * (at most one for the current categories). The result is a bitmask of violation reasons, only turned into text by reasons() when reported.
+ *
+ * Tables only depend on the category bits (the Goods Temp comes from its temperature category), so each category set is compiled
+ * once and shared by all Goods with that set.
+ */
+public final class SensorRules
+{
+	// violation reasons, in report order
+	public static final int FRAGILE = 1;
+	public static final int MEDICINAL = 1 << 1;
+	public static final int PERISHABLE = 1 << 2;
+	public static final int EDIBLE = 1 << 3;
+	public static final int DRY = 1 << 4;
+	public static final int TEMP = 1 << 5;
+
+	static final String[] REASONS = { "fragile ", "medicinal ", "perishable ", "edible ", "dry ", "temp" };
+
+	// metrics with rules. The dark rule has always been on "illuminace", which no sensor produces, kept so results don't change.
+	static final String[] METRICS = { "temp", "humidity", "illuminace", "acceleration", "vibrationDisplacement", "vibrationVelocity" };
+	static final int TEMP_METRIC = 0;
+	static final int HUMIDITY = 1;
+	static final int ILLUMINACE = 2;
+	static final int ACCELERATION = 3;
+	static final int VIBRATION_DISPLACEMENT = 4;
+	static final int VIBRATION_VELOCITY = 5;
+
+	private static final ConcurrentHashMap<Integer, SensorRules> COMPILED = new ConcurrentHashMap<Integer, SensorRules>();
+
+	// rules for metric m are lo/hi/reasons[start[m] .. start[m + 1]), violated if the value is not in [lo, hi]
+	private final int[] start = new int[METRICS.length + 1];
+	private final double[] lo;
+	private final double[] hi;
+	private final int[] reasons;
+
+	public static SensorRules forCategories(int cats, Temp temp)
+	{
+		return COMPILED.computeIfAbsent(cats, c -> new SensorRules(c, temp));
+	}
+
+	// metric id, -1 if there are no rules for the metric
+	public static int metricId(String metric)
+	{
+		for (int i = 0; i < METRICS.length; i++)
+			if (METRICS[i] == metric)
+				return i;
+		for (int i = 0; i < METRICS.length; i++)
+			if (METRICS[i].equals(metric))
+				return i;
+		return -1;
+	}
+
+	private static class Rule
+	{
+		final int metric;
+		final double lo;
+		final double hi;
+		int reasons;
+
+		Rule(int metric, double lo, double hi, int reasons)
+		{
+			this.metric = metric;
+			this.lo = lo;
+			this.hi = hi;
+			this.reasons = reasons;
+		}
+	}
+
+	private SensorRules(int cats, Temp temp)
+	{
+		ArrayList<Rule> rules = new ArrayList<Rule>();
+		double inf = Double.POSITIVE_INFINITY;
+
+		// fragile: lowG (acceleration < 5) and smoothRide (vibration displacement < 10, velocity < 100)
+		if ((cats & Rules.FRAGILE) != 0)
+		{
+			add(rules, ACCELERATION, -inf, Math.nextDown(5.0), FRAGILE);
+			add(rules, VIBRATION_DISPLACEMENT, -inf, Math.nextDown(10.0), FRAGILE);
+			add(rules, VIBRATION_VELOCITY, -inf, Math.nextDown(100.0), FRAGILE);
+		}
+		// medicinal: dry (humidity <= 60) and dark (illuminace <= 500)
+		if ((cats & Rules.MEDICINAL) != 0)
+		{
+			add(rules, HUMIDITY, -inf, 60, MEDICINAL);
+			add(rules, ILLUMINACE, -inf, 500, MEDICINAL);
+		}
+		// perishable: dry and dark, the use by date is checked by Goods as it isn't a metric
+		if ((cats & Rules.PERISHABLE) != 0)
+		{
+			add(rules, HUMIDITY, -inf, 60, PERISHABLE);
+			add(rules, ILLUMINACE, -inf, 500, PERISHABLE);
+		}
+		// edible and dry: dry
+		if ((cats & Rules.EDIBLE) != 0)
+			add(rules, HUMIDITY, -inf, 60, EDIBLE);
+		if ((cats & Rules.DRY) != 0)
+			add(rules, HUMIDITY, -inf, 60, DRY);
+		// temperature category: in the Temp range
+		if (temp != null)
+			add(rules, TEMP_METRIC, temp.min, temp.max, TEMP);
+
+		rules.sort((a, b) -> Integer.compare(a.metric, b.metric));
+		lo = new double[rules.size()];
+		hi = new double[rules.size()];
+		reasons = new int[rules.size()];
+		for (int i = 0; i < rules.size(); i++)
+		{
+			Rule r = rules.get(i);
+			lo[i] = r.lo;
+			hi[i] = r.hi;
+			reasons[i] = r.reasons;
+			start[r.metric + 1] = i + 1;
+		}
+		// metrics without rules start where the previous one ended
+		for (int m = 1; m <= METRICS.length; m++)
+			start[m] = Math.max(start[m], start[m - 1]);
+	}
+
+	// rules with the same metric and range are merged
+	private static void add(ArrayList<Rule> rules, int metric, double lo, double hi, int reason)
+	{
+		for (Rule r : rules)
+			if (r.metric == metric && r.lo == lo && r.hi == hi)
+			{
+				r.reasons |= reason;
+				return;
+			}
+		rules.add(new Rule(metric, lo, hi, reason));
+	}
+
+	// violation reasons for this metric value, 0 if none
+	public int violations(String metric, double value)
+	{
+		int m = metricId(metric);
+		if (m < 0)
+			return 0;
+		int v = 0;
+		for (int i = start[m]; i < start[m + 1]; i++)
+			if (!(value >= lo[i] && value <= hi[i]))
+				v |= reasons[i];
+		return v;
+	}
+
+	// "" for no violations
+	public static String reasons(int violations)
+	{
+		if (violations == 0)
+			return "";
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < REASONS.length; i++)
+			if ((violations & (1 << i)) != 0)
+				s.append(REASONS[i]);
+		return s.toString();
+	}
+}
@@ -0,0 +1,231 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.common.utils.Utils;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Joined;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StreamPartitioner;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+
+/*
+ * Sensor rule checking as a Kafka Streams application, an alternative to SensorConsumer + LocationRegistry that needs no Simulate state.
+ *
+ * kongo-goods (keyed by goods) -> goods table: goods -> categories and use by date
+ * kongo-rfid (keyed by goods) joined with the goods table -> goods-location store: goods -> location of the last load (truck) or
+ *   unload (warehouse). Each move is written to GOODS_MOVES_TOPIC as a delete of "old location|goods" and a put of "new location|goods",
+ *   partitioned by location
+ * GOODS_MOVES_TOPIC -> goods-at-location store: "location|goods" -> Goods, one entry per Goods, so a move is O(1) however many
+ *   Goods a location has
+ * kong2- sensor stream (keyed by location): a range scan of goods-at-location for the sensor's location, each Goods' sensor rules
+ *   checked, violations written to kongo-sensor-violations keyed by goods: "time, location, goods, metric, value, reasons".
+ *
+ * The stores are RocksDB stores backed by changelog topics, so the application can run as several instances sharing the partitions.
+ * GOODS_MOVES_TOPIC is read together with the sensor topics, it must have as many partitions as they have (the broker creates it
+ * with the default number if topics are created automatically, as for the per location sensor topics).
+ * Run main with Simulate/KafkaRun producing, or test the topology with TopologyTestDriver (no broker).
+ */
+public class SensorRulesTopology
+{
+	public static final String VIOLATIONS_TOPIC = "kongo-sensor-violations";
+	public static final String GOODS_MOVES_TOPIC = "kongo-goods-moves";
+	public static final String GOODS_LOCATION_STORE = "goods-location";
+	public static final String GOODS_STORE = "goods";
+	public static final String GOODS_AT_LOCATION_STORE = "goods-at-location";
+
+	static final Serde<Sensor> SENSOR_SERDE = Serdes.serdeFrom(new SensorSerializer(), new SensorSerializer());
+	static final Serde<RFIDEvent> RFID_SERDE = Serdes.serdeFrom(new RFIDEventSerializer(), new RFIDEventSerializer());
+	static final Serde<Goods> GOODS_SERDE = Serdes.serdeFrom(new GoodsSerializer(), new GoodsSerializer());
+
+	// goods-at-location keys: location, SEPARATOR, goods tag. The tags of a location are the range [location|, location}).
+	static final char SEPARATOR = '|';
+
+	// oneTopic: sensors from the single kong2- topic, else from all the per location topics
+	public static Topology build(boolean oneTopic)
+	{
+		StreamsBuilder builder = new StreamsBuilder();
+		builder.addStateStore(Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(GOODS_LOCATION_STORE), Serdes.String(), Serdes.String()));
+		builder.addStateStore(Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(GOODS_AT_LOCATION_STORE), Serdes.String(), GOODS_SERDE));
+
+		KTable<String, Goods> goods = builder.table(Simulate.goodsTopic, Consumed.with(Serdes.String(), GOODS_SERDE),
+				Materialized.<String, Goods, KeyValueStore<Bytes, byte[]>>as(GOODS_STORE)
+						.withKeySerde(Serdes.String()).withValueSerde(GOODS_SERDE));
+
+		// a move is a delete at the old location and a put at the new one, each sent to the partition of its location
+		builder.stream(Simulate.rfidTopic, Consumed.with(Serdes.String(), RFID_SERDE))
+				.join(goods, (e, g) -> KeyValue.pair(e.load ? e.truckKey : e.warehouseKey, g), Joined.with(Serdes.String(), RFID_SERDE, GOODS_SERDE))
+				.flatTransform(Mover::new, GOODS_LOCATION_STORE)
+				.through(GOODS_MOVES_TOPIC, Produced.with(Serdes.String(), GOODS_SERDE, new LocationPartitioner()))
+				.process(Placer::new, GOODS_AT_LOCATION_STORE);
+
+		KStream<String, Sensor> sensors = oneTopic
+				? builder.stream(Simulate.kafkaSensorTopicBase, Consumed.with(Serdes.String(), SENSOR_SERDE))
+				: builder.stream(Simulate.kafkaSensorLocationTopics, Consumed.with(Serdes.String(), SENSOR_SERDE));
+
+		sensors.flatTransform(RuleChecker::new, GOODS_AT_LOCATION_STORE)
+				.to(VIOLATIONS_TOPIC, Produced.with(Serdes.String(), Serdes.String()));
+
+		return builder.build();
+	}
+
+	static String locationKey(String location, String tag)
+	{
+		return location + SEPARATOR + tag;
+	}
+
+	static String location(String locationKey)
+	{
+		return locationKey.substring(0, locationKey.lastIndexOf(SEPARATOR));
+	}
+
+	// the rules processor: the violation record for g, null if none
+	static KeyValue<String, String> violation(Sensor sensor, Goods g)
+	{
+		int v = g.sensorViolations(sensor);
+		if (v == 0)
+			return null;
+		return KeyValue.pair(g.tag, sensor.time + ", " + sensor.tag + ", " + g.tag + ", " + sensor.metric + ", " + sensor.value + ", " + SensorRules.reasons(v));
+	}
+
+	// keyed by goods: remembers where each Goods is, and turns its move into a delete (null) at the old location and a put at the new one
+	static class Mover implements Transformer<String, KeyValue<String, Goods>, Iterable<KeyValue<String, Goods>>>
+	{
+		private KeyValueStore<String, String> goodsLocation;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void init(ProcessorContext context)
+		{
+			goodsLocation = (KeyValueStore<String, String>) context.getStateStore(GOODS_LOCATION_STORE);
+		}
+
+		@Override
+		public Iterable<KeyValue<String, Goods>> transform(String tag, KeyValue<String, Goods> to)
+		{
+			List<KeyValue<String, Goods>> moves = new ArrayList<KeyValue<String, Goods>>(2);
+			String from = goodsLocation.get(tag);
+			if (from != null && !from.equals(to.key))
+				moves.add(KeyValue.pair(locationKey(from, tag), null));
+			goodsLocation.put(tag, to.key);
+			moves.add(KeyValue.pair(locationKey(to.key, tag), to.value));
+			return moves;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	// partitions "location|goods" keys by location, as the producers partition the sensor records keyed by location
+	static class LocationPartitioner implements StreamPartitioner<String, Goods>
+	{
+		@Override
+		public Integer partition(String topic, String key, Goods value, int numPartitions)
+		{
+			return Utils.toPositive(Utils.murmur2(location(key).getBytes(StandardCharsets.UTF_8))) % numPartitions;
+		}
+	}
+
+	// keyed by location|goods: the Goods at each location
+	static class Placer extends AbstractProcessor<String, Goods>
+	{
+		private KeyValueStore<String, Goods> goodsAtLocation;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void init(ProcessorContext context)
+		{
+			super.init(context);
+			goodsAtLocation = (KeyValueStore<String, Goods>) context.getStateStore(GOODS_AT_LOCATION_STORE);
+		}
+
+		@Override
+		public void process(String locationKey, Goods g)
+		{
+			if (g == null)
+				goodsAtLocation.delete(locationKey);
+			else
+				goodsAtLocation.put(locationKey, g);
+		}
+	}
+
+	// keyed by location: checks every Goods at the sensor's location, found by a range scan of goods-at-location
+	static class RuleChecker implements Transformer<String, Sensor, Iterable<KeyValue<String, String>>>
+	{
+		private KeyValueStore<String, Goods> goodsAtLocation;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void init(ProcessorContext context)
+		{
+			goodsAtLocation = (KeyValueStore<String, Goods>) context.getStateStore(GOODS_AT_LOCATION_STORE);
+		}
+
+		@Override
+		public Iterable<KeyValue<String, String>> transform(String location, Sensor sensor)
+		{
+			List<KeyValue<String, String>> violations = new ArrayList<KeyValue<String, String>>();
+			try (KeyValueIterator<String, Goods> here = goodsAtLocation.range(sensor.tag + SEPARATOR, sensor.tag + (char) (SEPARATOR + 1)))
+			{
+				while (here.hasNext())
+				{
+					KeyValue<String, String> v = violation(sensor, here.next().value);
+					if (v != null)
+						violations.add(v);
+				}
+			}
+			return violations;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	static Properties streamsProps()
+	{
+		Properties props = new Properties();
+		props.put(StreamsConfig.APPLICATION_ID_CONFIG, "kongo-sensor-rules");
+		props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
+		props.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, KafkaProperties.SENSOR_CONSUMERS);
+		return props;
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		Topology topology = build(Simulate.oneTopic);
+		System.out.println(topology.describe());
+
+		KafkaStreams streams = new KafkaStreams(topology, streamsProps());
+		CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			streams.close();
+			stopped.countDown();
+		}));
+		streams.start();
+		stopped.await();
+	}
+}
@@ -4,24 +4,33 @@ import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * (De)serializes Sensor objects from/to strings.
+ * (De)serializes Sensor objects from/to strings, or from/to the binary WireFormat for topics listed in WireFormat.BINARY_TOPICS_CONFIG.
+ * Binary layout: magic, varint time, doc code, tag, metric code, 8 byte double value.
  */
 
 public class SensorSerializer implements Closeable, AutoCloseable, Serializer<Sensor>, Deserializer<Sensor> {
 	
     public static final Charset CHARSET = Charset.forName("UTF-8");
 
+    private Set<String> binaryTopics = Collections.emptySet();
+
     @Override
     public void configure(Map<String, ?> map, boolean b) {
+        binaryTopics = WireFormat.binaryTopics(map);
     }
     
     @Override
     public byte[] serialize(String s, Sensor sensor) {
+        if (WireFormat.useBinary(binaryTopics, s))
+            return serializeBinary(sensor);
     		String line =
     				sensor.time + ", " +
     				sensor.doc + ", " +
@@ -31,9 +40,31 @@ public class SensorSerializer implements Closeable, AutoCloseable, Serializer<Se
         return line.getBytes(CHARSET);
     }
 	
+    public static byte[] serializeBinary(Sensor sensor) {
+        int docCode = WireFormat.code(WireFormat.DOCS, sensor.doc);
+        int tagCode = WireFormat.tagCode(sensor.tag);
+        int metricCode = WireFormat.code(WireFormat.METRICS, sensor.metric);
+        int size = 1 + WireFormat.varLongSize(sensor.time)
+                + WireFormat.codedSize(docCode, sensor.doc)
+                + WireFormat.tagSize(tagCode, sensor.tag)
+                + WireFormat.codedSize(metricCode, sensor.metric)
+                + 8;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(WireFormat.MAGIC_V1);
+        WireFormat.putVarLong(buf, sensor.time);
+        WireFormat.putCoded(buf, docCode, sensor.doc);
+        WireFormat.putTag(buf, tagCode, sensor.tag);
+        WireFormat.putCoded(buf, metricCode, sensor.metric);
+        buf.putDouble(sensor.value);
+        return buf.array();
+    }
+
     @Override
     public Sensor deserialize(String topic, byte[] bytes) {
         try {
+            if (WireFormat.isBinary(bytes))
+                return deserializeBinary(ByteBuffer.wrap(bytes));
+
             String[] parts = new String(bytes, CHARSET).split(", ");
 
             int i = 0;
@@ -50,8 +81,18 @@ public class SensorSerializer implements Closeable, AutoCloseable, Serializer<Se
         }
     }
 
+    static Sensor deserializeBinary(ByteBuffer buf) {
+        WireFormat.checkMagic(buf);
+        long time = WireFormat.getVarLong(buf);
+        String doc = WireFormat.getCoded(buf, WireFormat.DOCS);
+        String tag = WireFormat.getTag(buf);
+        String metric = WireFormat.getCoded(buf, WireFormat.METRICS);
+        double value = buf.getDouble();
+        return new Sensor(time, doc, tag, metric, value);
+    }
+
     @Override
     public void close() {
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,409 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Parallel version of Simulate.loop.
+ *
+ * Warehouses and trucks are partitioned into shards (index % shards), and goods follow the warehouse or truck they are in.
+ * Each phase of an hour runs one task per shard on a ForkJoinPool, and invokeAll() is the barrier between phases:
+ * 1 UNLOAD (truck shards): goods in each truck go to the warehouse where the truck is docked
+ * 2 LOAD (warehouse shards): goods in each warehouse may be loaded onto a truck docked there. The trucks docked at a warehouse
+ *   are only touched by that warehouse's shard in this phase.
+ * 3 MOVE (truck shards): trucks pick their next warehouse, then (warehouse shards) the docked truck lists are rebuilt
+ * 4 SENSOR (both): each truck and warehouse produces its sensor events
+ *
+ * Random decisions don't come from a shared Random, they are a hash of (seed, hour, phase, entity), and goods and trucks
+ * are always visited in index order, so a given seed produces the same multiset of events whatever the number of shards
+ * (the order events are sent in differs between runs).
+ *
+ * The engine runs on Simulate.world: it shares the truck arrays, keeps the goods in per warehouse and per truck lists,
+ * and writes the goods locations back to the world at the end of loop().
+ * Only the Kafka consumer modes are supported, events are not posted to the local LocationRegistry.
+ */
+public class ShardedSimulate
+{
+	// phases, part of the random hash so each phase gets independent random numbers
+	static final int LOAD = 1;
+	static final int PICK = 2;
+	static final int MOVE = 3;
+	static final int SENSOR = 4;
+
+	final int shards;
+	final long seed;
+	final ForkJoinPool pool;
+
+	// entities, sorted by tag so indexes don't depend on HashMap order
+	final String[] goodsTags;
+	final Goods[] goods;
+	final GoodsStore store;
+	final String[] warehouseTags;
+	final Warehouses[] warehouses;
+	final String[] truckTags;
+	final Trucks[] trucks;
+
+	// locations
+	final int[] truckAt;		// warehouse index for each truck
+	final IntList[] goodsAt;	// goods in each warehouse
+	final IntList[] cargo;		// goods in each truck
+	final IntList[] docked;		// trucks at each warehouse
+
+	// UNLOAD hands goods over between shards: arrivals[from shard][to shard] holds (goods, warehouse) pairs
+	final IntList[][] arrivals;
+
+	final LongAdder events = new LongAdder();
+
+	final WorldState world;
+
+	public ShardedSimulate(int shards, long seed)
+	{
+		this(Simulate.world, shards, seed);
+	}
+
+	ShardedSimulate(WorldState world, int shards, long seed)
+	{
+		this.shards = shards;
+		this.seed = seed;
+		this.pool = new ForkJoinPool(shards);
+
+		this.world = world;
+		goodsTags = world.goodsTags;
+		goods = world.goods;
+		store = world.store;
+		warehouseTags = world.warehouseTags;
+		warehouses = world.warehouses;
+		truckTags = world.truckTags;
+		trucks = world.trucks;
+		truckAt = world.truckAt;
+		docked = world.docked;
+
+		goodsAt = IntList.array(warehouses.length);
+		cargo = IntList.array(trucks.length);
+		arrivals = new IntList[shards][];
+		for (int s = 0; s < shards; s++)
+			arrivals[s] = IntList.array(shards);
+
+		for (int t = 0; t < trucks.length; t++)
+			trucks[t].resetCats();
+		for (int g = 0; g < goods.length; g++)
+		{
+			if (!world.onTruck(g))
+				goodsAt[world.warehouseOf(g)].add(g);
+			else
+			{
+				int t = world.truckOf(g);
+				cargo[t].add(g);
+				trucks[t].updateCategories(goods[g]);
+			}
+		}
+	}
+
+	public long loop(int hours, EventSink out)
+	{
+		long t0 = System.currentTimeMillis();
+		long before = events.sum();
+		Log.info("simulation.started", "shards", shards);
+
+		for (int time = 0; time < hours && !Simulate.stopped; time++)
+		{
+			Log.info("simulation.hour", "time", time);
+			final int hour = time;
+			phase(s -> unload(s, hour, out));
+			phase(s -> arrive(s));
+			phase(s -> load(s, hour, out));
+			phase(s -> move(s, hour));
+			phase(s -> dock(s));
+			phase(s -> sensors(s, hour, out));
+			out.endHour();
+		}
+
+		writeBack();
+
+		long total = events.sum() - before;
+		double duration = (System.currentTimeMillis() - t0)/1000.0;
+		Log.info("simulation.ended", "durationSecs", duration, "events", total, "eventsPerSec", total/duration, "shards", shards);
+		return total;
+	}
+
+	interface ShardTask
+	{
+		void run(int shard);
+	}
+
+	// run the task for every shard and wait for all of them
+	private void phase(ShardTask task)
+	{
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(shards);
+		for (int s = 0; s < shards; s++)
+		{
+			final int shard = s;
+			tasks.add(() -> { task.run(shard); return null; });
+		}
+		try
+		{
+			for (Future<Void> f : pool.invokeAll(tasks))
+				f.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	// 1 UNLOAD, truck shard
+	private void unload(int shard, int time, EventSink out)
+	{
+		for (int t = shard; t < trucks.length; t += shards)
+		{
+			IntList c = cargo[t];
+			if (c.size == 0)
+				continue;
+			int w = truckAt[t];
+			IntList arrived = arrivals[shard][w % shards];
+			for (int i = 0; i < c.size; i++)
+			{
+				int g = c.data[i];
+				arrived.add(g);
+				arrived.add(w);
+				// same argument order as Simulate.loop
+				out.rfid(new RFIDEvent(false, time, goodsTags[g], warehouseTags[w], truckTags[t]));
+			}
+			events.add(c.size);
+			c.clear();
+			// every goods is off the truck, no categories left on board
+			trucks[t].resetCats();
+		}
+	}
+
+	// 1b UNLOAD, warehouse shard: take the goods unloaded at this shard's warehouses, keep goods in index order
+	private void arrive(int shard)
+	{
+		for (int from = 0; from < shards; from++)
+		{
+			IntList arrived = arrivals[from][shard];
+			for (int i = 0; i < arrived.size; i += 2)
+				goodsAt[arrived.data[i + 1]].add(arrived.data[i]);
+			arrived.clear();
+		}
+		for (int w = shard; w < warehouses.length; w += shards)
+			goodsAt[w].sort();
+	}
+
+	// 2 LOAD, warehouse shard
+	private void load(int shard, int time, EventSink out)
+	{
+		for (int w = shard; w < warehouses.length; w += shards)
+		{
+			IntList here = goodsAt[w];
+			IntList trucksHere = docked[w];
+			int kept = 0;
+			for (int i = 0; i < here.size; i++)
+			{
+				int g = here.data[i];
+				if (trucksHere.size > 0 && unit(rand(time, LOAD, g, 0)) > 0.5 && tryLoad(g, w, pick(trucksHere, time, g), time, out))
+					continue;
+				here.data[kept++] = g;
+			}
+			here.size = kept;
+		}
+	}
+
+	private boolean tryLoad(int g, int w, int t, int time, EventSink out)
+	{
+		Goods goods = this.goods[g];
+		Trucks truck = trucks[t];
+		if (Simulate.enforceHazardousRules && !store.allowedInTruck(g, truck.categoriesOnBoard()))
+			return false;
+		if (Simulate.enforceTempRules && !store.truckTempRules(g, truck))
+			return false;
+
+		truck.updateCategories(goods);
+		cargo[t].add(g);
+		out.rfid(new RFIDEvent(true, time, goodsTags[g], warehouseTags[w], truckTags[t]));
+		events.increment();
+		return true;
+	}
+
+	// same distribution as WorldState.pickTruck: last truck 1/2, the one before 1/4, ...
+	private int pick(IntList trucksHere, int time, int g)
+	{
+		int i = trucksHere.size - 1;
+		long bits = rand(time, PICK, g, 0);
+		int used = 0;
+		while (i > 0 && (bits & 1) != 0)
+		{
+			i--;
+			bits >>>= 1;
+			if (++used == 64)
+			{
+				bits = rand(time, PICK, g, used);
+				used = 0;
+			}
+		}
+		return trucksHere.data[i];
+	}
+
+	// 3 MOVE, truck shard
+	private void move(int shard, int time)
+	{
+		for (int t = shard; t < trucks.length; t += shards)
+		{
+			int dest = destination(t, time);
+			if (dest >= 0)
+				truckAt[t] = dest;
+		}
+	}
+
+	// a random warehouse with a compatible temperature control, as Simulate.loop. After a while of random tries scan on from the
+	// last one tried, -1 if no warehouse is compatible and the truck stays where it is.
+	private int destination(int t, int time)
+	{
+		int dest = 0;
+		for (int k = 0; k < 4 * warehouses.length; k++)
+		{
+			dest = (int) ((rand(time, MOVE, t, k) >>> 1) % warehouses.length);
+			if (!Simulate.enforceTempRules || trucks[t].canDeliverToWarehouse(warehouses[dest]))
+				return dest;
+		}
+		for (int k = 1; k < warehouses.length; k++)
+		{
+			int w = (dest + k) % warehouses.length;
+			if (trucks[t].canDeliverToWarehouse(warehouses[w]))
+				return w;
+		}
+		return -1;
+	}
+
+	// 3b MOVE, warehouse shard: rebuild docked trucks lists, in truck index order
+	private void dock(int shard)
+	{
+		for (int w = shard; w < warehouses.length; w += shards)
+			docked[w].clear();
+		for (int t = 0; t < trucks.length; t++)
+			if (truckAt[t] % shards == shard)
+				world.addDocked(t);
+	}
+
+	// 4 SENSOR, both, same metrics and ranges as Simulate.loop
+	private void sensors(int shard, int time, EventSink out)
+	{
+		for (int t = shard; t < trucks.length; t += shards)
+		{
+			String tag = truckTags[t];
+			Temp temp = trucks[t].temp;
+			SensorFrame frame = new SensorFrame(time, "SENSOR TRUCK", tag);
+			int k = 0;
+			frame.add("temp", between(temp.min, temp.max, time, t, k++));
+			frame.add("humidity", between(0, 100, time, t, k++));
+			frame.add("illuminance", between(0, 100000, time, t, k++));
+			frame.add("acceleration", between(0, 100, time, t, k++));
+			frame.add("vibrationDisplacement", between(0, 1000, time, t, k++));
+			frame.add("vibrationVelocity", between(0, 1000, time, t, k++));
+			out.sensors(frame);
+			events.add(6);
+		}
+		for (int w = shard; w < warehouses.length; w += shards)
+		{
+			String tag = warehouseTags[w];
+			Temp temp = warehouses[w].temp;
+			// warehouse entities are hashed after all the trucks
+			int e = trucks.length + w;
+			SensorFrame frame = new SensorFrame(time, "SENSOR WAREHOUSE", tag);
+			int k = 0;
+			frame.add("temp", between(temp.min, temp.max, time, e, k++));
+			frame.add("humidity", between(0, 100, time, e, k++));
+			frame.add("illuminance", between(0, 100000, time, e, k++));
+			frame.add("ozone", between(0, 10000, time, e, k++));
+			frame.add("particles", between(0, 10000, time, e, k++));
+			frame.add("toxicGas", between(0, 10000, time, e, k++));
+			frame.add("sulfurDioxide", between(0, 10, time, e, k++));
+			frame.add("nitrousOxides", between(0, 10, time, e, k++));
+			out.sensors(frame);
+			events.add(8);
+		}
+	}
+
+	private double between(double min, double max, int time, int entity, int k)
+	{
+		return min + (max - min) * unit(rand(time, SENSOR, entity, k));
+	}
+
+	// random bits for (seed, hour, phase, entity, k), splitmix64 finalizer
+	long rand(int time, int phase, int entity, int k)
+	{
+		long z = seed + 0x9E3779B97F4A7C15L * (((long) time << 40) ^ ((long) phase << 32) ^ (entity & 0xFFFFFFFFL)) + 0xD1B54A32D192ED03L * k;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	static double unit(long bits)
+	{
+		return (bits >>> 11) * 0x1.0p-53;
+	}
+
+	// copy the goods locations back to the world, the truck locations are the world's own arrays
+	private void writeBack()
+	{
+		for (int w = 0; w < warehouses.length; w++)
+			for (int i = 0; i < goodsAt[w].size; i++)
+				world.place(goodsAt[w].data[i], w);
+		for (int t = 0; t < trucks.length; t++)
+			for (int i = 0; i < cargo[t].size; i++)
+				world.load(cargo[t].data[i], t);
+	}
+
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	// Counts events and keeps an order independent fingerprint of the event multiset, to check that shard counts agree.
+	static class FingerprintSink implements EventSink
+	{
+		final LongAdder count = new LongAdder();
+		final LongAdder sum = new LongAdder();
+
+		@Override
+		public void rfid(RFIDEvent e)
+		{
+			add(e.load + ", " + e.time + ", " + e.goodsKey + ", " + e.warehouseKey + ", " + e.truckKey);
+		}
+
+		@Override
+		public void sensors(SensorFrame frame)
+		{
+			Sensor s = new Sensor();
+			for (int i = 0; i < frame.size(); i++)
+				add(frame.sensor(i, s).toStr());
+		}
+
+		private void add(String event)
+		{
+			long h = event.hashCode() * 0x9E3779B97F4A7C15L;
+			count.increment();
+			sum.add(h ^ (h >>> 29));
+		}
+
+		@Override
+		public void endHour()
+		{
+		}
+
+		String fingerprint()
+		{
+			return count.sum() + "/" + Long.toHexString(sum.sum());
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Random;
+import java.util.UUID;
+
+/*
+ * The one source of randomness for the simulation: world creation (Goods, Trucks, Warehouses and their ids), Temp values
+ * and every decision in Simulate.loop.
+ *
+ * Unseeded by default, so every run is different as before. Set a seed (-Dkongo.seed=n, or seed(n) before the world is created)
+ * and the same build produces the same world and the same event stream on every run, so throughput and latency of different builds
+ * can be compared on identical workloads. Ids are then generated from the seeded Random too, instead of UUID.randomUUID().
+ *
+ * Only the simulator thread should draw from it, a seeded run is only reproducible if the order of the draws is.
+ */
+public final class SimRandom
+{
+	static final Random RAND = new Random();
+
+	private static volatile boolean seeded;
+	private static long seed;
+
+	static
+	{
+		String s = System.getProperty("kongo.seed");
+		if (s != null && !s.isEmpty())
+			seed(Long.parseLong(s));
+	}
+
+	private SimRandom()
+	{
+	}
+
+	// reseed the shared Random in place, so classes holding a reference to it (Simulate.rand) follow
+	public static synchronized void seed(long newSeed)
+	{
+		seed = newSeed;
+		RAND.setSeed(newSeed);
+		seeded = true;
+	}
+
+	public static boolean seeded()
+	{
+		return seeded;
+	}
+
+	public static long seed()
+	{
+		return seed;
+	}
+
+	public static Random random()
+	{
+		return RAND;
+	}
+
+	// random version 4 UUID string, from the seeded Random when there is a seed
+	public static String uuid()
+	{
+		if (!seeded)
+			return UUID.randomUUID().toString();
+		long msb = (RAND.nextLong() & ~0xF000L) | 0x4000L;
+		long lsb = (RAND.nextLong() & ~0xC000000000000000L) | 0x8000000000000000L;
+		return new UUID(msb, lsb).toString();
+	}
+}
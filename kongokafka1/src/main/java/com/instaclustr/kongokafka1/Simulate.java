@@ -13,10 +13,13 @@ package com.instaclustr.kongokafka1;
  */
 
 
+import java.nio.file.Paths;
 import java.util.*;
 
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
 
 //import com.google.common.*;
 import com.google.common.eventbus.EventBus;
@@ -27,6 +30,7 @@ import com.google.common.eventbus.SubscriberExceptionContext;
 
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 
@@ -36,14 +40,20 @@ import java.util.concurrent.ExecutionException;
 
 public class Simulate extends Thread {
 	
-	static KafkaProducer<String, Sensor> producerSensorEvents;
+	// Producer rather than KafkaProducer, so loop can be run with MockProducers (e.g. from the kongo-bench benchmarks)
+	static Producer<String, Sensor> producerSensorEvents;
 	
-	static KafkaProducer<String, RFIDLoadEvent> producerRFIDLoadEvents;
+	static Producer<String, RFIDLoadEvent> producerRFIDLoadEvents;
 	
-	static KafkaProducer<String, RFIDUnloadEvent> producerRFIDUnloadEvents;
+	static Producer<String, RFIDUnloadEvent> producerRFIDUnloadEvents;
 	
 	// single topic rfid
-	static KafkaProducer<String, RFIDEvent> producerRFIDEvents;
+	static Producer<String, RFIDEvent> producerRFIDEvents;
+	
+	static Producer<String, Goods> producerGoods;
+	
+	// only when sensorFrames is on
+	static Producer<String, SensorFrame> producerSensorFrames;
 	
 	
 	static boolean kafkaSensorConsumerOn = true; // if true then pass sensor events to Kafka topic, which has a consumer that publishes event on correct topic.
@@ -52,14 +62,52 @@ public class Simulate extends Thread {
 	// topic names
 	// kong2- has 3 partitions
 	static String kafkaSensorTopicBase = "kong2-";
+	// the per location sensor topics (kafkaSensorTopicBase + location) when oneTopic is false
+	static Pattern kafkaSensorLocationTopics = Pattern.compile(Pattern.quote(kafkaSensorTopicBase) + ".+");
+	// Sensor frames: with sensorFrames on (-Dkongo.sensorFrames=true) all the metrics of a location for an hour are sent as one SensorFrame record
+	// to the frame topic (or one frame topic per location) instead of one Sensor record per metric to the topics above, and read by SensorFrameConsumers.
+	static boolean sensorFrames = Boolean.getBoolean("kongo.sensorFrames");
+	static String kafkaSensorFrameTopicBase = "kong2f-";
+	static Pattern kafkaSensorFrameLocationTopics = Pattern.compile(Pattern.quote(kafkaSensorFrameTopicBase) + ".+");
 	static String unloadTopic = "kongo-unload";
 	static String loadTopic = "kongo-load";
 	
 	// single rfid topic version for both load and unload events using RFIDEvent
 	static String rfidTopic = "kongo-rfid";
+
+	// every Goods once, keyed by tag, for consumers that can't see allGoods (SensorRulesTopology)
+	static String goodsTopic = "kongo-goods";
 	
-	static boolean oneTopic = true; // oneTopic to rule them all or lots of topics per location with each Goods subscribed to different topic
-	
+	static boolean oneTopic = true; // oneTopic to rule them all or lots of topics per location, shared by a pool of consumers
+
+	// Producer send mode. sync waits for every send to be acknowledged (a full broker round trip per event).
+	// async sends with a callback, keeps at most maxInFlightSends unacknowledged, and waits for all of them at the end of each simulated hour,
+	// so all events for hour n are written before any event for hour n+1 is sent.
+	static boolean asyncSend = true;
+	static int lingerMs = 5;
+	static int batchSize = 64 * 1024;
+	static String compressionType = "lz4";	// none, gzip, snappy, lz4, zstd
+	static int maxInFlightSends = 10000;
+
+	static SendTracker sendTracker = new SendTracker(maxInFlightSends);
+
+	// topics written with the compact binary WireFormat, comma separated list or "*" for all. "" writes the legacy text format everywhere.
+	// Consumers read both formats so this can be changed per topic without touching them.
+	static String binaryWireTopics = "*";
+
+	// Number of ShardedSimulate shards. 1 runs the original single threaded loop.
+	// The sharded engine needs the Kafka consumer modes (kafkaSensorConsumerOn and kafkaRFIDConsumerOn), otherwise loop is used.
+	static int shards = Integer.getInteger("kongo.shards", 1);
+
+	// Where loop sends the events: kafka, count (only counted), ring (in memory ring buffer of the last ringSize events)
+	// or mmap (memory mapped sinkFile). Only kafka needs a broker, the others are for load generation and profiling the simulator.
+	static String sinkType = System.getProperty("kongo.sink", "kafka");
+	static int ringSize = Integer.getInteger("kongo.sink.ringSize", 1 << 20);
+	static String sinkFile = System.getProperty("kongo.sink.file", "kongo-events.bin");
+
+	// set by shutdown(), the simulation stops at the end of the current hour
+	static volatile boolean stopped = false;
+
 	public Simulate()
 	{
 		
@@ -74,174 +122,191 @@ public class Simulate extends Thread {
 	static boolean verbose = false;
 	
 	// global data. all goods in the system (in trucks or warehouses)
-	static HashMap<String, Goods> allGoods = new HashMap<String, Goods>();
+	// concurrent as it is read by the RFID consumer threads
+	static Map<String, Goods> allGoods = new ConcurrentHashMap<String, Goods>();
 	
 	// all warehouses
 	static HashMap<String, Warehouses> allWarehouses = new HashMap<String, Warehouses>();
 	
-	// all goods that are in warehouses
-	static HashMap<String, String> goodsInWarehouses = new HashMap<String, String>();
-	
-	// all goods that are in trucks
-	static HashMap<String, String> goodsInTrucks = new HashMap<String, String>();
-
 	// all trucks
 	static HashMap<String, Trucks> allTrucks = new HashMap<String, Trucks>();
 	
-	// trucks at each warehouse
-	static HashMap<String, String> trucksAtWarehouses = new HashMap<String, String>();
-	
+	// where all the goods and trucks are, by int id. Created by createAndLoop (or a benchmark) before loop runs on it.
+	static WorldState world;
 	
-	static HashMap<String, EventBus> topics = new HashMap<String, EventBus>(1000);
+	// Goods at each warehouse and truck location, for delivering sensor and co-location check events
+	static LocationRegistry locations = new LocationRegistry();
 	static EventBus rfidLoadTopic = null;
 	static EventBus rfidUnloadTopic = null;
 
-	// truckKey and keep1 are hacks used in Goods loading code in the simulation loop.
-	
-	static String truckKey;
-	
-	// keep truck key first time, and then randomly 50% of time for others
-	public static void keep1(String s)
+	// SimRandom.RAND, seeded with -Dkongo.seed for reproducible runs
+	static Random rand = SimRandom.random();
+
+	// send a record using the current send mode
+	static <K, V> void send(Producer<K, V> producer, ProducerRecord<K, V> r) throws InterruptedException, ExecutionException
+	{
+		if (!asyncSend)
+		{
+			producer.send(r).get();
+			return;
+		}
+
+		sendTracker.acquire();
+		try
+		{
+			producer.send(r, sendTracker);
+		}
+		catch (RuntimeException e)
+		{
+			sendTracker.release();
+			throw e;
+		}
+	}
+
+	// end of hour barrier for async mode: push out any batched records and wait until they have all been acknowledged
+	static void flushHour()
 	{
-		if (truckKey == null || rand.nextBoolean())
-			truckKey = s;	
+		if (!asyncSend)
+			return;
+
+		producerRFIDEvents.flush();
+		producerSensorEvents.flush();
+		if (producerSensorFrames != null)
+			producerSensorFrames.flush();
+		try
+		{
+			sendTracker.awaitAll();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
 	}
-	
-	static Random rand = new Random();
-	
-	// simulation loop, simulates Goods and Trucks movement for required number of rounds (hours)
-	// assumes everything has been created already.
+
+	// simulation loop with the events sent to Kafka
 	public static void loop(int hours)
+	{
+		loop(hours, new KafkaSink());
+	}
+
+	// simulation loop, simulates Goods and Trucks movement for required number of rounds (hours)
+	// assumes everything has been created already. Events are written to sink.
+	public static void loop(int hours, EventSink sink)
 	{
 		long t0 = System.currentTimeMillis();
 		long totalEvents = 0;
-		ProducerRecord r;
 		
+		// the loop works on int ids, tags are only looked up for the events
+		WorldState world = Simulate.world;
+
 		// repeat for hours
-		System.out.println("Simulation started");
+		Log.info("simulation.started");
 		
 		// loop the loop
-		for (int time=0; time < hours; time++)
+		for (int time=0; time < hours && !stopped; time++)
 		{
-			System.out.println("************** Time = " + time);
+			Log.info("simulation.hour", "time", time);
 			
 			// 1 UNLOAD trucks: move goods from trucks to warehouse where truck docked
 			if (debug) System.out.println("Unloading goods from Trucks...");
 			
 			// Unload all Goods that are in trucks
-			Iterator<String> it = goodsInTrucks.keySet().iterator();
-			while (it.hasNext())
+			for (int g = 0; g < world.goods.length; g++)
 			{
-			    String goodsKey = it.next();
-			    String truckKey = goodsInTrucks.get(goodsKey);
-			    			    
-			    // find warehouse where the truck is
-			    String warehouse = trucksAtWarehouses.get(truckKey);
-			    // change location of goods to warehouse
-			    goodsInWarehouses.put(goodsKey, warehouse);
+				if (!world.onTruck(g))
+					continue;
+				int t = world.truckOf(g);
+				// change location of goods to the warehouse where the truck is
+				int w = world.unload(g);
+
+				// tags from here on, for events and printing
+			    String goodsKey = world.goodsTags[g];
+			    String truckKey = world.truckTags[t];
+			    String warehouse = world.warehouseTags[w];
 			    if (debug) System.out.println("Unloaded " + goodsKey + " from " + truckKey + " at " + warehouse); 
 			    
 			    // generate UNLOAD RFID event: At time, unload goodsKey from trucksKey at warehouse
-			    String s = time + " RFID " + warehouse + ": UNLOAD " +  goodsKey + " from " + truckKey;
-			    if (verbose) System.out.println(s);
+			    if (verbose) System.out.println(time + " RFID " + warehouse + ": UNLOAD " +  goodsKey + " from " + truckKey);
 			    
-			    // public RFIDUnloadEvent(long time, String goodsKey, String truckKey, String warehouseKey)
-				RFIDUnloadEvent ule = new RFIDUnloadEvent(time, goodsKey, truckKey, warehouse);
+				RFIDEvent re = new RFIDEvent(false, time, goodsKey, warehouse, truckKey);
 				
-				RFIDEvent re = new RFIDEvent(false, time, goodsKey, truckKey, warehouse);
+				// KafkaSink keys it by goods so all the events for one Goods go to one partition, in order
+				sink.rfid(re);
+            		if (debug) System.out.println("Sent RFID UNLOAD event " + goodsKey);
 				
-				try
+				if (!kafkaRFIDConsumerOn)
 				{
-					r = new ProducerRecord(rfidTopic, re);
-					producerRFIDEvents.send(r).get();
-					
-            			if (debug) System.out.println("Sent Kafka RFID UNLOAD event message " + r.toString());		
-				} 
-				catch (InterruptedException | ExecutionException e) {
-					e.printStackTrace();
+				    // public RFIDUnloadEvent(long time, String goodsKey, String truckKey, String warehouseKey)
+					rfidUnloadTopic.post(new RFIDUnloadEvent(time, goodsKey, truckKey, warehouse));
 				}
-				
-				if (!kafkaRFIDConsumerOn)
-					rfidUnloadTopic.post(ule);
 			    
 			    totalEvents++;
-			    it.remove();
-			    // forget categories of loaded goods
-			    Trucks t = allTrucks.get(truckKey);
-			    t.resetCats();
+			    // the truck keeps the categories of the goods still on board
+			    world.trucks[t].removeCategories(world.goods[g]);
 			}
 			
 			// 2 LOAD Goods from warehouse to trucks currently docked at warehouse
 			
 			if (debug) System.out.println("Loading goods onto trucks");
-			it = goodsInWarehouses.keySet().iterator();
-			while (it.hasNext())
+			// goods are visited once each, goods loaded here are on a truck when the loop gets past them
+			for (int g = 0; g < world.goods.length; g++)
 			{
-				String goodsKey = it.next();
-				String warehouseKey = goodsInWarehouses.get(goodsKey);
+				if (world.onTruck(g))
+					continue;
+				int w = world.warehouseOf(g);
 			    
 			    // randomly decide if we want to load this good, check if there is a truck at the warehouse, load it, remove it from warehouse
-				if (debug) System.out.println("Found goods " + goodsKey + " in " + warehouseKey + " try and load it? ");
+				if (debug) System.out.println("Found goods " + world.goodsTags[g] + " in " + world.warehouseTags[w] + " try and load it? ");
 			    if (rand.nextDouble() > 0.5)
 			    {
-			    	    truckKey = null;
-			    		Map<String, String> map = trucksAtWarehouses;
-			    	    map.entrySet()
-			    	    .stream()
-			    	    .filter(x -> x.getValue().equals(warehouseKey))
-			    	    // hack need to pick 1 truck at random
-			    	    .forEach(x -> keep1(x.getKey()));
+			    	    // pick 1 truck at random
+			    	    int tr = world.pickTruck(w, rand);
 			   
 			    	   // if a truck was found...
-			    	   if (truckKey != null)
+			    	   if (tr >= 0)
 			    	   {
-			    		   if (debug) System.out.println("Found a truck at warehouse " + truckKey);
+			    		   if (debug) System.out.println("Found a truck at warehouse " + world.truckTags[tr]);
 			    		   // load truck, remove goods from warehouse
-			    		   Trucks t = allTrucks.get(truckKey);
-			    		   Goods g = allGoods.get(goodsKey);
+			    		   Trucks t = world.trucks[tr];
+			    		   Goods goods = world.goods[g];
 			    		   // can we load the Goods onto it?
 			    		   boolean load = false;
-			    		   load = g.allowedInTruck(t.categoriesOnBoard);
+			    		   load = world.store.allowedInTruck(g, t.categoriesOnBoard());
 			    		
-			    		   if (verbose && load) System.out.println("Goods allowed in truck, goods cats=" + g.categories + " no conflict with truck cats=" + t.categoriesOnBoard.allCategories());
-			    		   else if (verbose && !load) System.out.println("Goods NOT ALLOWED in truck, goods cats=" + g.categories + " conflict with truck cats=" + t.categoriesOnBoard.allCategories());
+			    		   if (verbose && load) System.out.println("Goods allowed in truck, goods cats=" + goods.allCategories() + " no conflict with truck cats=" + Rules.categories(t.categoriesOnBoard()));
+			    		   else if (verbose && !load) System.out.println("Goods NOT ALLOWED in truck, goods cats=" + goods.allCategories() + " conflict with truck cats=" + Rules.categories(t.categoriesOnBoard()));
 			    		
 			    		   // keep loading if we can load it or we don't care about enforcing rules
 			    		   if (!enforceHazardousRules || enforceHazardousRules && load)
 			    		   {
 			    			   // check temperature control rules
-			    			   if (load = g.truckTempRules(t))
+			    			   if (load = world.store.truckTempRules(g, t))
 			    				   if (verbose) System.out.println("Goods allowed on truck for temperature rules check");
 			    				   else if (verbose) System.out.println("Goods NOT ALLOWED on truck for temperature rules check");
 				    		
 			    			   if (!enforceTempRules || enforceTempRules && load)
 			    			   {
-			    				   t.updateCategories(g);
-			    				   goodsInTrucks.put(goodsKey, truckKey);
-			    				   it.remove();
+			    				   t.updateCategories(goods);
+			    				   world.load(g, tr);
+			    				   String goodsKey = world.goodsTags[g];
+			    				   String warehouseKey = world.warehouseTags[w];
+			    				   String truckKey = world.truckTags[tr];
 			    				   if (debug) System.out.println("Loading " + goodsKey + " onto " + truckKey);
 				    	
 			    				   // generate RFID LOAD event
-			    				   String s = time + " RFID " + warehouseKey + ": LOAD " +  goodsKey + " onto " + truckKey;
-			    				   if (verbose) System.out.println(s);
+			    				   if (verbose) System.out.println(time + " RFID " + warehouseKey + ": LOAD " +  goodsKey + " onto " + truckKey);
 			    				   
-			    				   // Order is ; public RFIDLoadEvent(long time, String goodsKey, String warehouseKey, String truckKey)
-			    				   RFIDLoadEvent le = new RFIDLoadEvent(time, goodsKey, warehouseKey, truckKey);
 			    				   RFIDEvent re = new RFIDEvent(true, time, goodsKey, warehouseKey, truckKey);
 			    				
 			    				   
-			    					try
-			    					{
-			    						r = new ProducerRecord(rfidTopic, re);
-			    						producerRFIDEvents.send(r).get();
-			    	            			if (debug) System.out.println("Sent Kafka RFID LOAD event message " + r.toString());		
-			    					} 
-			    					catch (InterruptedException | ExecutionException e) {
-			    						e.printStackTrace();
-			    					}
+			    					sink.rfid(re);
+			    	            		if (debug) System.out.println("Sent RFID LOAD event " + goodsKey);
 			    					
 			    					if (!kafkaRFIDConsumerOn)
-			    						 rfidLoadTopic.post(le);
+			    					{
+			    					   // Order is ; public RFIDLoadEvent(long time, String goodsKey, String warehouseKey, String truckKey)
+			    						 rfidLoadTopic.post(new RFIDLoadEvent(time, goodsKey, warehouseKey, truckKey));
+			    					}
 			    				   
 			    				   totalEvents++;
 			    			   }
@@ -253,232 +318,131 @@ public class Simulate extends Thread {
 			// 3 Move TRUCKS
 			
 			// create shuffled list of warehouses to select destination warehouse from
-			List<String> keyList = new ArrayList<String>(allWarehouses.keySet());
-			Collections.shuffle( keyList );
-			Iterator<String> randKeys = keyList.iterator();
+			int[] order = shuffled(world.warehouses.length, rand);
+			int next = 0;
 			
-			for (Map.Entry<String, String> entry : trucksAtWarehouses.entrySet())
+			for (int tr = 0; tr < world.trucks.length; tr++)
 			{
-				String truckKey = entry.getKey();
-				Trucks truck = allTrucks.get(truckKey);
-				String currentLoc = entry.getValue();
-				String destination = null;;
+				Trucks truck = world.trucks[tr];
+				int destination = -1;
 				
 				// find a warehouse with a compatible temperature control
 				Warehouses w = null;
-				while (destination == null)
+				while (destination < 0)
 				{
-					if (randKeys.hasNext())
-						destination = randKeys.next();
-					else
-					{
-						// else start again
-						randKeys = keyList.iterator();
-						destination = randKeys.next();
-					}
+					// start again at the end of the list
+					if (next == order.length)
+						next = 0;
+					destination = order[next++];
 					// does destination warehouse have compatible climate control to the truck temp control?
-					w = allWarehouses.get(destination);
+					w = world.warehouses[destination];
 					if (!enforceTempRules || truck.canDeliverToWarehouse(w))
 						break;
 					// no good so keep looking
-					else destination = null;
+					else destination = -1;
 				}
 				
-				trucksAtWarehouses.put(truckKey, destination);
-				
-				if (verbose) System.out.println(time + " Truck " + truckKey + " temp cat=" + truck.tempRange + " moving from " + currentLoc + " to " + destination + " with temp cat=" + w.tempRange);
+				if (verbose) System.out.println(time + " Truck " + world.truckTags[tr] + " temp cat=" + truck.tempRange + " moving from " + world.warehouseTags[world.truckAt[tr]] + " to " + world.warehouseTags[destination] + " with temp cat=" + w.tempRange);
+				world.moveTruck(tr, destination);
 			}
 			
 			// 4 SENSOR stream, simple version, each warehouse and truck produce only out one value per sensor metric per location per hour
-			Sensor sensor;	
+			// Each location's metrics are collected in a SensorFrame, the sink sends them as one record or one per metric
 			
 			// Truck SENSOR stream
-			for (String truckskey : allTrucks.keySet())
+			for (int tr = 0; tr < world.trucks.length; tr++)
 			{
-				Trucks truck = allTrucks.get(truckskey);
+				String truckskey = world.truckTags[tr];
+				Trucks truck = world.trucks[tr];
 				
 				// find the topic corresponding to the location of the truck
-				EventBus topic = topics.get(truckskey);
+				LocationRegistry.Location topic = locations.get(truckskey);
 				if (topic != null)
 				{
-					try
-					{
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "temp", truck.temp.randomTempInRange());
-					
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					String tName;
-					if (oneTopic)
-						tName = kafkaSensorTopicBase;
-					else
-						tName = kafkaSensorTopicBase + truckskey;
-					
-					r = new ProducerRecord(tName, truckskey, sensor);
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA TRUCK event message " + r.toString());
-					
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "humidity", randBetween(0, 100));
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					r = new ProducerRecord(tName, truckskey, sensor);
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA TRUCK event message " + r.toString());
-				
+					SensorFrame frame = new SensorFrame(time, "SENSOR TRUCK", truckskey);
+					frame.add("temp", truck.temp.randomTempInRange());
+					frame.add("humidity", randBetween(0, 100));
 					// lux https://en.wikipedia.org/wiki/Lux range 0 - 100,000 (direct sunlight), 500 is office lighting, unit is lux
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "illuminance", randBetween(0, 100000));
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					r = new ProducerRecord(tName, truckskey, sensor);
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA TRUCK event message " + r.toString());
-					
+					frame.add("illuminance", randBetween(0, 100000));
 					// acceleration, in standard gravities i.e. 0, 1, 100? Normal should be < 1g? fast car accel if about 0.5g
 					// roller coaster is 3-4g
 					// car https://physics.info/acceleration/ F1 could be up to 3g! A truck should be < 1g
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "acceleration", randBetween(0, 100));
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					r = new ProducerRecord(tName, truckskey, sensor);
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA TRUCK event message " + r.toString());
-					
+					frame.add("acceleration", randBetween(0, 100));
 					// vibration has amplitude and frequency (but sensors produce data for multiple frequencies!)
 					// freq is Hz (0-100000), amp is ms-2 (0-?)
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "vibrationDisplacement", randBetween(0, 1000));
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					r = new ProducerRecord(tName, truckskey, sensor);
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA TRUCK event message " + r.toString());
+					frame.add("vibrationDisplacement", randBetween(0, 1000));
+					frame.add("vibrationVelocity", randBetween(0, 1000));
 					
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "vibrationVelocity", randBetween(0, 1000));
 					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					r = new ProducerRecord(tName, truckskey, sensor);
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA TRUCK event message " + r.toString());
+						topic.post(frame, new Sensor());
 					
-					 } catch (InterruptedException | ExecutionException e) {
-		                    e.printStackTrace();
-					 }
+					sink.sensors(frame);
+					if (debug) System.out.println("Sent TRUCK sensor events " + frame.toStr());
 					
 					totalEvents += 6;
 				}
 			}
 			
 			// Warehouse SENSOR stream			
-			for (String warehouseKey : allWarehouses.keySet())
+			for (int wh = 0; wh < world.warehouses.length; wh++)
 			{
-				Warehouses warehouse = allWarehouses.get(warehouseKey);
+				String warehouseKey = world.warehouseTags[wh];
+				Warehouses warehouse = world.warehouses[wh];
 				
 				// find the topic corresponding to the warehouse location
-				EventBus topic = topics.get(warehouseKey);
+				LocationRegistry.Location topic = locations.get(warehouseKey);
 				
 				if (topic != null)
 				{				
+					SensorFrame frame = new SensorFrame(time, "SENSOR WAREHOUSE", warehouseKey);
+					frame.add("temp", warehouse.temp.randomTempInRange());
+					frame.add("humidity", randBetween(0, 100));
+					frame.add("illuminance", randBetween(0, 100000));
+					// Nasty gases: ozone, particulate matter, toxic gas (Propane, Butane, LPG and Carbon Monoxide.), sulfur dioxide, and nitrous oxide
+					frame.add("ozone", randBetween(0, 10000));
+					frame.add("particles", randBetween(0, 10000));
+					frame.add("toxicGas", randBetween(0, 10000));
+					frame.add("sulfurDioxide", randBetween(0, 10));
+					frame.add("nitrousOxides", randBetween(0, 10));
 					
-					try
-		            {
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "temp", warehouse.temp.randomTempInRange());
 					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
+						topic.post(frame, new Sensor());
 					
 					// 1 topic, warehouseKey as key, Kafka determines partition from hash of key
 					// if using 1 topic per location assume that dynamic topic creation is enabled and use warehousekey as topic name
-					
-					String tName ;
-					if (oneTopic)
-						tName = kafkaSensorTopicBase;
-					else
-						tName = kafkaSensorTopicBase + warehouseKey;
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					
-					producerSensorEvents.send(r).get();
-            			if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-					
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "humidity", randBetween(0, 100));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-				
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "illuminance", randBetween(0, 100000));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-			
-					// Nasty gases: ozone, particulate matter, toxic gas (Propane, Butane, LPG and Carbon Monoxide.), sulfur dioxide, and nitrous oxide
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "ozone", randBetween(0, 10000));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-				
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "particles", randBetween(0, 10000));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-					
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "toxicGas", randBetween(0, 10000));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-					
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "sulfurDioxide", randBetween(0, 10));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-	
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "nitrousOxides", randBetween(0, 10));
-					
-					if (!kafkaSensorConsumerOn)
-						topic.post(sensor);
-					
-					r = new ProducerRecord(tName, warehouseKey, sensor);
-					producerSensorEvents.send(r).get();
-        				if (debug) System.out.println("Sent KAFKA SENSOR event message " + r.toString());
-	                		
-	                } catch (InterruptedException | ExecutionException e) {
-	                    e.printStackTrace();
-	                }
+					sink.sensors(frame);
+					if (debug) System.out.println("Sent WAREHOUSE sensor events " + frame.toStr());
 					
 					totalEvents += 8;
 				}
 			}
+			
+			// all events for this hour must be written before the next hour starts
+			sink.endHour();
 		}
-		
-		System.out.println("Simulation ended");
+
 		long t1 = System.currentTimeMillis();
 		double duration = (t1 - t0)/1000.0;
-		System.out.println("Simulation duration (s) = " + duration);
 		double eventsSec = totalEvents/duration;
-		System.out.println("Events = " + totalEvents + ". Rate (Events/s) = " + eventsSec);
+		String mode = !(sink instanceof KafkaSink) ? sink.getClass().getSimpleName()
+				: asyncSend ? "async (linger.ms=" + lingerMs + ", batch.size=" + batchSize + ", compression=" + compressionType + ", acked=" + sendTracker.acked() + ", failed=" + sendTracker.failed() + ")" : "sync";
+		Log.info("simulation.ended", "durationSecs", duration, "events", totalEvents, "eventsPerSec", eventsSec, "sendMode", mode);
+	}
+
+	// 0..n-1 in random order
+	static int[] shuffled(int n, Random rand)
+	{
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++)
+			a[i] = i;
+		for (int i = n - 1; i > 0; i--)
+		{
+			int j = rand.nextInt(i + 1);
+			int x = a[i];
+			a[i] = a[j];
+			a[j] = x;
+		}
+		return a;
 	}
 
 	public static double randBetween(double min, double max)
@@ -491,6 +455,12 @@ public class Simulate extends Thread {
 	 {
 		 createAndLoop();
 	 }
+
+	 // stop the simulation at the end of the current hour, run() then returns after closing the producers
+	 public void shutdown()
+	 {
+		 stopped = true;
+	 }
 	            
 	public static void main()
 	{
@@ -507,6 +477,9 @@ public class Simulate extends Thread {
 		int numWarehouses = maxX * maxY;
 		int numTrucks = numWarehouses*2;
 		int loops = 2;
+
+		if (SimRandom.seeded())
+			Log.info("simulation.seeded", "seed", SimRandom.seed());
 	
 		// CREATION
 		// create random Goods in a hashMap
@@ -514,11 +487,11 @@ public class Simulate extends Thread {
 		{
 			 Goods g = new Goods();
 			 allGoods.put(g.tag, g);
-	         String s = g.toStr();
-	         System.out.println(s);
+	         if (Log.on(Log.Level.DEBUG))
+	        	 Log.debug("goods", "goods", g.toStr());
 		}
 	
-		System.out.println("Goods created = " + numGoods);
+		Log.info("goods.created", "count", numGoods);
 	
 		// create warehouses
 		// Also create a topic per warehouse
@@ -533,104 +506,72 @@ public class Simulate extends Thread {
 				if (aWarehouse == null)
 					aWarehouse = w.id;
 				allWarehouses.put(w.id, w);
-				String s = w.toStr();
-				System.out.println(s);
+				if (Log.on(Log.Level.DEBUG))
+					Log.debug("warehouse", "warehouse", w.toStr());
 				
-				// create a topic for each warehouse
-				EventBus eb = new EventBus(w.id);
-				topics.put(w.id, eb);
+				// create a location for each warehouse
+				locations.add(w.id);
 			}
 		}
 	
-		System.out.println("Warehouses created = " + maxX*maxY);
+		Log.info("warehouses.created", "count", maxX*maxY);
 	
-		// find warehouses with compatible environmental controls to put Goods in
-		for (String goodskey : allGoods.keySet())
-		{
-			Goods g = allGoods.get(goodskey);
-			boolean found = false;
-			for (String warehouseKey: allWarehouses.keySet())
-			{
-				Warehouses w = allWarehouses.get(warehouseKey);
-				if (g.warehouseTempRules(w))
-				{
-					goodsInWarehouses.put(goodskey, warehouseKey);
-					found = true;
-					break;
-				}
-			}
-			// can't find anywhere just put goods in 1st warehouse
-			if (!found) goodsInWarehouses.put(goodskey, aWarehouse);
-		}
-	
-		// subscribe/register Goods to topics
-		// Note that initially all goods are in warehouses, none are on trucks.
-		for (Map.Entry<String, String> entry : goodsInWarehouses.entrySet())
-		{
-			String key = entry.getKey();
-			String value = entry.getValue();
-			System.out.println(key + " in " + value);
-			
-			// EventListener2 o = new EventListener2();
-			Goods g = allGoods.get(key);
-			EventBus topic = topics.get(value);
-			topic.register(g);
-			
-			// subscribe Goods to Kafka sensor topics
-			// g.subscribe(kafkaSensorTopicBase + value);
-			// g.start();
-			
-			// else KafkaRun create a single topic and consumer and we use EventBus
-			// this starts a thread per Goods Eeek.
-			// CPU goes to 100% and really slow, BAD IDEA, why is it so pathetic???
-			if (!oneTopic)
-			{
-				SensorGoodsConsumer sensorGoodsConsumer = new SensorGoodsConsumer(kafkaSensorTopicBase + value, g);
-				sensorGoodsConsumer.start();			
-			}
-			
-		}
-					
-	
-		System.out.println("Goods locations created");
-
 		// Create Trucks to move Goods around
-		// and a topic per truck
+		// and a location per truck
 		for (int i = 0; i < numTrucks; i++)
 		{
 			 Trucks t = new Trucks();
 			 t.resetCats();
 			 allTrucks.put(t.id, t);
-	         String s = t.toStr();
-	         System.out.println(s);
+	         if (Log.on(Log.Level.DEBUG))
+	        	 Log.debug("truck", "truck", t.toStr());
 	         
-	         // create a topic for each truck
-			EventBus eb = new EventBus(t.id);
-			topics.put(t.id, eb);
+	         // create a location for each truck
+			locations.add(t.id);
 		}
 		
-		System.out.println("Trucks created");
+		Log.info("trucks.created", "count", numTrucks);
+
+		// ids from here on
+		world = new WorldState(allGoods, allWarehouses, allTrucks);
+		int firstWarehouse = world.warehouseId(aWarehouse);
 	
-		// set Trucks locations to warehouses
-		Iterator it = allWarehouses.keySet().iterator();
-		String warehousekey;
-		for (String truckskey : allTrucks.keySet())
+		// find warehouses with compatible environmental controls to put Goods in
+		// Note that initially all goods are in warehouses, none are on trucks.
+		for (int g = 0; g < world.goods.length; g++)
 		{
-			if (it.hasNext())
-				warehousekey = (String) it.next();
-			else
-				warehousekey = aWarehouse;	// else use first warehouse
-			trucksAtWarehouses.put(truckskey, warehousekey);
+			// can't find anywhere just put goods in 1st warehouse
+			int warehouse = firstWarehouse;
+			for (int w = 0; w < world.warehouses.length; w++)
+			{
+				if (world.store.warehouseTempRules(g, world.warehouses[w]))
+				{
+					warehouse = w;
+					break;
+				}
+			}
+			world.place(g, warehouse);
+			if (Log.on(Log.Level.DEBUG))
+				Log.debug("goods.location", "goods", world.goodsTags[g], "warehouse", world.warehouseTags[warehouse]);
+			
+			// sensor events for the Goods are dispatched by location, from one topic or from the location topics
+			// by the pool of SensorConsumers started in KafkaRun
+			locations.place(world.goods[g], world.warehouseTags[warehouse]);
 		}
-		
-		for (Map.Entry<String, String> entry : trucksAtWarehouses.entrySet())
+					
+	
+		Log.info("goods.locations.created");
+
+		// set Trucks locations to warehouses, one truck per warehouse, the rest at the first warehouse
+		for (int t = 0; t < world.trucks.length; t++)
 		{
-			String key = entry.getKey();
-			String value = entry.getValue();
-			System.out.println(key + " at " + value);
+			int warehouse = t < world.warehouses.length ? t : firstWarehouse;
+			world.dock(t, warehouse);
+			if (Log.on(Log.Level.DEBUG))
+				Log.debug("truck.location", "truck", world.truckTags[t], "warehouse", world.warehouseTags[warehouse]);
 		}
 	
-		System.out.println("Truck locations created");
+		Log.info("trucks.locations.created");
 		
 		// create RFID Load and Unload event topics
 		// Note that one is correct as we need event order
@@ -643,48 +584,96 @@ public class Simulate extends Thread {
 		RFIDUnloadEvent unloadHandler = new RFIDUnloadEvent();
 		rfidUnloadTopic.register(unloadHandler);
 		
+		// the Kafka producers are only needed for the Kafka sink
+		EventSink sink = newSink();
+		boolean kafka = sink instanceof KafkaSink;
+		if (kafka)
+			openProducers();
+	
+		// Run the simulation for loops hours
+		if (shards > 1 && kafkaSensorConsumerOn && kafkaRFIDConsumerOn)
+		{
+			ShardedSimulate engine = new ShardedSimulate(shards, rand.nextLong());
+			engine.loop(loops, sink);
+			engine.shutdown();
+		}
+		else
+			loop(loops, sink);
+
+		sink.close();
+		if (kafka)
+			closeProducers();
+	}
+
+	// the EventSink selected with -Dkongo.sink
+	static EventSink newSink()
+	{
+		switch (sinkType)
+		{
+		case "kafka":
+			return new KafkaSink();
+		case "count":
+			return new CountingSink();
+		case "ring":
+			return new RingBufferSink(ringSize);
+		case "mmap":
+			return new MappedFileSink(Paths.get(sinkFile));
+		default:
+			throw new IllegalArgumentException("Unknown kongo.sink " + sinkType + ", expected kafka, count, ring or mmap");
+		}
+	}
+
+	static void openProducers()
+	{
 		// create Kafka producers
-		Properties props = new Properties();        
-	    props.put("bootstrap.servers", KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
-	    props.put("client.id", "KongoSimulator");
-	    props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-	    
-	    String sensorSerializer = SensorSerializer.class.getName(); 
-	    
-	    props.put("value.serializer", sensorSerializer);
-	    producerSensorEvents = new KafkaProducer<>(props);
+	    producerSensorEvents = new KafkaProducer<>(producerProps("KongoSimulator", SensorSerializer.class.getName()));
+	    if (sensorFrames)
+	    	producerSensorFrames = new KafkaProducer<>(producerProps("KongoSensorFrames", SensorFrameSerializer.class.getName()));
 	    
 	    // RFID Load and Unload producers
-	    props = new Properties();        
-	    props.put("bootstrap.servers", KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
-	    props.put("client.id", "KongoRFIDLoad");
-	    props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-	    
-	    String rfidLoadEventSerializer = RFIDLoadEventSerializer.class.getName(); 
-	    props.put("value.serializer", rfidLoadEventSerializer);
-	    producerRFIDLoadEvents = new KafkaProducer<>(props);
-	    
-	    props = new Properties();        
-	    props.put("bootstrap.servers", KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
-	    props.put("client.id", "KongoRFIDUnload");
-	    props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");	    
-	    String rfidUnloadEventSerializer = RFIDUnloadEventSerializer.class.getName(); 
-	    
-	    props.put("value.serializer", rfidUnloadEventSerializer);
-	    producerRFIDUnloadEvents = new KafkaProducer<>(props);
-	  
+	    producerRFIDLoadEvents = new KafkaProducer<>(producerProps("KongoRFIDLoad", RFIDLoadEventSerializer.class.getName()));
+	    producerRFIDUnloadEvents = new KafkaProducer<>(producerProps("KongoRFIDUnload", RFIDUnloadEventSerializer.class.getName()));
 	    
 	    // new single topic rfid 
-	    props = new Properties();        
+	    producerRFIDEvents = new KafkaProducer<>(producerProps("KongoRFIDEvent", RFIDEventSerializer.class.getName()));
+
+	    // publish the Goods before any events about them
+	    producerGoods = new KafkaProducer<>(producerProps("KongoGoods", GoodsSerializer.class.getName()));
+	    for (Goods g : allGoods.values())
+	    	producerGoods.send(new ProducerRecord<String, Goods>(goodsTopic, g.tag, g));
+	    producerGoods.flush();
+	}
+
+	// sends any records still batched
+	static void closeProducers()
+	{
+		producerSensorEvents.close();
+		producerRFIDLoadEvents.close();
+		producerRFIDUnloadEvents.close();
+		producerRFIDEvents.close();
+		producerGoods.close();
+		if (producerSensorFrames != null)
+			producerSensorFrames.close();
+	}
+
+	// producer properties, with batching and compression settings for async mode
+	static Properties producerProps(String clientId, String valueSerializer)
+	{
+		Properties props = new Properties();        
 	    props.put("bootstrap.servers", KafkaProperties.KAFKA_SERVER_URL + ":" + KafkaProperties.KAFKA_SERVER_PORT);
-	    props.put("client.id", "KongoRFIDEvent");
-	    props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");	    
-	    String rfidEventSerializer = RFIDEventSerializer.class.getName(); 
+	    props.put("client.id", clientId);
+	    props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+	    props.put("value.serializer", valueSerializer);
+	    props.put(WireFormat.BINARY_TOPICS_CONFIG, binaryWireTopics);
 	    
-	    props.put("value.serializer", rfidEventSerializer);
-	    producerRFIDEvents = new KafkaProducer<>(props);
-	
-		// Run the simulation for loops hours
-		loop(loops);
+	    if (asyncSend)
+	    {
+	    		props.put("linger.ms", Integer.toString(lingerMs));
+	    		props.put("batch.size", Integer.toString(batchSize));
+	    		props.put("compression.type", compressionType);
+	    		// keeps per partition order if a batch is retried while later batches are in flight
+	    		props.put("enable.idempotence", "true");
+	    }
+	    return props;
 	}
 }
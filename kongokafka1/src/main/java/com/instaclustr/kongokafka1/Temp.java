@@ -38,7 +38,7 @@ public class Temp
 	// return a random temp which is always in range
 	double randomTempInRange()
 	{
-		Random r = new Random();
+		Random r = SimRandom.random();
 		double d = min + (max - min) * r.nextDouble();
 		return d;
 	}
@@ -46,7 +46,7 @@ public class Temp
 	// return a random temp which has a probability of being out of range
 	double randomTemp(double prob)
 	{
-		Random r = new Random();
+		Random r = SimRandom.random();
 		if (r.nextDouble() >= prob)
 			return randomTempInRange();
 		else
@@ -2,7 +2,6 @@ package com.instaclustr.kongokafka1;
 
 
 import java.util.Random;
-import java.util.UUID;
 
 /*
  * Trucks move from one warehouse location to another warehouse location and transport Goods.
@@ -16,15 +15,15 @@ public class Trucks
     int tempRange = -1;
     Temp temp = null;	// new temp object
     
-    // Hack: keep track of what Goods categories are on board by using a dummy Goods object
-    Goods categoriesOnBoard = new Goods();
+    // co-location categories of the Goods on board, so unloading one Goods only clears the categories no other Goods on board has
+    private final CategoryCounts onBoard = new CategoryCounts();
 
     // create new Truck object
 	public Trucks()
 	{
 	    this.id = this.prefix + randomUUID();
 	    
-	    Random rand = new Random();
+	    Random rand = SimRandom.random();
 	    if (rand.nextDouble() < 0.8)
         {
 	    		tempControlled = true;
@@ -38,9 +37,7 @@ public class Trucks
 	
 	public static String randomUUID()
     {
-		UUID uuid = UUID.randomUUID();
-		String r = uuid.toString();
-		return r;
+		return SimRandom.uuid();
     }
 	 
 	 public String toStr()
@@ -53,27 +50,29 @@ public class Trucks
          return s;
      }
 	 
-	 // when unloaded reset cats
+	 // empty truck, no categories on board
 	 // Note that we don't have dry and temp cats here yet as not used to check if loading is ok
 	 public void resetCats()
 	 {
-		 categoriesOnBoard.categoryBulky = false;
-		 categoriesOnBoard.categoryEdible = false;
-		 categoriesOnBoard.categoryFragile = false;
-		 categoriesOnBoard.categoryHazardous = false;
-		 categoriesOnBoard.categoryMedicinal = false;
-		 categoriesOnBoard.categoryPerishable = false;
+		 onBoard.clear();
 	 }
 	 
-	 // Logical OR new goods loaded onto truck with existing categories
+	 // Goods loaded onto truck: a category goes on board with the first Goods having it
 	 public void updateCategories(Goods g)
 	 {
-		 categoriesOnBoard.categoryBulky |= g.categoryBulky;
-		 categoriesOnBoard.categoryEdible |= g.categoryEdible;
-		 categoriesOnBoard.categoryFragile |= g.categoryFragile;
-		 categoriesOnBoard.categoryHazardous |= g.categoryHazardous;
-		 categoriesOnBoard.categoryMedicinal |= g.categoryMedicinal;
-		 categoriesOnBoard.categoryPerishable |= g.categoryPerishable;
+		 onBoard.add(g.cats);
+	 }
+	 
+	 // Goods unloaded from truck: a category leaves the truck with the last Goods having it
+	 public void removeCategories(Goods g)
+	 {
+		 onBoard.remove(g.cats);
+	 }
+	 
+	 // Goods categories on board (Rules category bits)
+	 public int categoriesOnBoard()
+	 {
+		 return onBoard.cats();
 	 }
 	 
 	 // check temp rules for delivery to warehouse
@@ -0,0 +1,70 @@
+package com.instaclustr.kongokafka1;
+
+/*
+ * A rule violation found by the consumers, written to the kongo-violations topic keyed by goods (see ViolationProducer).
+ *
+ * type says what was violated and how detail, value and reasons are used:
+ * SENSOR  a sensor reading at the location of the Goods, detail is the metric, value the reading, reasons the SensorRules bits
+ * TRUCK   Goods on a truck conflict with Goods being loaded onto it, detail is the Goods being loaded, reasons the conflicting categories
+ * LOAD    Goods loaded from a warehouse they were not in, detail is the truck
+ * UNLOAD  Goods unloaded from a truck they were not on, detail is the warehouse
+ */
+public class Violation
+{
+	public static final byte SENSOR = 1;
+	public static final byte TRUCK = 2;
+	public static final byte LOAD = 3;
+	public static final byte UNLOAD = 4;
+
+	static final String[] TYPES = { null, "SENSOR", "TRUCK", "LOAD", "UNLOAD" };
+
+	byte type;
+	long time;
+	String goodsKey;
+	String location;
+	String detail;
+	double value;
+	int reasons;
+
+	public Violation(byte type, long time, String goodsKey, String location, String detail, double value, int reasons)
+	{
+		this.type = type;
+		this.time = time;
+		this.goodsKey = goodsKey;
+		this.location = location;
+		this.detail = detail;
+		this.value = value;
+		this.reasons = reasons;
+	}
+
+	public static Violation sensor(Sensor s, String goodsKey, int reasons)
+	{
+		return new Violation(SENSOR, s.time, goodsKey, s.tag, s.metric, s.value, reasons);
+	}
+
+	// why, in words
+	public String reasonText()
+	{
+		switch (type)
+		{
+		case SENSOR:
+			return SensorRules.reasons(reasons);
+		case TRUCK:
+			return "conflicting categories " + Rules.categories(reasons);
+		case LOAD:
+			return "not at warehouse";
+		case UNLOAD:
+			return "not on truck";
+		default:
+			return "";
+		}
+	}
+
+	public String toStr()
+	{
+		String s = TYPES[type] + ", " + time + ", " + goodsKey + ", " + location + ", " + detail;
+		if (type == SENSOR)
+			s += ", " + value;
+		return s + ", " + reasonText();
+	}
+}
@@ -0,0 +1,178 @@
+package com.instaclustr.kongokafka1;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+
+/*
+ * Writes Violations to KafkaProperties.VIOLATIONS_TOPIC, keyed by goods, for all consumer threads through one producer.
+ * KafkaRun installs it (install()) and the rule checks send to shared() if there is one.
+ *
+ * send() never blocks the consumer thread:
+ * - the KafkaProducer batches the records (linger.ms, batch.size, lz4), max.block.ms=0 makes a full producer buffer or missing
+ *   topic metadata fail the record at once instead of blocking. The producer reports those through the callback, not by throwing,
+ *   so create() fetches the topic metadata before the first violation.
+ * - at most maxInFlight violations may be unacknowledged, past that they are dropped as overflow
+ * so when the broker falls behind the violations are dropped and counted, and the rule checks carry on at full speed.
+ * Counters: sent (acknowledged by the broker), failed (by the broker), overflow (maxInFlight reached),
+ * dropped (producer buffer full, no metadata in time, or the producer is closed).
+ */
+public class ViolationProducer implements Callback
+{
+	private static volatile ViolationProducer shared;
+
+	private final Producer<String, Violation> producer;
+	private final String topic;
+	private final Semaphore inFlight;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder overflow = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	public ViolationProducer(Producer<String, Violation> producer, String topic, int maxInFlight)
+	{
+		this.producer = producer;
+		this.topic = topic;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	// the Kafka producer for the violations topic, with the KafkaProperties.VIOLATIONS_* settings
+	public static ViolationProducer create()
+	{
+		Properties props = Simulate.producerProps("KongoViolations", ViolationSerializer.class.getName());
+		props.put("linger.ms", Integer.toString(KafkaProperties.VIOLATIONS_LINGER_MS));
+		props.put("batch.size", Integer.toString(KafkaProperties.VIOLATIONS_BATCH_SIZE));
+		props.put("buffer.memory", Long.toString(KafkaProperties.VIOLATIONS_BUFFER_MEMORY));
+		props.put("compression.type", "lz4");
+		props.put("max.block.ms", "0");
+		ViolationProducer p = new ViolationProducer(new KafkaProducer<String, Violation>(props), KafkaProperties.VIOLATIONS_TOPIC, KafkaProperties.VIOLATIONS_MAX_IN_FLIGHT);
+		p.awaitMetadata(KafkaProperties.VIOLATIONS_METADATA_WAIT_MS);
+		return p;
+	}
+
+	// With max.block.ms=0 every partitionsFor() call fails at once until the producer has the topic metadata, but asks for it,
+	// so poll it until it is there. Without it the first violations would be dropped.
+	boolean awaitMetadata(long timeoutMs)
+	{
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (true)
+		{
+			try
+			{
+				producer.partitionsFor(topic);
+				return true;
+			}
+			catch (TimeoutException e)
+			{
+				if (System.currentTimeMillis() >= deadline)
+				{
+					Log.warn("violations.noMetadata", "topic", topic, "waitedMs", timeoutMs);
+					return false;
+				}
+			}
+			try
+			{
+				Thread.sleep(20);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	// the producer the rule checks send to, null if violations are only logged
+	public static ViolationProducer shared()
+	{
+		return shared;
+	}
+
+	public static void install(ViolationProducer p)
+	{
+		shared = p;
+	}
+
+	// queue v for sending, false if it was dropped at once. It can still be dropped or fail later, see onCompletion.
+	public boolean send(Violation v)
+	{
+		if (!inFlight.tryAcquire())
+		{
+			overflow.increment();
+			return false;
+		}
+		try
+		{
+			producer.send(new ProducerRecord<String, Violation>(topic, v.goodsKey, v), this);
+			return true;
+		}
+		catch (RuntimeException e)
+		{
+			// the producer is closed, or a serialization error
+			inFlight.release();
+			dropped.increment();
+			return false;
+		}
+	}
+
+	@Override
+	public void onCompletion(RecordMetadata metadata, Exception exception)
+	{
+		if (exception == null)
+			sent.increment();
+		// buffer full or no metadata within max.block.ms=0: backpressure, not a broker failure
+		else if (exception instanceof BufferExhaustedException || exception instanceof TimeoutException)
+			dropped.increment();
+		else
+		{
+			failed.increment();
+			if (Log.sampled(Log.Level.WARN))
+				Log.warn("violations.sendFailed", "topic", topic, "error", exception);
+		}
+		inFlight.release();
+	}
+
+	public long sent()
+	{
+		return sent.sum();
+	}
+
+	public long failed()
+	{
+		return failed.sum();
+	}
+
+	public long overflow()
+	{
+		return overflow.sum();
+	}
+
+	public long dropped()
+	{
+		return dropped.sum();
+	}
+
+	// sends what is batched, waits for it (up to KafkaProperties.SHUTDOWN_TIMEOUT_MS), and uninstalls this producer if it is the shared one.
+	// Only the first call does anything, KafkaRun closes it at the end of the run and from its shutdown hook.
+	public void close()
+	{
+		if (!closed.compareAndSet(false, true))
+			return;
+		if (shared == this)
+			shared = null;
+		producer.close(Duration.ofMillis(KafkaProperties.SHUTDOWN_TIMEOUT_MS));
+		Log.info("violations.closed", "topic", topic, "sent", sent(), "failed", failed(), "overflow", overflow(), "dropped", dropped());
+	}
+}
@@ -0,0 +1,97 @@
+package com.instaclustr.kongokafka1;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * (De)serializes Violations, binary WireFormat only.
+ * Binary layout: violation magic, type byte, varint time, goods tag, location tag, then
+ * for SENSOR: metric code, 8 byte double value, varint reasons; for the others: detail tag, varint reasons.
+ * A SENSOR violation of a UUID tagged goods at a UUID tagged location is 47 bytes.
+ */
+
+public class ViolationSerializer implements Closeable, AutoCloseable, Serializer<Violation>, Deserializer<Violation> {
+
+    @Override
+    public void configure(Map<String, ?> map, boolean b) {
+    }
+
+    @Override
+    public byte[] serialize(String s, Violation v) {
+        if (v == null)
+            return null;
+        return serializeBinary(v);
+    }
+
+    public static byte[] serializeBinary(Violation v) {
+        int goodsCode = WireFormat.tagCode(v.goodsKey);
+        int locationCode = WireFormat.tagCode(v.location);
+        int size = 2 + WireFormat.varLongSize(v.time)
+                + WireFormat.tagSize(goodsCode, v.goodsKey)
+                + WireFormat.tagSize(locationCode, v.location)
+                + WireFormat.varLongSize(v.reasons & 0xFFFFFFFFL);
+        int detailCode;
+        if (v.type == Violation.SENSOR) {
+            detailCode = WireFormat.code(WireFormat.METRICS, v.detail);
+            size += WireFormat.codedSize(detailCode, v.detail) + 8;
+        }
+        else {
+            detailCode = WireFormat.tagCode(v.detail);
+            size += WireFormat.tagSize(detailCode, v.detail);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(WireFormat.MAGIC_VIOLATION_V1);
+        buf.put(v.type);
+        WireFormat.putVarLong(buf, v.time);
+        WireFormat.putTag(buf, goodsCode, v.goodsKey);
+        WireFormat.putTag(buf, locationCode, v.location);
+        if (v.type == Violation.SENSOR) {
+            WireFormat.putCoded(buf, detailCode, v.detail);
+            buf.putDouble(v.value);
+        }
+        else
+            WireFormat.putTag(buf, detailCode, v.detail);
+        WireFormat.putVarLong(buf, v.reasons & 0xFFFFFFFFL);
+        return buf.array();
+    }
+
+    @Override
+    public Violation deserialize(String topic, byte[] bytes) {
+        if (bytes == null)
+            return null;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            byte magic = buf.get();
+            if (magic != WireFormat.MAGIC_VIOLATION_V1)
+                throw new IllegalArgumentException("Not a violation, magic/version " + (magic & 0xFF));
+            byte type = buf.get();
+            if (type < Violation.SENSOR || type > Violation.UNLOAD)
+                throw new IllegalArgumentException("Unknown violation type " + type);
+            long time = WireFormat.getVarLong(buf);
+            String goodsKey = WireFormat.getTag(buf);
+            String location = WireFormat.getTag(buf);
+            String detail;
+            double value = 0;
+            if (type == Violation.SENSOR) {
+                detail = WireFormat.getCoded(buf, WireFormat.METRICS);
+                value = buf.getDouble();
+            }
+            else
+                detail = WireFormat.getTag(buf);
+            int reasons = (int) WireFormat.getVarLong(buf);
+            return new Violation(type, time, goodsKey, location, detail, value, reasons);
+        }
+        catch(Exception e) {
+            throw new IllegalArgumentException("Error reading bytes", e);
+        }
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
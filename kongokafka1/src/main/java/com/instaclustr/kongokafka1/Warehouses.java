@@ -1,7 +1,6 @@
 package com.instaclustr.kongokafka1;
 
 import java.util.Random;
-import java.util.UUID;
 
 /*
  * Warehouses have an x, y location, an id, and may be temperature controlled.
@@ -23,7 +22,7 @@ public class Warehouses
 	    this.x = x;
 	    this.y = y;
 	    
-	    Random rand = new Random();
+	    Random rand = SimRandom.random();
 	    
 	    // temp controlled warehouse?
 	    if (rand.nextDouble() < 0.8)
@@ -38,9 +37,7 @@ public class Warehouses
 
 	public static String randomUUID()
     {
-		UUID uuid = UUID.randomUUID();
-		String r = uuid.toString();
-		return r;
+		return SimRandom.uuid();
     }
 	 
 	public String toStr()
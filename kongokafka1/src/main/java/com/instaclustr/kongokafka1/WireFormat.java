@@ -0,0 +1,300 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Compact binary wire format shared by the Sensor and RFID serializers.
+ *
+ * Every binary frame starts with a magic/version byte. The legacy text format always starts with an ASCII character
+ * (a digit or "true"/"false"), so deserializers can tell the two apart and keep reading old text records.
+ *
+ * Building blocks:
+ * - time is an unsigned varint (7 bits per byte)
+ * - doc and metric are single byte codes into fixed tables, or INLINE followed by a length prefixed UTF-8 string
+ * - tags of the form prefix + UUID (goods_, trucks_, warehouses_) are a prefix code byte and the 16 raw UUID bytes,
+ *   anything else is INLINE followed by a length prefixed UTF-8 string
+ * - values are raw 8 byte IEEE doubles
+ *
+ * Which topics are written in binary is selected with the BINARY_TOPICS_CONFIG producer property,
+ * a comma separated list of topic names, or "*" for all topics.
+ */
+public final class WireFormat
+{
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+
+	// high nibble is the magic, low nibble the version
+	public static final byte MAGIC_V1 = (byte) 0xB1;
+	// SensorFrame, all metrics of a location in one record
+	public static final byte MAGIC_FRAME_V1 = (byte) 0xC1;
+	// Violation
+	public static final byte MAGIC_VIOLATION_V1 = (byte) 0xD1;
+
+	public static final String BINARY_TOPICS_CONFIG = "kongo.wire.binary.topics";
+
+	// code for a value which is not in a table, followed by an inline string
+	static final int INLINE = 0xFF;
+	static final int NULL = 0;
+
+	// never reorder these tables, the index is the wire code. Append only (and bump the version if the meaning changes).
+	static final String[] METRICS = {
+			"temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity",
+			"ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides"
+	};
+
+	static final String[] DOCS = { "SENSOR TRUCK", "SENSOR WAREHOUSE" };
+
+	// tag prefix codes start at 1, 0 is null
+	static final String[] TAG_PREFIXES = { "goods_", "trucks_", "warehouses_" };
+
+	private static final int UUID_LENGTH = 36;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private WireFormat() {}
+
+	public static boolean isBinary(byte[] bytes)
+	{
+		return bytes != null && bytes.length > 0 && bytes[0] == MAGIC_V1;
+	}
+
+	public static void checkMagic(ByteBuffer buf)
+	{
+		byte magic = buf.get();
+		if (magic != MAGIC_V1)
+			throw new IllegalArgumentException("Unknown wire format magic/version " + (magic & 0xFF));
+	}
+
+	// parse the BINARY_TOPICS_CONFIG setting from serializer configs
+	public static Set<String> binaryTopics(Map<String, ?> configs)
+	{
+		Object v = configs == null ? null : configs.get(BINARY_TOPICS_CONFIG);
+		if (v == null || v.toString().trim().isEmpty())
+			return Collections.emptySet();
+		Set<String> topics = new HashSet<String>();
+		for (String t : v.toString().split(","))
+			topics.add(t.trim());
+		return topics;
+	}
+
+	public static boolean useBinary(Set<String> binaryTopics, String topic)
+	{
+		return binaryTopics.contains("*") || binaryTopics.contains(topic);
+	}
+
+	// varints
+
+	public static int varLongSize(long v)
+	{
+		int n = 1;
+		while ((v & ~0x7FL) != 0)
+		{
+			v >>>= 7;
+			n++;
+		}
+		return n;
+	}
+
+	public static void putVarLong(ByteBuffer buf, long v)
+	{
+		while ((v & ~0x7FL) != 0)
+		{
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buf.put((byte) v);
+	}
+
+	public static long getVarLong(ByteBuffer buf)
+	{
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = buf.get();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	// table coded strings (doc, metric)
+
+	static int code(String[] table, String s)
+	{
+		for (int i = 0; i < table.length; i++)
+			if (table[i].equals(s))
+				return i;
+		return INLINE;
+	}
+
+	static int codedSize(int code, String s)
+	{
+		return code != INLINE ? 1 : 1 + stringSize(s);
+	}
+
+	static void putCoded(ByteBuffer buf, int code, String s)
+	{
+		buf.put((byte) code);
+		if (code == INLINE)
+			putString(buf, s);
+	}
+
+	static String getCoded(ByteBuffer buf, String[] table)
+	{
+		int code = buf.get() & 0xFF;
+		if (code == INLINE)
+			return getString(buf);
+		if (code >= table.length)
+			throw new IllegalArgumentException("Unknown code " + code);
+		return table[code];
+	}
+
+	// length prefixed UTF-8 strings
+
+	static int stringSize(String s)
+	{
+		int n = s.getBytes(CHARSET).length;
+		return varLongSize(n) + n;
+	}
+
+	static void putString(ByteBuffer buf, String s)
+	{
+		byte[] b = s.getBytes(CHARSET);
+		putVarLong(buf, b.length);
+		buf.put(b);
+	}
+
+	static String getString(ByteBuffer buf)
+	{
+		int n = (int) getVarLong(buf);
+		String s = new String(buf.array(), buf.arrayOffset() + buf.position(), n, CHARSET);
+		buf.position(buf.position() + n);
+		return s;
+	}
+
+	// tags: prefix code + 16 UUID bytes, or INLINE string
+
+	// returns the prefix code (1..) if the tag is prefix + lower case UUID, else INLINE (or NULL)
+	static int tagCode(String tag)
+	{
+		if (tag == null)
+			return NULL;
+		for (int i = 0; i < TAG_PREFIXES.length; i++)
+		{
+			String p = TAG_PREFIXES[i];
+			if (tag.length() == p.length() + UUID_LENGTH && tag.startsWith(p) && isLowerCaseUUID(tag, p.length()))
+				return i + 1;
+		}
+		return INLINE;
+	}
+
+	static int tagSize(int code, String tag)
+	{
+		if (code == NULL)
+			return 1;
+		return code != INLINE ? 17 : 1 + stringSize(tag);
+	}
+
+	static void putTag(ByteBuffer buf, int code, String tag)
+	{
+		buf.put((byte) code);
+		if (code == INLINE)
+			putString(buf, tag);
+		else if (code != NULL)
+		{
+			int off = TAG_PREFIXES[code - 1].length();
+			buf.putLong(hexLong(tag, off, off + 18));
+			buf.putLong(hexLong(tag, off + 19, off + 36));
+		}
+	}
+
+	static String getTag(ByteBuffer buf)
+	{
+		int code = buf.get() & 0xFF;
+		if (code == NULL)
+			return null;
+		if (code == INLINE)
+			return getString(buf);
+		if (code > TAG_PREFIXES.length)
+			throw new IllegalArgumentException("Unknown tag code " + code);
+		return uuidTag(TAG_PREFIXES[code - 1], buf.getLong(), buf.getLong());
+	}
+
+	// prefix + UUID in the same form as UUID.toString(), built in one char array
+	static String uuidTag(String prefix, long msb, long lsb)
+	{
+		int p = prefix.length();
+		char[] c = new char[p + UUID_LENGTH];
+		prefix.getChars(0, p, c, 0);
+		hex(c, p, msb >>> 32, 8);
+		c[p + 8] = '-';
+		hex(c, p + 9, msb >>> 16, 4);
+		c[p + 13] = '-';
+		hex(c, p + 14, msb, 4);
+		c[p + 18] = '-';
+		hex(c, p + 19, lsb >>> 48, 4);
+		c[p + 23] = '-';
+		hex(c, p + 24, lsb, 12);
+		return new String(c);
+	}
+
+	// write the low digits * 4 bits of v as hex
+	private static void hex(char[] c, int off, long v, int digits)
+	{
+		for (int i = off + digits - 1; i >= off; i--)
+		{
+			c[i] = HEX[(int) (v & 0xF)];
+			v >>>= 4;
+		}
+	}
+
+	// hex digit values for lower case hex, -1 for anything else
+	private static final byte[] HEX_VALUE = new byte[128];
+	static
+	{
+		Arrays.fill(HEX_VALUE, (byte) -1);
+		for (int i = 0; i < 16; i++)
+			HEX_VALUE[HEX[i]] = (byte) i;
+	}
+
+	private static int hexValue(char c)
+	{
+		return c < 128 ? HEX_VALUE[c] : -1;
+	}
+
+	// 8-4-4-4-12 lower case hex digits, which is what UUID.toString() produces
+	private static boolean isLowerCaseUUID(String s, int off)
+	{
+		if (s.charAt(off + 8) != '-' || s.charAt(off + 13) != '-' || s.charAt(off + 18) != '-' || s.charAt(off + 23) != '-')
+			return false;
+		// any non hex digit makes the OR negative
+		int bad = 0;
+		for (int i = off; i < off + UUID_LENGTH; i++)
+		{
+			char c = s.charAt(i);
+			if (c != '-')
+				bad |= hexValue(c);
+		}
+		return bad >= 0;
+	}
+
+	// parse lower case hex digits in s[from, to), skipping dashes
+	private static long hexLong(String s, int from, int to)
+	{
+		long v = 0;
+		for (int i = from; i < to; i++)
+		{
+			char c = s.charAt(i);
+			if (c == '-')
+				continue;
+			v = (v << 4) | hexValue(c);
+		}
+		return v;
+	}
+}
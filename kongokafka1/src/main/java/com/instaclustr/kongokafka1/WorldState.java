@@ -0,0 +1,181 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * The simulated world with dense int ids instead of String tags.
+ *
+ * Goods, warehouses and trucks get ids 0..n-1 in tag order when the world is created (so ids don't depend on HashMap order).
+ * Locations are int arrays: goodsAt[g] is the warehouse id of goods g, or ~truck id (always < 0) while it is on a truck,
+ * truckAt[t] is the warehouse truck t is docked at, docked[w] lists the trucks at warehouse w (in no particular order)
+ * and slot[t] is where truck t is in that list, so a truck leaves a warehouse in O(1).
+ * That is 4 bytes per goods instead of a HashMap entry with two 40+ character String keys, and no hashing in the loop.
+ *
+ * store has the goods attributes by id (GoodsStore), the rule checks of the LOAD phase and of the initial placement read it
+ * instead of the Goods objects, which are kept for the LocationRegistry and the events.
+ * Tags are only needed at the boundary (RFID and sensor events, LocationRegistry, printing): goodsTags[g] etc. going out,
+ * and goodsId(tag) etc. (binary search of the sorted tags, no extra map) coming in.
+ * This is the simulator's state: Simulate.createAndLoop creates it (Simulate.world) and Simulate.loop and ShardedSimulate run on it,
+ * there are no String keyed location maps to keep in step.
+ * Not thread safe, ShardedSimulate gives each shard its own part of the arrays.
+ */
+public class WorldState
+{
+	final String[] goodsTags;
+	final Goods[] goods;
+	final GoodsStore store;
+	final String[] warehouseTags;
+	final Warehouses[] warehouses;
+	final String[] truckTags;
+	final Trucks[] trucks;
+
+	final int[] goodsAt;
+	final int[] truckAt;
+	final IntList[] docked;
+	final int[] slot;
+
+	WorldState(Map<String, Goods> allGoods, Map<String, Warehouses> allWarehouses, Map<String, Trucks> allTrucks)
+	{
+		goodsTags = sortedKeys(allGoods);
+		warehouseTags = sortedKeys(allWarehouses);
+		truckTags = sortedKeys(allTrucks);
+
+		goods = new Goods[goodsTags.length];
+		for (int g = 0; g < goods.length; g++)
+			goods[g] = allGoods.get(goodsTags[g]);
+		store = GoodsStore.of(goods);
+		warehouses = new Warehouses[warehouseTags.length];
+		for (int w = 0; w < warehouses.length; w++)
+			warehouses[w] = allWarehouses.get(warehouseTags[w]);
+		trucks = new Trucks[truckTags.length];
+		for (int t = 0; t < trucks.length; t++)
+			trucks[t] = allTrucks.get(truckTags[t]);
+
+		goodsAt = new int[goods.length];
+		truckAt = new int[trucks.length];
+		slot = new int[trucks.length];
+		docked = IntList.array(warehouses.length);
+	}
+
+	// goods g in warehouse g % warehouses and truck t docked at t % warehouses, the start for the benchmarks and tests
+	static WorldState roundRobin(Map<String, Goods> allGoods, Map<String, Warehouses> allWarehouses, Map<String, Trucks> allTrucks)
+	{
+		WorldState world = new WorldState(allGoods, allWarehouses, allTrucks);
+		for (int g = 0; g < world.goods.length; g++)
+			world.place(g, g % world.warehouses.length);
+		for (int t = 0; t < world.trucks.length; t++)
+			world.dock(t, t % world.warehouses.length);
+		return world;
+	}
+
+	private static String[] sortedKeys(Map<String, ?> map)
+	{
+		String[] keys = map.keySet().toArray(new String[0]);
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	// tag -> id, -1 if unknown
+
+	public int goodsId(String tag)
+	{
+		return id(goodsTags, tag);
+	}
+
+	public int warehouseId(String tag)
+	{
+		return id(warehouseTags, tag);
+	}
+
+	public int truckId(String tag)
+	{
+		return id(truckTags, tag);
+	}
+
+	private static int id(String[] tags, String tag)
+	{
+		if (tag == null)
+			return -1;
+		int i = Arrays.binarySearch(tags, tag);
+		return i >= 0 ? i : -1;
+	}
+
+	// goods locations
+
+	public boolean onTruck(int g)
+	{
+		return goodsAt[g] < 0;
+	}
+
+	// truck id, or -1 if in a warehouse
+	public int truckOf(int g)
+	{
+		return goodsAt[g] < 0 ? ~goodsAt[g] : -1;
+	}
+
+	// warehouse id, or -1 if on a truck
+	public int warehouseOf(int g)
+	{
+		return goodsAt[g];
+	}
+
+	// put goods in warehouse w, when the world is created
+	void place(int g, int w)
+	{
+		goodsAt[g] = w;
+	}
+
+	public void load(int g, int t)
+	{
+		goodsAt[g] = ~t;
+	}
+
+	// unload goods to the warehouse its truck is docked at, returns the warehouse
+	public int unload(int g)
+	{
+		return goodsAt[g] = truckAt[~goodsAt[g]];
+	}
+
+	// trucks
+
+	// dock at w, the truck must not be docked anywhere
+	void dock(int t, int w)
+	{
+		truckAt[t] = w;
+		addDocked(t);
+	}
+
+	// add t to the list of the warehouse truckAt[t], the truck must not be in any list
+	void addDocked(int t)
+	{
+		IntList l = docked[truckAt[t]];
+		slot[t] = l.size;
+		l.add(t);
+	}
+
+	public void moveTruck(int t, int w)
+	{
+		// the last truck in the list takes the leaving truck's slot
+		IntList from = docked[truckAt[t]];
+		int last = from.data[--from.size];
+		from.data[slot[t]] = last;
+		slot[last] = slot[t];
+		dock(t, w);
+	}
+
+	// A truck at warehouse w, or -1 if there are none.
+	// Same selection as the old scan of all the trucks keeping the first one at w, then replacing it 50% of the time by each following one:
+	// the last truck in docked[w] is picked with probability 1/2, the one before 1/4, and so on. Expected 2 random draws, whatever the number of trucks.
+	public int pickTruck(int w, Random rand)
+	{
+		IntList l = docked[w];
+		if (l.size == 0)
+			return -1;
+		int i = l.size - 1;
+		while (i > 0 && rand.nextBoolean())
+			i--;
+		return l.data[i];
+	}
+}
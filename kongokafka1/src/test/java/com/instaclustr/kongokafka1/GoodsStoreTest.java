@@ -0,0 +1,74 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoodsStoreTest {
+    static final String[] METRICS = { "temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity",
+            "ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+
+    private Goods[] goods;
+    private GoodsStore store;
+    private List<Trucks> trucks = new ArrayList<Trucks>();
+    private List<Warehouses> warehouses = new ArrayList<Warehouses>();
+
+    @Before public void setUp() {
+        // every category combination, then random Goods for the other columns
+        List<Goods> all = new ArrayList<Goods>();
+        for (int cats = 0; cats < 1 << Rules.CODES.length; cats++)
+            all.add(new Goods("goods_" + cats, cats, (cats & Rules.PERISHABLE) != 0 ? cats : Long.MAX_VALUE));
+        for (int i = 0; i < 1000; i++)
+            all.add(new Goods());
+        goods = all.toArray(new Goods[0]);
+        store = GoodsStore.of(goods);
+
+        for (int i = 0; i < 50; i++) {
+            trucks.add(new Trucks());
+            warehouses.add(new Warehouses(i, 0));
+        }
+    }
+
+    @Test public void keepsTheAttributes() {
+        assertEquals(goods.length, store.size());
+        for (int g = 0; g < goods.length; g++) {
+            assertEquals(goods[g].cats, store.cats(g));
+            if (goods[g].quantity != null)
+                assertEquals(goods[g].quantity.longValue(), store.quantity(g));
+            assertEquals(goods[g].temp == null ? GoodsStore.NO_TEMP : goods[g].temp.subCatNum, store.tempRange(g));
+        }
+    }
+
+    @Test public void truckRulesAgreeWithGoods() {
+        for (int g = 0; g < goods.length; g++) {
+            for (int onBoard = 0; onBoard <= Rules.TRUCK_CATS; onBoard++)
+                assertEquals(goods[g].allowedInTruck(onBoard), store.allowedInTruck(g, onBoard));
+            for (Trucks t : trucks)
+                assertEquals(goods[g].truckTempRules(t), store.truckTempRules(g, t));
+        }
+    }
+
+    @Test public void warehouseRulesAgreeWithGoods() {
+        for (int g = 0; g < goods.length; g++)
+            for (Warehouses w : warehouses)
+                assertEquals(goods[g].warehouseTempRules(w), store.warehouseTempRules(g, w));
+    }
+
+    @Test public void sensorRulesAgreeWithGoods() {
+        GoodsStore.View view = store.view();
+        for (int g = 0; g < goods.length; g++) {
+            for (String metric : METRICS) {
+                for (double value : new double[] { -30, 0, 5, 20, 50, 100, 1000, 100000 }) {
+                    for (long time : new long[] { 0, 1000, 200000 }) {
+                        Sensor s = new Sensor(time, "SENSOR WAREHOUSE", "warehouses_1", metric, value);
+                        assertEquals(goods[g].sensorViolations(s), store.sensorViolations(g, s));
+                        assertEquals(goods[g].sensorViolations(s), view.at(g).sensorViolations(s));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.instaclustr.kongokafka1;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LocationRegistryTest {
+    static final String WAREHOUSE = "warehouses_00000000-0000-0000-0000-000000000001";
+    static final String TRUCK = "trucks_00000000-0000-0000-0000-000000000002";
+
+    private ViolationProducer violations;
+    private LocationRegistry.Location truck;
+
+    @Before public void setUp() {
+        Simulate.locations.clear();
+        Simulate.allGoods.clear();
+        Simulate.locations.add(WAREHOUSE);
+        truck = Simulate.locations.add(TRUCK);
+        MockProducer<String, Violation> mock = new MockProducer<String, Violation>(true, new StringSerializer(), new ViolationSerializer());
+        violations = new ViolationProducer(mock, "test-violations", Integer.MAX_VALUE);
+        ViolationProducer.install(violations);
+    }
+
+    @After public void tearDown() {
+        ViolationProducer.install(null);
+        Simulate.locations.clear();
+        Simulate.allGoods.clear();
+    }
+
+    private Goods[] goods(int n, boolean compatible) {
+        Goods[] goods = new Goods[n];
+        for (int i = 0; i < n; i++) {
+            goods[i] = new Goods();
+            if (compatible)
+                goods[i].cats &= ~(Rules.HAZARDOUS | Rules.MEDICINAL | Rules.BULKY);
+            Simulate.allGoods.put(goods[i].tag, goods[i]);
+            Simulate.locations.place(goods[i], WAREHOUSE);
+        }
+        return goods;
+    }
+
+    // loading one at a time, the truck's category mask finds the same violations as a ColocatedCheckEvent to every Goods on board
+    private void maskAgreesWithPerGoodsEvents(Goods[] goods) {
+        for (Goods g : goods) {
+            Simulate.locations.move(g, WAREHOUSE, TRUCK);
+            truck.post(new ColocatedCheckEvent(0, g.tag, TRUCK));
+        }
+        long perGoods = violations.sent();
+        for (Goods g : goods)
+            Simulate.locations.move(g, TRUCK, WAREHOUSE);
+        assertEquals(0, truck.categories());
+
+        for (Goods g : goods) {
+            Simulate.locations.move(g, WAREHOUSE, TRUCK);
+            if (truck.conflicts(g) != 0)
+                for (Goods onBoard : truck.conflicting(g))
+                    onBoard.truckConflict(g, 0, TRUCK);
+        }
+        assertEquals(perGoods, violations.sent() - perGoods);
+        for (Goods g : goods)
+            Simulate.locations.move(g, TRUCK, WAREHOUSE);
+        assertEquals(0, truck.categories());
+        assertEquals(0, truck.size());
+    }
+
+    @Test public void maskAgreesWithPerGoodsEventsForRandomGoods() {
+        maskAgreesWithPerGoodsEvents(goods(200, false));
+    }
+
+    @Test public void compatibleGoodsDontConflict() {
+        maskAgreesWithPerGoodsEvents(goods(200, true));
+        assertEquals(0, violations.sent());
+    }
+
+    @Test public void truckCategoriesAreTheUnionOfItsGoods() {
+        Goods[] goods = goods(100, false);
+        int union = 0;
+        for (Goods g : goods) {
+            Simulate.locations.move(g, WAREHOUSE, TRUCK);
+            union |= g.cats & Rules.TRUCK_CATS;
+            assertEquals(union, truck.categories());
+        }
+        for (int i = 0; i < goods.length; i++) {
+            Simulate.locations.move(goods[i], TRUCK, WAREHOUSE);
+            union = 0;
+            for (int j = i + 1; j < goods.length; j++)
+                union |= goods[j].cats & Rules.TRUCK_CATS;
+            assertEquals(union, truck.categories());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.google.common.eventbus.EventBus;
+
+public class RFIDEventConsumerTest {
+    static final int GOODS = 1000;
+    static final int MOVES = 5;
+    static final int PARTITIONS = 6;
+
+    private Goods[] goods = new Goods[GOODS];
+    private String[] end = new String[GOODS];
+    private List<List<ConsumerRecord<String, RFIDEvent>>> partitions = new ArrayList<List<ConsumerRecord<String, RFIDEvent>>>();
+
+    @Before public void setUp() {
+        Simulate.locations.clear();
+        Simulate.allGoods.clear();
+        Simulate.rfidLoadTopic = new EventBus("load");
+        Simulate.rfidLoadTopic.register(new RFIDLoadEvent());
+        Simulate.rfidUnloadTopic = new EventBus("unload");
+        Simulate.rfidUnloadTopic.register(new RFIDUnloadEvent());
+
+        Random rand = new Random(1);
+        String[] warehouses = new String[20];
+        for (int i = 0; i < warehouses.length; i++)
+            Simulate.locations.add(warehouses[i] = "warehouses_" + Goods.randomUUID());
+        String[] trucks = new String[40];
+        for (int i = 0; i < trucks.length; i++)
+            Simulate.locations.add(trucks[i] = "trucks_" + Goods.randomUUID());
+        for (int p = 0; p < PARTITIONS; p++)
+            partitions.add(new ArrayList<ConsumerRecord<String, RFIDEvent>>());
+
+        // every Goods loaded and unloaded MOVES times, its events on the partition of its key in time order
+        for (int i = 0; i < GOODS; i++) {
+            goods[i] = new Goods();
+            Simulate.allGoods.put(goods[i].tag, goods[i]);
+            end[i] = warehouses[rand.nextInt(warehouses.length)];
+            Simulate.locations.place(goods[i], end[i]);
+        }
+        for (int time = 0; time < MOVES; time++) {
+            for (int i = 0; i < GOODS; i++) {
+                String truck = trucks[rand.nextInt(trucks.length)];
+                String to = warehouses[rand.nextInt(warehouses.length)];
+                int p = Utils.toPositive(Utils.murmur2(goods[i].tag.getBytes(StandardCharsets.UTF_8))) % PARTITIONS;
+                List<ConsumerRecord<String, RFIDEvent>> records = partitions.get(p);
+                records.add(new ConsumerRecord<String, RFIDEvent>(Simulate.rfidTopic, p, records.size(), goods[i].tag, new RFIDEvent(true, time, goods[i].tag, end[i], truck)));
+                records.add(new ConsumerRecord<String, RFIDEvent>(Simulate.rfidTopic, p, records.size(), goods[i].tag, new RFIDEvent(false, time, goods[i].tag, to, truck)));
+                end[i] = to;
+            }
+        }
+    }
+
+    @After public void tearDown() {
+        Simulate.locations.clear();
+        Simulate.allGoods.clear();
+    }
+
+    // consumer owning partitions p with p % n == member, 100 records of each per poll
+    private MockConsumer<String, RFIDEvent> mockConsumer(int member, int n) {
+        MockConsumer<String, RFIDEvent> consumer = new MockConsumer<String, RFIDEvent>(OffsetResetStrategy.EARLIEST);
+        List<TopicPartition> share = new ArrayList<TopicPartition>();
+        for (int p = member; p < PARTITIONS; p += n)
+            share.add(new TopicPartition(Simulate.rfidTopic, p));
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(share);
+            for (TopicPartition tp : share)
+                consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        });
+        for (int from = 0; from < 2 * MOVES * GOODS; from += 100) {
+            List<ConsumerRecord<String, RFIDEvent>> records = new ArrayList<ConsumerRecord<String, RFIDEvent>>();
+            for (TopicPartition tp : share) {
+                List<ConsumerRecord<String, RFIDEvent>> all = partitions.get(tp.partition());
+                if (from < all.size())
+                    records.addAll(all.subList(from, Math.min(all.size(), from + 100)));
+            }
+            if (records.isEmpty())
+                break;
+            consumer.schedulePollTask(() -> records.forEach(consumer::addRecord));
+        }
+        return consumer;
+    }
+
+    private void consume(int n) throws InterruptedException {
+        KongoRuntime runtime = new KongoRuntime(false);
+        for (int c = 0; c < n; c++)
+            runtime.add(new RFIDEventConsumer(Simulate.rfidTopic, mockConsumer(c, n)));
+        runtime.start();
+        long deadline = System.currentTimeMillis() + 30000;
+        while (runtime.records() < 2 * MOVES * GOODS && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        runtime.shutdown(10000);
+        assertEquals(2 * MOVES * GOODS, runtime.records());
+    }
+
+    @Test public void oneConsumerKeepsTheOrder() throws InterruptedException {
+        consume(1);
+        for (int i = 0; i < GOODS; i++)
+            assertEquals(end[i], Simulate.locations.locationOf(goods[i]).id());
+    }
+
+    @Test public void parallelConsumersKeepTheOrderPerGoods() throws InterruptedException {
+        consume(3);
+        for (int i = 0; i < GOODS; i++)
+            assertEquals(end[i], Simulate.locations.locationOf(goods[i]).id());
+    }
+}
@@ -0,0 +1,56 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RingBufferSinkTest {
+    static final byte[] TYPES = { BytesSink.RFID, BytesSink.SENSOR, BytesSink.FRAME };
+
+    @Test public void keepsTheLastCapacityEvents() {
+        RingBufferSink sink = new RingBufferSink(100);
+        assertEquals(128, sink.capacity());
+        for (int i = 0; i < 300; i++)
+            sink.write(TYPES[i % 3], new byte[] { (byte) i });
+        assertEquals(300, sink.written());
+        assertNull(sink.get(300 - 129));
+        assertEquals(0, sink.type(300 - 129));
+        for (long n = 300 - 128; n < 300; n++) {
+            assertEquals((byte) n, sink.get(n)[0]);
+            assertEquals(TYPES[(int) (n % 3)], sink.type(n));
+        }
+        assertNull(sink.get(300));
+        assertNull(sink.get(-1));
+    }
+
+    @Test public void concurrentWritersKeepTypeAndBytesTogether() throws InterruptedException {
+        RingBufferSink sink = new RingBufferSink(1024);
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int w = 0; w < 4; w++) {
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    byte type = TYPES[i % 3];
+                    sink.write(type, new byte[] { type });
+                }
+            });
+            writers.add(t);
+            t.start();
+        }
+        // whatever a reader sees while the writers wrap is a whole event
+        while (writers.get(0).isAlive()) {
+            long n = sink.written() - 1;
+            byte[] bytes = sink.get(n);
+            byte type = sink.type(n);
+            if (bytes != null && type != 0)
+                assertEquals(type, bytes[0]);
+        }
+        for (Thread t : writers)
+            t.join();
+        long written = sink.written();
+        assertEquals(400000, written);
+        for (long n = written - sink.capacity(); n < written; n++)
+            assertEquals(sink.type(n), sink.get(n)[0]);
+    }
+}
@@ -0,0 +1,107 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RulesTest {
+    static final int LOW_CATS = 1 << 7;
+
+    @Test public void conflictMaskAgreesWithLegacy() {
+        for (int x = 0; x < LOW_CATS; x++)
+            for (int y = 0; y < LOW_CATS; y++)
+                assertEquals(Rules.categories(x) + " " + Rules.categories(y),
+                        legacyNotAllowedInTruck(x, y), (Rules.conflicts(x) & y) != 0);
+    }
+
+    @Test public void goodsConflictsAgreeWithLegacy() {
+        for (int x = 0; x < 1 << Rules.CODES.length; x += 7) {
+            Goods gx = new Goods("goods_x", x, Long.MAX_VALUE);
+            for (int y = 0; y < LOW_CATS; y++) {
+                Goods gy = new Goods("goods_y", y, Long.MAX_VALUE);
+                assertEquals(legacyNotAllowedInTruck(x, y), gx.notAllowedInTruck(gy));
+                assertEquals(!legacyNotAllowedInTruck(x, y), gx.allowedInTruck(gy));
+            }
+        }
+    }
+
+    @Test public void truckMaskAgreesWithCargo() {
+        Random rand = new Random(1);
+        for (int truck = 0; truck < 100; truck++) {
+            Trucks t = new Trucks();
+            List<Goods> cargo = new ArrayList<Goods>();
+            for (int step = 0; step < 200; step++) {
+                if (!cargo.isEmpty() && rand.nextInt(3) == 0)
+                    t.removeCategories(cargo.remove(rand.nextInt(cargo.size())));
+                else {
+                    Goods g = new Goods("goods_" + step, rand.nextInt(1 << Rules.CODES.length), Long.MAX_VALUE);
+                    cargo.add(g);
+                    t.updateCategories(g);
+                }
+
+                int union = 0;
+                for (Goods g : cargo)
+                    union |= g.cats;
+                assertEquals(union & Rules.TRUCK_CATS, t.categoriesOnBoard());
+
+                // one mask check is the same as checking the goods against every goods on board
+                Goods loading = new Goods("goods_loading", rand.nextInt(LOW_CATS), Long.MAX_VALUE);
+                boolean conflict = false;
+                for (Goods g : cargo)
+                    conflict |= legacyNotAllowedInTruck(g.cats, loading.cats);
+                assertEquals(!conflict, loading.allowedInTruck(t.categoriesOnBoard()));
+            }
+        }
+    }
+
+    @Test public void tempRulesAgreeWithLegacy() {
+        for (int cats = 0; cats < 1 << Rules.CODES.length; cats++)
+            for (boolean controlled : new boolean[] { false, true })
+                for (int range = -1; range <= 4; range++)
+                    assertEquals(Rules.categories(cats) + " " + controlled + " " + range,
+                            legacyTempRules(cats, controlled, range), Rules.tempAllowed(cats, controlled, range));
+    }
+
+    // the pre conflict mask Goods.notAllowedInTruck, goods x with goods y
+    static boolean legacyNotAllowedInTruck(int x, int y) {
+        boolean fragile = (x & Rules.FRAGILE) != 0, yFragile = (y & Rules.FRAGILE) != 0;
+        boolean bulky = (x & Rules.BULKY) != 0, yBulky = (y & Rules.BULKY) != 0;
+        boolean hazardous = (x & Rules.HAZARDOUS) != 0, yHazardous = (y & Rules.HAZARDOUS) != 0;
+        boolean edible = (x & Rules.EDIBLE) != 0, yEdible = (y & Rules.EDIBLE) != 0;
+        boolean medicinal = (x & Rules.MEDICINAL) != 0, yMedicinal = (y & Rules.MEDICINAL) != 0;
+        return fragile && yBulky ||
+                bulky && yFragile ||
+                hazardous && (yEdible || yMedicinal) ||
+                (edible || medicinal) && yHazardous ||
+                edible && yMedicinal ||
+                medicinal && yEdible ||
+                hazardous && yHazardous;
+    }
+
+    // the pre Rules.tempAllowed Goods.truckTempRules and warehouseTempRules
+    static boolean legacyTempRules(int cats, boolean tempControlled, int tempRange) {
+        boolean frozen = (cats & Rules.FROZEN_TEMP) != 0;
+        boolean heatSensitive = (cats & Rules.HEAT_SENSITIVE_TEMP) != 0;
+        boolean cool = (cats & Rules.COOL_TEMP) != 0;
+        boolean room = (cats & Rules.ROOM_TEMP) != 0;
+        boolean ambient = (cats & Rules.AMBIENT_TEMP) != 0;
+        if (ambient || cool || frozen || heatSensitive || room) {
+            if (!tempControlled)
+                return false;
+            if (frozen)
+                return tempRange == 0;
+            if (heatSensitive)
+                return tempRange == 1;
+            if (cool)
+                return tempRange == 2;
+            if (room)
+                return tempRange == 3;
+            if (ambient)
+                return tempRange == 1 || tempRange == 2 || tempRange == 3 || tempRange == 4;
+        }
+        return true;
+    }
+}
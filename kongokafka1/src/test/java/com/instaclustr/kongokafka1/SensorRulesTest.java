@@ -0,0 +1,70 @@
+package com.instaclustr.kongokafka1;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SensorRulesTest {
+    static final String[] METRICS = { "temp", "humidity", "illuminance", "illuminace", "acceleration", "vibrationDisplacement",
+            "vibrationVelocity", "ozone", "particles", "toxicGas", "sulfurDioxide", "nitrousOxides" };
+    // the rule thresholds, either side of them, and the temperature range bounds
+    static final double[] VALUES = { -50, -20, -18, 0, 1, 2, 4.9, 5, 8, 9.9, 10, 15, 20, 25, 30, 60, 60.1, 99.9, 100, 500, 500.1, 1000 };
+    static final long[] TIMES = { 0, 1000, 100000 };
+
+    @Test public void compiledRulesAgreeWithLegacy() {
+        for (int cats = 0; cats < 1 << Rules.CODES.length; cats++) {
+            Goods g = new Goods("goods_" + cats, cats, (cats & Rules.PERISHABLE) != 0 ? 1000 : Long.MAX_VALUE);
+            for (String metric : METRICS)
+                for (double value : VALUES)
+                    for (long time : TIMES) {
+                        Sensor s = new Sensor(time, "SENSOR TRUCK", "trucks_1", metric, value);
+                        assertEquals(g.toStr() + " " + s.toStr(), legacy(g, s), g.violatedSensorCatRules(s));
+                    }
+        }
+    }
+
+    @Test public void randomGoodsAgreeWithLegacy() {
+        for (int i = 0; i < 1000; i++) {
+            Goods g = new Goods();
+            for (String metric : METRICS)
+                for (double value : VALUES) {
+                    Sensor s = new Sensor(i * 100, "SENSOR WAREHOUSE", "warehouses_1", metric, value);
+                    assertEquals(legacy(g, s), g.violatedSensorCatRules(s));
+                }
+        }
+    }
+
+    // the pre SensorRules Goods.violatedSensorCatRules
+    static String legacy(Goods g, Sensor sensor) {
+        String s = "";
+        if (g.has(Rules.FRAGILE) && !(lowG(sensor) && smoothRide(sensor)))
+            s += "fragile ";
+        if (g.has(Rules.MEDICINAL) && !(dry(sensor) && dark(sensor)))
+            s += "medicinal ";
+        if (g.has(Rules.PERISHABLE) && !(dry(sensor) && dark(sensor) && g.useByDate > sensor.time))
+            s += "perishable ";
+        if (g.has(Rules.EDIBLE) && !dry(sensor))
+            s += "edible ";
+        if (g.has(Rules.DRY) && !dry(sensor))
+            s += "dry ";
+        if (g.temp != null && !(!(sensor.metric.equals("temp") && !g.temp.tempInRange(sensor.value))))
+            s += "temp";
+        return s;
+    }
+
+    static boolean dry(Sensor sensor) {
+        return !(sensor.metric.equals("humidity") && sensor.value > 60);
+    }
+
+    static boolean dark(Sensor sensor) {
+        return !(sensor.metric.equals("illuminace") && sensor.value > 500);
+    }
+
+    static boolean lowG(Sensor sensor) {
+        return !(sensor.metric.equals("acceleration") && (sensor.value >= 5));
+    }
+
+    static boolean smoothRide(Sensor sensor) {
+        return !(sensor.metric.equals("vibrationDisplacement") && sensor.value >= 10 ||
+                sensor.metric.equals("vibrationVelocity") && sensor.value >= 100);
+    }
+}
@@ -0,0 +1,97 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SensorRulesTopologyTest {
+    static final String WAREHOUSE = "warehouses_00000000-0000-0000-0000-000000000001";
+    static final String TRUCK = "trucks_00000000-0000-0000-0000-000000000002";
+    static final String FROZEN = "goods_00000000-0000-0000-0000-000000000003";
+    static final String PLAIN = "goods_00000000-0000-0000-0000-000000000004";
+
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, Goods> goods;
+    private TestInputTopic<String, RFIDEvent> rfid;
+    private TestInputTopic<String, Sensor> sensors;
+    private TestOutputTopic<String, String> violations;
+
+    @Before public void setUp() throws Exception {
+        Properties props = SensorRulesTopology.streamsProps();
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("kongo-streams").toString());
+        driver = new TopologyTestDriver(SensorRulesTopology.build(true), props);
+
+        goods = driver.createInputTopic(Simulate.goodsTopic, new StringSerializer(), new GoodsSerializer());
+        rfid = driver.createInputTopic(Simulate.rfidTopic, new StringSerializer(), new RFIDEventSerializer());
+        sensors = driver.createInputTopic(Simulate.kafkaSensorTopicBase, new StringSerializer(), new SensorSerializer());
+        violations = driver.createOutputTopic(SensorRulesTopology.VIOLATIONS_TOPIC, new StringDeserializer(), new StringDeserializer());
+
+        goods.pipeInput(FROZEN, new Goods(FROZEN, Rules.FROZEN_TEMP, Long.MAX_VALUE));
+        goods.pipeInput(PLAIN, new Goods(PLAIN, 0, Long.MAX_VALUE));
+        rfid.pipeInput(FROZEN, new RFIDEvent(false, 0, FROZEN, WAREHOUSE, TRUCK));
+        rfid.pipeInput(PLAIN, new RFIDEvent(false, 0, PLAIN, WAREHOUSE, TRUCK));
+    }
+
+    @After public void tearDown() {
+        driver.close();
+    }
+
+    @Test public void checksOnlyTheGoodsAtTheSensorLocation() {
+        sensors.pipeInput(WAREHOUSE, new Sensor(1, "SENSOR WAREHOUSE", WAREHOUSE, "temp", 5));
+        List<KeyValue<String, String>> out = violations.readKeyValuesToList();
+        assertEquals(1, out.size());
+        assertEquals(FROZEN, out.get(0).key);
+        assertTrue(out.get(0).value.startsWith("1, " + WAREHOUSE + ", " + FROZEN + ", temp, 5.0"));
+
+        sensors.pipeInput(TRUCK, new Sensor(1, "SENSOR TRUCK", TRUCK, "temp", 5));
+        assertTrue(violations.isEmpty());
+    }
+
+    @Test public void followsGoodsWhenTheyMove() {
+        rfid.pipeInput(FROZEN, new RFIDEvent(true, 2, FROZEN, WAREHOUSE, TRUCK));
+
+        sensors.pipeInput(WAREHOUSE, new Sensor(3, "SENSOR WAREHOUSE", WAREHOUSE, "temp", 5));
+        assertTrue(violations.isEmpty());
+
+        sensors.pipeInput(TRUCK, new Sensor(3, "SENSOR TRUCK", TRUCK, "temp", 5));
+        assertEquals(FROZEN, violations.readKeyValue().key);
+        assertTrue(violations.isEmpty());
+    }
+
+    @Test public void keepsOneEntryPerGoodsAtItsLocation() {
+        rfid.pipeInput(FROZEN, new RFIDEvent(true, 2, FROZEN, WAREHOUSE, TRUCK));
+        rfid.pipeInput(FROZEN, new RFIDEvent(false, 3, FROZEN, WAREHOUSE, TRUCK));
+        rfid.pipeInput(FROZEN, new RFIDEvent(true, 4, FROZEN, WAREHOUSE, TRUCK));
+
+        KeyValueStore<String, Goods> store = driver.getKeyValueStore(SensorRulesTopology.GOODS_AT_LOCATION_STORE);
+        assertNotNull(store.get(SensorRulesTopology.locationKey(TRUCK, FROZEN)));
+        assertNull(store.get(SensorRulesTopology.locationKey(WAREHOUSE, FROZEN)));
+        assertNotNull(store.get(SensorRulesTopology.locationKey(WAREHOUSE, PLAIN)));
+        int entries = 0;
+        try (KeyValueIterator<String, Goods> all = store.all()) {
+            for (; all.hasNext(); all.next())
+                entries++;
+        }
+        assertEquals(2, entries);
+    }
+
+    @Test public void noViolationWithinRange() {
+        sensors.pipeInput(WAREHOUSE, new Sensor(1, "SENSOR WAREHOUSE", WAREHOUSE, "temp", -25));
+        assertTrue(violations.isEmpty());
+    }
+}
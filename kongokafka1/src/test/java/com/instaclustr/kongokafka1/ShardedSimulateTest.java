@@ -0,0 +1,95 @@
+package com.instaclustr.kongokafka1;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ShardedSimulateTest {
+    static final int GOODS = 2000;
+    static final int WAREHOUSES = 20;
+    static final int TRUCKS = WAREHOUSES * 2;
+    static final int HOURS = 5;
+    static final long SEED = 42;
+
+    private Map<String, Goods> allGoods = new HashMap<String, Goods>();
+    private Map<String, Warehouses> allWarehouses = new HashMap<String, Warehouses>();
+    private Map<String, Trucks> allTrucks = new HashMap<String, Trucks>();
+    private boolean tempRules;
+    private boolean hazardousRules;
+
+    @Before public void setUp() {
+        tempRules = Simulate.enforceTempRules;
+        hazardousRules = Simulate.enforceHazardousRules;
+        for (int i = 0; i < GOODS; i++) {
+            Goods g = new Goods();
+            allGoods.put(g.tag, g);
+        }
+        for (int i = 0; i < WAREHOUSES; i++) {
+            Warehouses w = new Warehouses(i, 0);
+            allWarehouses.put(w.id, w);
+        }
+        for (int i = 0; i < TRUCKS; i++) {
+            Trucks t = new Trucks();
+            allTrucks.put(t.id, t);
+        }
+    }
+
+    @After public void tearDown() {
+        Simulate.enforceTempRules = tempRules;
+        Simulate.enforceHazardousRules = hazardousRules;
+    }
+
+    // the events of HOURS hours from the round robin world, with shards shards
+    private String fingerprint(int shards) {
+        ShardedSimulate engine = new ShardedSimulate(WorldState.roundRobin(allGoods, allWarehouses, allTrucks), shards, SEED);
+        ShardedSimulate.FingerprintSink out = new ShardedSimulate.FingerprintSink();
+        try {
+            engine.loop(HOURS, out);
+        } finally {
+            engine.shutdown();
+        }
+        return out.fingerprint();
+    }
+
+    @Test public void sameEventsForAnyShardCount() {
+        String one = fingerprint(1);
+        assertEquals(one, fingerprint(2));
+        assertEquals(one, fingerprint(4));
+    }
+
+    @Test public void sameEventsForAnyShardCountWithRules() {
+        Simulate.enforceTempRules = true;
+        Simulate.enforceHazardousRules = true;
+        String one = fingerprint(1);
+        assertEquals(one, fingerprint(2));
+        assertEquals(one, fingerprint(4));
+    }
+
+    @Test public void trucksOnlyMoveToCompatibleWarehouses() {
+        Simulate.enforceTempRules = true;
+        WorldState world = WorldState.roundRobin(allGoods, allWarehouses, allTrucks);
+        ShardedSimulate engine = new ShardedSimulate(world, 2, SEED);
+        try {
+            for (int hour = 0; hour < HOURS; hour++) {
+                engine.loop(1, new CountingSink());
+                // a truck that can't go anywhere stays where it is
+                for (int t = 0; t < world.trucks.length; t++)
+                    if (canGoAnywhere(world, t))
+                        assertTrue(world.trucks[t].canDeliverToWarehouse(world.warehouses[world.truckAt[t]]));
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static boolean canGoAnywhere(WorldState world, int t) {
+        for (Warehouses w : world.warehouses)
+            if (world.trucks[t].canDeliverToWarehouse(w))
+                return true;
+        return false;
+    }
+}
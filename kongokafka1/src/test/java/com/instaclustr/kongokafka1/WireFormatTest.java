@@ -0,0 +1,114 @@
+package com.instaclustr.kongokafka1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WireFormatTest {
+    static final String TRUCK = "trucks_" + Goods.randomUUID();
+    static final String WAREHOUSE = "warehouses_" + Goods.randomUUID();
+    static final String GOODS = "goods_" + Goods.randomUUID();
+
+    static SensorSerializer sensorSerializer(boolean binary) {
+        SensorSerializer s = new SensorSerializer();
+        s.configure(Collections.singletonMap(WireFormat.BINARY_TOPICS_CONFIG, binary ? "*" : ""), false);
+        return s;
+    }
+
+    static RFIDEventSerializer rfidSerializer(boolean binary) {
+        RFIDEventSerializer s = new RFIDEventSerializer();
+        s.configure(Collections.singletonMap(WireFormat.BINARY_TOPICS_CONFIG, binary ? "*" : ""), false);
+        return s;
+    }
+
+    @Test public void sensorRoundTrips() {
+        // tags and metrics in the code tables, and ones that are written inline
+        Sensor[] sensors = {
+            new Sensor(17, "SENSOR TRUCK", TRUCK, "vibrationVelocity", 123.456),
+            new Sensor(Long.MAX_VALUE, "SENSOR WAREHOUSE", WAREHOUSE, "temp", -18.5),
+            new Sensor(0, "SENSOR OTHER", "location 1", "windSpeed", 0),
+        };
+        for (boolean binary : new boolean[] { false, true }) {
+            SensorSerializer serializer = sensorSerializer(binary);
+            for (Sensor s : sensors) {
+                byte[] bytes = serializer.serialize("t", s);
+                assertEquals(binary, WireFormat.isBinary(bytes));
+                assertEquals(s.toStr(), serializer.deserialize("t", bytes).toStr());
+            }
+        }
+    }
+
+    @Test public void sensorReaderReadsBothFormats() {
+        Sensor s = new Sensor(5, "SENSOR TRUCK", TRUCK, "humidity", 61.25);
+        SensorReader reader = new SensorReader();
+        Sensor into = new Sensor();
+        assertEquals(s.toStr(), reader.read(sensorSerializer(false).serialize("t", s), into).toStr());
+        assertEquals(s.toStr(), reader.read(sensorSerializer(true).serialize("t", s), into).toStr());
+    }
+
+    @Test public void binaryIsSmaller() {
+        Sensor s = new Sensor(1234, "SENSOR TRUCK", TRUCK, "vibrationVelocity", 123.456);
+        assertTrue(sensorSerializer(true).serialize("t", s).length < sensorSerializer(false).serialize("t", s).length);
+
+        RFIDEvent e = new RFIDEvent(true, 1234, GOODS, WAREHOUSE, TRUCK);
+        assertTrue(rfidSerializer(true).serialize("t", e).length < rfidSerializer(false).serialize("t", e).length);
+
+        // against the text of a SensorRulesTopology violation
+        Violation v = Violation.sensor(s, GOODS, SensorRules.FRAGILE | SensorRules.TEMP);
+        String text = s.time + ", " + s.tag + ", " + GOODS + ", " + s.metric + ", " + s.value + ", " + SensorRules.reasons(v.reasons);
+        assertTrue(ViolationSerializer.serializeBinary(v).length < text.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test public void rfidEventRoundTrips() {
+        for (boolean binary : new boolean[] { false, true }) {
+            RFIDEventSerializer serializer = rfidSerializer(binary);
+            for (boolean load : new boolean[] { false, true }) {
+                RFIDEvent e = new RFIDEvent(load, 42, GOODS, WAREHOUSE, TRUCK);
+                RFIDEvent back = serializer.deserialize("t", serializer.serialize("t", e));
+                assertEquals(e.load, back.load);
+                assertEquals(e.time, back.time);
+                assertEquals(e.goodsKey, back.goodsKey);
+                assertEquals(e.warehouseKey, back.warehouseKey);
+                assertEquals(e.truckKey, back.truckKey);
+            }
+        }
+    }
+
+    @Test public void sensorFrameRoundTrips() {
+        SensorFrame frame = new SensorFrame(9, "SENSOR WAREHOUSE", WAREHOUSE);
+        frame.add("temp", 3.5);
+        frame.add("ozone", 9999);
+        frame.add("windSpeed", 12);
+        SensorFrameSerializer serializer = new SensorFrameSerializer();
+        SensorFrame back = serializer.deserialize("t", serializer.serialize("t", frame));
+        assertEquals(frame.toStr(), back.toStr());
+        assertEquals(frame.size(), back.size());
+        Sensor a = new Sensor();
+        Sensor b = new Sensor();
+        for (int i = 0; i < frame.size(); i++)
+            assertEquals(frame.sensor(i, a).toStr(), back.sensor(i, b).toStr());
+    }
+
+    @Test public void framesAreSmallerThanPerMetricRecords() {
+        SensorFrame frame = new SensorFrame(9, "SENSOR TRUCK", TRUCK);
+        for (String metric : new String[] { "temp", "humidity", "illuminance", "acceleration", "vibrationDisplacement", "vibrationVelocity" })
+            frame.add(metric, 12.5);
+        int perMetric = 0;
+        Sensor s = new Sensor();
+        for (int i = 0; i < frame.size(); i++)
+            perMetric += SensorSerializer.serializeBinary(frame.sensor(i, s)).length;
+        assertTrue(new SensorFrameSerializer().serialize("t", frame).length < perMetric);
+    }
+
+    @Test public void violationRoundTrips() {
+        Violation[] violations = {
+            Violation.sensor(new Sensor(17, "SENSOR WAREHOUSE", WAREHOUSE, "temp", 31.5), GOODS, SensorRules.TEMP | SensorRules.PERISHABLE),
+            new Violation(Violation.TRUCK, 3, GOODS, TRUCK, "goods_" + Goods.randomUUID(), 0, 0),
+        };
+        ViolationSerializer serializer = new ViolationSerializer();
+        for (Violation v : violations)
+            assertEquals(v.toStr(), serializer.deserialize("t", serializer.serialize("t", v)).toStr());
+    }
+}
@@ -3,3 +3,4 @@ rootProject.name = "kongo"
 include("kongo1")
 include("kongo2")
 include("kongokafka1")
+include("kongo-bench")